@@ -0,0 +1,58 @@
+package ru.lab11.queuingsystem.Analytics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Приближенный подсчет самых частых товаров алгоритмом Space-Saving.
+//Хранит не более capacity счетчиков; товар, вытесняющий минимальный счетчик, наследует его значение
+//как погрешность. Любой товар с долей продаж больше 1/capacity гарантированно попадает в счетчики.
+//Используется одним потоком.
+class HeavyHitters {
+    private final int capacity;
+    // Товар -> {оценка количества, погрешность}
+    private final Map<String, long[]> counters;
+
+    HeavyHitters(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    // Учитывает продажу quantity единиц товара
+    void offer(String productName, long quantity) {
+        long[] counter = counters.get(productName);
+        if (counter != null) {
+            counter[0] += quantity;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(productName, new long[]{quantity, 0});
+            return;
+        }
+        // Вытесняем товар с минимальной оценкой
+        String minName = null;
+        long[] minCounter = null;
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            if (minCounter == null || entry.getValue()[0] < minCounter[0]) {
+                minName = entry.getKey();
+                minCounter = entry.getValue();
+            }
+        }
+        counters.remove(minName);
+        long min = minCounter[0];
+        minCounter[0] = min + quantity;
+        minCounter[1] = min;
+        counters.put(productName, minCounter);
+    }
+
+    // Возвращает не более n товаров с наибольшей оценкой
+    List<ProductSales> top(int n) {
+        List<ProductSales> all = new ArrayList<>(counters.size());
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            all.add(new ProductSales(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        all.sort((a, b) -> Long.compare(b.units(), a.units()));
+        return List.copyOf(all.subList(0, Math.min(n, all.size())));
+    }
+}
@@ -0,0 +1,11 @@
+package ru.lab11.queuingsystem.Analytics;
+
+/**
+ * Оценка продаж товара в рейтинге самых продаваемых.
+ *
+ * @param productName название товара.
+ * @param units       оценка проданного количества (не меньше истинного).
+ * @param error       максимальная переоценка units.
+ */
+public record ProductSales(String productName, long units, long error) {
+}
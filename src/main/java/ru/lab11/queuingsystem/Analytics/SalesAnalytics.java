@@ -0,0 +1,220 @@
+package ru.lab11.queuingsystem.Analytics;
+
+import com.lmax.disruptor.EventHandler;
+import ru.lab11.queuingsystem.MyStore.StoreChanges;
+import ru.lab11.queuingsystem.MyStore.StoreOperation;
+import ru.lab11.queuingsystem.RequestProcessing.RequestEvent;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Потоковая аналитика продаж. Работает как потребитель после потока обработки и
+ * инкрементально обновляет агрегаты по операциям из StoreChanges:
+ * выручку в скользящем окне (по секундам), рейтинг самых продаваемых товаров и
+ * конверсию бронирований в оплату. Все методы чтения выполняются за постоянное время,
+ * кроме getRevenueSeries, которая проходит по секундам окна.
+ *
+ * <p>Окно сдвигается по часам в начале каждого пакета событий (в том числе без операций,
+ * например чтений), а продажи относятся к секунде своей операции, поэтому после затишья окно
+ * стареет с первым же запросом. Если процессор совсем простаивает, окно сдвинется со следующим
+ * событием; для старения без запросов достаточно периодически отправлять пустую задачу.
+ * Выручка в окне хранится готовой суммой: продажа прибавляется к ней, а при сдвиге окна
+ * (не чаще раза в секунду) сумма пересчитывается по секундам окна, поэтому погрешность
+ * округления не накапливается.
+ *
+ * <p>Подключение:
+ * <pre>
+ * store.enableChangeTracking();
+ * SalesAnalytics analytics = new SalesAnalytics(60, 10);
+ * DisruptorProcessor processor = new DisruptorProcessor(store::drainChanges, analytics);
+ * </pre>
+ */
+public class SalesAnalytics implements EventHandler<RequestEvent> {
+    private static final int HEAVY_HITTERS_PER_TOP = 10; // Счетчиков Space-Saving на одну позицию рейтинга.
+
+    private final int windowSeconds; // Длина скользящего окна в секундах.
+    private final int topSize; // Размер рейтинга товаров.
+    private final LongSupplier clockMillis; // Часы для сдвига окна, в миллисекундах.
+
+    // Данные, которые изменяет только поток аналитики
+    private final HeavyHitters heavyHitters;
+    private long currentSecond = -1;
+    private boolean topChanged;
+    private boolean batchStarted; // Часы уже прочитаны в текущем пакете.
+
+    // Опубликованные значения для читателей
+    private final AtomicLongArray revenueBuckets; // Выручка по секундам окна (биты double).
+    private volatile long latestSecond = -1;
+    private volatile double windowRevenue;
+    private volatile double totalRevenue;
+    private volatile long unitsSold;
+    private volatile long reservedUnits;
+    private volatile long purchasedReservedUnits;
+    private volatile List<ProductSales> topProducts = List.of();
+
+    /**
+     * Конструктор аналитики.
+     *
+     * @param windowSeconds длина окна выручки в секундах.
+     * @param topSize       сколько товаров держать в рейтинге.
+     */
+    public SalesAnalytics(int windowSeconds, int topSize) {
+        this(windowSeconds, topSize, System::currentTimeMillis);
+    }
+
+    /**
+     * Конструктор аналитики с заданными часами.
+     *
+     * @param windowSeconds длина окна выручки в секундах.
+     * @param topSize       сколько товаров держать в рейтинге.
+     * @param clockMillis   часы для сдвига окна, в миллисекундах (как время операций магазина).
+     */
+    public SalesAnalytics(int windowSeconds, int topSize, LongSupplier clockMillis) {
+        this.windowSeconds = windowSeconds;
+        this.topSize = topSize;
+        this.clockMillis = clockMillis;
+        this.revenueBuckets = new AtomicLongArray(windowSeconds);
+        this.heavyHitters = new HeavyHitters(topSize * HEAVY_HITTERS_PER_TOP);
+    }
+
+    @Override
+    public void onEvent(RequestEvent event, long sequence, boolean endOfBatch) {
+        // Часы читаются один раз на пакет
+        if (!batchStarted) {
+            advanceTo(clockMillis.getAsLong() / 1000);
+            batchStarted = true;
+        }
+        StoreChanges changes = event.getChanges();
+        if (changes != null && !changes.operations().isEmpty()) {
+            // Операции одного события выполнены в одну миллисекунду, окно сдвигается один раз
+            advanceTo(changes.operations().get(0).timestamp() / 1000);
+            for (StoreOperation operation : changes.operations()) {
+                apply(operation);
+            }
+        }
+        if (endOfBatch) {
+            batchStarted = false;
+            // Рейтинг пересчитывается один раз на пакет
+            if (topChanged) {
+                topProducts = heavyHitters.top(topSize);
+                topChanged = false;
+            }
+        }
+    }
+
+    private void apply(StoreOperation operation) {
+        switch (operation.type()) {
+            case PURCHASE -> sold(operation);
+            case RESERVED_PURCHASE -> {
+                sold(operation);
+                purchasedReservedUnits = purchasedReservedUnits + operation.quantity();
+            }
+            case RESERVE -> reservedUnits = reservedUnits + operation.quantity();
+            case SUPPLY -> {
+                // Поставки не влияют на продажи
+            }
+        }
+    }
+
+    // Учитывает продажу в окне выручки, итогах и рейтинге
+    private void sold(StoreOperation operation) {
+        int bucket = (int) (currentSecond % windowSeconds);
+        revenueBuckets.set(bucket, Double.doubleToRawLongBits(
+                Double.longBitsToDouble(revenueBuckets.get(bucket)) + operation.amount()));
+        windowRevenue = windowRevenue + operation.amount();
+        totalRevenue = totalRevenue + operation.amount();
+        unitsSold = unitsSold + operation.quantity();
+        heavyHitters.offer(operation.productName(), operation.quantity());
+        topChanged = true;
+    }
+
+    // Сдвигает окно, обнуляя секунды, вышедшие из него, и пересчитывает выручку в окне
+    private void advanceTo(long second) {
+        if (currentSecond < 0) {
+            currentSecond = second;
+            latestSecond = second;
+        }
+        if (second <= currentSecond) {
+            return;
+        }
+        long expired = Math.min(second - currentSecond, windowSeconds);
+        for (long s = 1; s <= expired; s++) {
+            revenueBuckets.set((int) ((currentSecond + s) % windowSeconds), 0);
+        }
+        double revenue = 0;
+        for (int i = 0; i < windowSeconds; i++) {
+            revenue += Double.longBitsToDouble(revenueBuckets.get(i));
+        }
+        windowRevenue = revenue;
+        currentSecond = second;
+        latestSecond = second;
+    }
+
+    /**
+     * Возвращает выручку за последние windowSeconds секунд на момент последнего пакета событий.
+     *
+     * @return выручка в окне.
+     */
+    public double getWindowRevenue() {
+        return windowRevenue;
+    }
+
+    /**
+     * Возвращает выручку по секундам окна, от самой старой к самой новой.
+     *
+     * @return массив длиной windowSeconds.
+     */
+    public double[] getRevenueSeries() {
+        double[] series = new double[windowSeconds];
+        long last = latestSecond;
+        if (last < 0) {
+            return series;
+        }
+        for (int i = 0; i < windowSeconds; i++) {
+            long second = last - windowSeconds + 1 + i;
+            if (second >= 0) {
+                series[i] = Double.longBitsToDouble(revenueBuckets.get((int) (second % windowSeconds)));
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Возвращает общую выручку с начала работы.
+     *
+     * @return общая выручка.
+     */
+    public double getTotalRevenue() {
+        return totalRevenue;
+    }
+
+    /**
+     * Возвращает общее количество проданных единиц товара.
+     *
+     * @return количество проданных единиц.
+     */
+    public long getUnitsSold() {
+        return unitsSold;
+    }
+
+    /**
+     * Возвращает самые продаваемые товары (оценка Space-Saving), по убыванию продаж.
+     *
+     * @return неизменяемый список не длиннее topSize.
+     */
+    public List<ProductSales> getTopProducts() {
+        return topProducts;
+    }
+
+    /**
+     * Возвращает долю забронированных единиц товара, которые были оплачены.
+     *
+     * @return конверсия бронирований от 0 до 1 (0, если бронирований не было).
+     */
+    public double getReservationConversionRate() {
+        long reserved = reservedUnits;
+        return reserved == 0 ? 0.0 : (double) purchasedReservedUnits / reserved;
+    }
+}
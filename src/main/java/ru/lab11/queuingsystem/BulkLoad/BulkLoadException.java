@@ -0,0 +1,31 @@
+package ru.lab11.queuingsystem.BulkLoad;
+
+/**
+ * Ошибка массовой загрузки. Блоки, разобранные до ошибки, уже применены к магазину;
+ * исключение сообщает, какая часть файла загружена.
+ */
+public class BulkLoadException extends RuntimeException {
+    private final LoadResult applied; // Примененная часть загрузки.
+
+    /**
+     * Конструктор исключения.
+     *
+     * @param applied итог примененной части: записи, байты от начала файла и токен последнего блока.
+     * @param cause   ошибка разбора блока, следующего за примененными.
+     */
+    public BulkLoadException(LoadResult applied, Throwable cause) {
+        super("Загрузка остановлена после " + applied.records() + " записей (первые " + applied.bytes()
+                + " байт файла применены): " + cause.getMessage(), cause);
+        this.applied = applied;
+    }
+
+    /**
+     * Возвращает итог примененной части загрузки. Строки файла начиная с байта
+     * {@code getApplied().bytes()} в магазин не попали, и загрузку можно продолжить с этого места.
+     *
+     * @return итог примененной части.
+     */
+    public LoadResult getApplied() {
+        return applied;
+    }
+}
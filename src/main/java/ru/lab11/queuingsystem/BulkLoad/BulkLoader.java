@@ -0,0 +1,195 @@
+package ru.lab11.queuingsystem.BulkLoad;
+
+import ru.lab11.queuingsystem.RequestProcessing.RequestSubmitter;
+import ru.lab11.queuingsystem.StoreAPI;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Массовая загрузка каталога и клиентов из CSV-файлов.
+ * Файл читается через отображение в память, делится на блоки по границам строк, и блоки
+ * разбираются параллельно. Строки разобранного блока публикуются через StoreAPI как обычные
+ * создания товаров и клиентов, поэтому загрузку видят потребители процессора (репликация,
+ * журнал) и TrafficRecorder, а ведомые узлы и восстановление из журнала получают те же данные.
+ * Порядок блоков сохраняется, поэтому при повторяющихся названиях побеждает последняя строка файла.
+ * С журналом загрузка завершается, когда последняя строка записана на диск.
+ *
+ * <p>Загрузка не атомарна: если блок не удалось разобрать, блоки перед ним уже применены.
+ * Блок проверяется целиком до публикации (в том числе длина названий, см.
+ * StoreCommand.MAX_STRING_LENGTH), поэтому блок с ошибкой не применяется частично.
+ * В этом случае выбрасывается {@link BulkLoadException} с числом примененных записей и байт.
+ */
+public class BulkLoader {
+    private static final int DEFAULT_CHUNK_BYTES = 8 * 1024 * 1024; // Размер блока разбора.
+
+    private final RequestSubmitter requestSubmitter; // Очередь запросов, через которую работает api.
+    private final StoreAPI api; // API магазина, в который загружаются данные.
+    private final int chunkBytes; // Примерный размер блока в байтах.
+    private final int parallelism; // Количество потоков разбора.
+    private final LoadProgressListener progressListener; // Получатель сведений о ходе загрузки (может быть null).
+
+    /**
+     * Конструктор загрузчика с параметрами по умолчанию.
+     *
+     * @param requestSubmitter очередь запросов, через которую работает api.
+     * @param api              API магазина.
+     */
+    public BulkLoader(RequestSubmitter requestSubmitter, StoreAPI api) {
+        this(requestSubmitter, api, DEFAULT_CHUNK_BYTES, Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    /**
+     * Конструктор загрузчика.
+     *
+     * @param requestSubmitter очередь запросов, через которую работает api.
+     * @param api              API магазина.
+     * @param chunkBytes       примерный размер блока разбора в байтах.
+     * @param parallelism      количество потоков разбора.
+     * @param progressListener получатель сведений о ходе загрузки или null.
+     */
+    public BulkLoader(RequestSubmitter requestSubmitter, StoreAPI api, int chunkBytes, int parallelism,
+                      LoadProgressListener progressListener) {
+        this.requestSubmitter = requestSubmitter;
+        this.api = api;
+        this.chunkBytes = chunkBytes;
+        this.parallelism = parallelism;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Загружает товары из файла со строками "название,количество,цена".
+     *
+     * @param file CSV-файл.
+     * @return итог загрузки.
+     * @throws IOException        при ошибке чтения файла.
+     * @throws BulkLoadException если строку не удалось разобрать; предыдущие блоки уже применены.
+     */
+    public LoadResult loadProducts(Path file) throws IOException {
+        return load(file, true);
+    }
+
+    /**
+     * Загружает клиентов из файла со строками "логин,баланс".
+     *
+     * @param file CSV-файл.
+     * @return итог загрузки.
+     * @throws IOException        при ошибке чтения файла.
+     * @throws BulkLoadException если строку не удалось разобрать; предыдущие блоки уже применены.
+     */
+    public LoadResult loadCustomers(Path file) throws IOException {
+        return load(file, false);
+    }
+
+    private LoadResult load(Path file, boolean products) throws IOException {
+        long start = System.nanoTime();
+        ExecutorService parsers = Executors.newFixedThreadPool(parallelism);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<long[]> chunks = splitAtLines(channel, size);
+
+            // Разбор идет параллельно, но не более чем на 2 * parallelism блоков вперед,
+            // чтобы не держать в памяти весь разобранный файл
+            ArrayDeque<CompletableFuture<ParsedChunk>> inFlight = new ArrayDeque<>();
+            int next = 0;
+            long records = 0;
+            long bytesRead = 0;
+            long token = -1;
+            for (int installed = 0; installed < chunks.size(); installed++) {
+                while (next < chunks.size() && inFlight.size() < 2 * parallelism) {
+                    long[] chunk = chunks.get(next++);
+                    inFlight.add(CompletableFuture.supplyAsync(() -> parse(channel, chunk, products), parsers));
+                }
+                ParsedChunk parsed;
+                try {
+                    parsed = inFlight.poll().join();
+                } catch (CompletionException e) {
+                    // Блоки до этого уже переданы в обработку: дожидаемся их и сообщаем, докуда дошли
+                    if (token >= 0) {
+                        requestSubmitter.waitFor(token);
+                        api.awaitDurable(token);
+                    }
+                    throw new BulkLoadException(new LoadResult(records, bytesRead, System.nanoTime() - start, token),
+                            e.getCause());
+                }
+                if (parsed.size > 0) {
+                    token = install(parsed, products);
+                }
+                records += parsed.size;
+                bytesRead += chunks.get(installed)[1];
+                if (progressListener != null) {
+                    progressListener.onProgress(records, bytesRead, size);
+                }
+            }
+            // Загрузка завершена, когда последний блок применен к магазину (и записан в журнал)
+            if (token >= 0) {
+                requestSubmitter.waitFor(token);
+                api.awaitDurable(token);
+            }
+            return new LoadResult(records, size, System.nanoTime() - start, token);
+        } finally {
+            parsers.shutdown();
+        }
+    }
+
+    // Делит файл на блоки {начало, длина}, заканчивающиеся концом строки
+    private List<long[]> splitAtLines(FileChannel channel, long size) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long chunkStart = 0;
+        while (chunkStart < size) {
+            long chunkEnd = Math.min(chunkStart + chunkBytes, size);
+            // Сдвигаем конец блока до ближайшего перевода строки
+            while (chunkEnd < size) {
+                probe.clear();
+                int read = channel.read(probe, chunkEnd);
+                int newline = -1;
+                for (int i = 0; i < read && newline < 0; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                    }
+                }
+                if (newline >= 0) {
+                    chunkEnd += newline + 1;
+                    break;
+                }
+                chunkEnd = Math.min(chunkEnd + read, size);
+            }
+            chunks.add(new long[]{chunkStart, chunkEnd - chunkStart});
+            chunkStart = chunkEnd;
+        }
+        return chunks;
+    }
+
+    private ParsedChunk parse(FileChannel channel, long[] chunk, boolean products) {
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1]);
+            return ParsedChunk.parse(buffer, products, chunk[0]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Публикует строки непустого блока через StoreAPI; возвращает токен последней строки
+    private long install(ParsedChunk chunk, boolean products) {
+        long token = -1;
+        for (int i = 0; i < chunk.size; i++) {
+            token = products
+                    ? api.addProductToStore(chunk.names[i], chunk.quantities[i], chunk.amounts[i])
+                    : api.createCustomer(chunk.names[i], chunk.amounts[i]);
+        }
+        return token;
+    }
+}
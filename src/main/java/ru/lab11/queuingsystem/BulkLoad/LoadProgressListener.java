@@ -0,0 +1,9 @@
+package ru.lab11.queuingsystem.BulkLoad;
+
+//Получатель сведений о ходе массовой загрузки.
+//Вызывается потоком, запустившим загрузку, после передачи каждого блока в обработку.
+@FunctionalInterface
+public interface LoadProgressListener {
+    // records — загружено записей, bytesRead — прочитано байт из totalBytes
+    void onProgress(long records, long bytesRead, long totalBytes);
+}
@@ -0,0 +1,30 @@
+package ru.lab11.queuingsystem.BulkLoad;
+
+/**
+ * Итог массовой загрузки.
+ *
+ * @param records     количество загруженных записей.
+ * @param bytes       размер файла в байтах.
+ * @param elapsedNanos время загрузки (чтение, разбор и применение в магазине).
+ * @param token       токен последнего события загрузки для чтения с гарантией "read-your-writes".
+ */
+public record LoadResult(long records, long bytes, long elapsedNanos, long token) {
+
+    /**
+     * Возвращает скорость загрузки.
+     *
+     * @return записей в секунду.
+     */
+    public double recordsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : records * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Возвращает скорость чтения.
+     *
+     * @return мегабайт в секунду.
+     */
+    public double megabytesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : bytes * 1e9 / elapsedNanos / (1024 * 1024);
+    }
+}
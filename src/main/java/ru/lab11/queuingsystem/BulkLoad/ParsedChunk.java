@@ -0,0 +1,94 @@
+package ru.lab11.queuingsystem.BulkLoad;
+
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+//Разобранный блок CSV-файла в виде столбцов.
+//Строка: "название,количество,цена" для товаров или "логин,баланс" для клиентов.
+//Пустые строки и строки, начинающиеся с '#', пропускаются. Поля длиннее MAX_FIELD_BYTES и названия
+//длиннее StoreCommand.MAX_STRING_LENGTH символов (их нельзя передать командой) отклоняются.
+class ParsedChunk {
+    String[] names = new String[1024];
+    int[] quantities; // null для клиентов
+    double[] amounts = new double[1024];
+    int size;
+
+    static final int MAX_FIELD_BYTES = 64 * 1024; // Наибольшая длина поля в байтах.
+
+    private byte[] field = new byte[256]; // Растет до длины самого длинного поля блока.
+
+    private ParsedChunk(boolean withQuantity) {
+        if (withQuantity) {
+            quantities = new int[1024];
+        }
+    }
+
+    // Разбирает блок; withQuantity = true для формата товаров
+    static ParsedChunk parse(ByteBuffer buffer, boolean withQuantity, long chunkOffset) {
+        ParsedChunk chunk = new ParsedChunk(withQuantity);
+        int expectedFields = withQuantity ? 3 : 2;
+        while (buffer.hasRemaining()) {
+            int lineStart = buffer.position();
+            int lineEnd = lineStart;
+            while (lineEnd < buffer.limit() && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int end = lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            buffer.position(Math.min(lineEnd + 1, buffer.limit()));
+            if (end == lineStart || buffer.get(lineStart) == '#') {
+                continue;
+            }
+            chunk.addLine(buffer, lineStart, end, expectedFields, chunkOffset);
+        }
+        return chunk;
+    }
+
+    private void addLine(ByteBuffer buffer, int start, int end, int expectedFields, long chunkOffset) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            amounts = Arrays.copyOf(amounts, size * 2);
+            if (quantities != null) {
+                quantities = Arrays.copyOf(quantities, size * 2);
+            }
+        }
+        int fieldIndex = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i < end && buffer.get(i) != ',') {
+                continue;
+            }
+            int length = i - fieldStart;
+            if (fieldIndex >= expectedFields) {
+                throw new IllegalArgumentException("Некорректная строка в позиции " + (chunkOffset + start));
+            }
+            if (length > MAX_FIELD_BYTES) {
+                throw new IllegalArgumentException("Поле длиннее " + MAX_FIELD_BYTES + " байт в позиции "
+                        + (chunkOffset + fieldStart));
+            }
+            if (length > field.length) {
+                field = new byte[Math.max(length, field.length * 2)];
+            }
+            buffer.get(fieldStart, field, 0, length);
+            if (fieldIndex == 0) {
+                names[size] = new String(field, 0, length, StandardCharsets.UTF_8);
+                if (names[size].length() > StoreCommand.MAX_STRING_LENGTH) {
+                    throw new IllegalArgumentException("Название длиннее " + StoreCommand.MAX_STRING_LENGTH
+                            + " символов в позиции " + (chunkOffset + fieldStart));
+                }
+            } else if (fieldIndex == 1 && quantities != null) {
+                quantities[size] = Integer.parseInt(new String(field, 0, length, StandardCharsets.ISO_8859_1).trim());
+            } else {
+                amounts[size] = Double.parseDouble(new String(field, 0, length, StandardCharsets.ISO_8859_1));
+            }
+            fieldIndex++;
+            fieldStart = i + 1;
+        }
+        if (fieldIndex != expectedFields) {
+            throw new IllegalArgumentException("Некорректная строка в позиции " + (chunkOffset + start));
+        }
+        size++;
+    }
+}
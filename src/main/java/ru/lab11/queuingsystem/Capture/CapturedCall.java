@@ -0,0 +1,12 @@
+package ru.lab11.queuingsystem.Capture;
+
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+
+/**
+ * Записанный вызов StoreAPI.
+ *
+ * @param arrivalNanos время прихода вызова от начала записи, нс.
+ * @param command      операция и ее аргументы.
+ */
+public record CapturedCall(long arrivalNanos, StoreCommand command) {
+}
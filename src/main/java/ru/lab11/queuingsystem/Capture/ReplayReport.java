@@ -0,0 +1,26 @@
+package ru.lab11.queuingsystem.Capture;
+
+/**
+ * Итог воспроизведения записи.
+ *
+ * @param calls        количество воспроизведенных вызовов.
+ * @param failed       количество вызовов, завершившихся исключением.
+ * @param elapsedNanos время от первого вызова до последнего результата, нс.
+ * @param p50Nanos     медиана задержки, нс.
+ * @param p99Nanos     99-й процентиль задержки, нс.
+ * @param p999Nanos    99.9-й процентиль задержки, нс.
+ * @param maxNanos     наибольшая задержка, нс.
+ * @param checksum     контрольная сумма состояния магазина после воспроизведения (см. StateChecksum).
+ */
+public record ReplayReport(int calls, int failed, long elapsedNanos, long p50Nanos, long p99Nanos, long p999Nanos,
+                           long maxNanos, long checksum) {
+
+    /**
+     * Пропускная способность воспроизведения.
+     *
+     * @return вызовов в секунду.
+     */
+    public double throughput() {
+        return elapsedNanos > 0 ? calls * 1e9 / elapsedNanos : 0.0;
+    }
+}
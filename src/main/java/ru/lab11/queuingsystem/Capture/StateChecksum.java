@@ -0,0 +1,64 @@
+package ru.lab11.queuingsystem.Capture;
+
+import ru.lab11.queuingsystem.MyStore.Customer;
+import ru.lab11.queuingsystem.MyStore.Product;
+import ru.lab11.queuingsystem.MyStore.Store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Контрольная сумма состояния магазина: баланс, товары (остаток и цена) и клиенты
+ * (баланс, траты и брони). Не зависит от порядка хранения, поэтому совпадает у магазинов
+ * с одинаковым состоянием. Вызывается в потоке обработки.
+ */
+public final class StateChecksum {
+    private StateChecksum() {
+    }
+
+    /**
+     * Считает контрольную сумму состояния магазина.
+     *
+     * @param store магазин.
+     * @return контрольная сумма CRC32C.
+     */
+    public static long of(Store store) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer number = ByteBuffer.allocate(Long.BYTES);
+        update(crc, number, Double.doubleToLongBits(store.getStoreBalance()));
+
+        List<Product> products = new ArrayList<>(store.getProducts());
+        products.sort(Comparator.comparing(Product::getName));
+        for (Product product : products) {
+            crc.update(product.getName().getBytes(StandardCharsets.UTF_8));
+            update(crc, number, product.getQuantity());
+            update(crc, number, Double.doubleToLongBits(product.getPrice()));
+        }
+
+        List<Customer> customers = new ArrayList<>(store.getCustomers());
+        customers.sort(Comparator.comparing(Customer::getLogin));
+        for (Customer customer : customers) {
+            crc.update(customer.getLogin().getBytes(StandardCharsets.UTF_8));
+            update(crc, number, Double.doubleToLongBits(customer.getBalance()));
+            update(crc, number, Double.doubleToLongBits(customer.getSpentAmount()));
+            List<Map.Entry<Product, Integer>> reserved = new ArrayList<>(customer.getReservedProducts().entrySet());
+            reserved.sort(Comparator.comparing(entry -> entry.getKey().getName()));
+            for (Map.Entry<Product, Integer> entry : reserved) {
+                crc.update(entry.getKey().getName().getBytes(StandardCharsets.UTF_8));
+                update(crc, number, entry.getValue());
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static void update(CRC32C crc, ByteBuffer number, long value) {
+        number.clear();
+        number.putLong(value).flip();
+        crc.update(number);
+    }
+}
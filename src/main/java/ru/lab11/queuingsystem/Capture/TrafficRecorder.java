@@ -0,0 +1,202 @@
+package ru.lab11.queuingsystem.Capture;
+
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Запись входящих вызовов StoreAPI в двоичный файл для последующего воспроизведения
+ * (см. TrafficReplay). Подключается через StoreAPI.setRecorder; без записи API только
+ * проверяет поле на null.
+ *
+ * <p>Запись: [int длина команды][long время прихода от начала записи, нс][StoreCommand].
+ * Вызовы пишутся в порядке прихода в StoreAPI; для вызовов из разных потоков он может
+ * отличаться от порядка во входном кольце на доли микросекунды.
+ *
+ * <p>Вызывающий поток только ставит вызов в неблокирующую очередь; кодирование и запись
+ * на диск выполняет отдельный поток «traffic-recorder», так что медленный диск не задерживает
+ * вызовы StoreAPI. Очередь ограничена MAX_QUEUED_CALLS вызовами; вызовы сверх предела
+ * не записываются и считаются (getDroppedCalls).
+ *
+ * <p>Ошибка записи на диск не влияет на вызовы: запись прекращается, а ошибка
+ * выбрасывается из close().
+ */
+public class TrafficRecorder implements Closeable {
+    private static final int RECORD_HEADER = Integer.BYTES + Long.BYTES;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int MAX_QUEUED_CALLS = 1 << 16; // Вызовов, ждущих потока записи.
+    private static final long PARK_NANOS = 100_000; // Сон потока записи при пустой очереди.
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES); // Несброшенные записи (поток записи).
+    private final long startNanos = System.nanoTime(); // Начало записи.
+    private final Queue<CapturedCall> queuedCalls = new ConcurrentLinkedQueue<>(); // Вызовы для потока записи.
+    private final AtomicInteger queuedCount = new AtomicInteger(); // Размер queuedCalls.
+    private final LongAdder droppedCalls = new LongAdder(); // Вызовы, не поместившиеся в очередь.
+    private final Thread writer; // Поток записи на диск.
+    private volatile long recordedCalls; // Количество записанных вызовов (пишет только поток записи).
+    private volatile IOException failure; // Ошибка записи (пишет только поток записи).
+    private volatile boolean running = true;
+
+    /**
+     * Создает файл записи и запускает поток записи.
+     *
+     * @param file файл записи; перезаписывается, если существует.
+     * @throws IOException при ошибке создания.
+     */
+    public TrafficRecorder(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writer = new Thread(this::writeCalls, "traffic-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Ставит вызов в очередь записи с текущим временем прихода; не ждет диск.
+     *
+     * @param command операция и ее аргументы.
+     */
+    public void record(StoreCommand command) {
+        if (failure != null) {
+            return;
+        }
+        long arrival = System.nanoTime() - startNanos;
+        if (queuedCount.incrementAndGet() > MAX_QUEUED_CALLS) {
+            queuedCount.decrementAndGet();
+            droppedCalls.increment();
+            return;
+        }
+        queuedCalls.add(new CapturedCall(arrival, command));
+    }
+
+    /**
+     * Возвращает количество записанных вызовов.
+     *
+     * @return количество вызовов.
+     */
+    public long getRecordedCalls() {
+        return recordedCalls;
+    }
+
+    /**
+     * Возвращает количество вызовов, не записанных из-за переполнения очереди.
+     *
+     * @return количество вызовов.
+     */
+    public long getDroppedCalls() {
+        return droppedCalls.sum();
+    }
+
+    /**
+     * Дописывает вызовы из очереди, сбрасывает записи на диск и закрывает файл.
+     *
+     * @throws IOException если запись прерывалась из-за ошибки или не удалась при закрытии.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Читает файл записи. Недописанная последняя запись пропускается.
+     *
+     * @param file файл записи.
+     * @return вызовы в порядке записи.
+     * @throws IOException при ошибке чтения.
+     */
+    public static List<CapturedCall> read(Path file) throws IOException {
+        List<CapturedCall> calls = new ArrayList<>();
+        try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer data = input.map(FileChannel.MapMode.READ_ONLY, 0, input.size());
+            while (data.remaining() >= RECORD_HEADER) {
+                int length = data.getInt();
+                long arrival = data.getLong();
+                if (length <= 0 || length > data.remaining()) {
+                    break;
+                }
+                ByteBuffer record = data.slice(data.position(), length);
+                data.position(data.position() + length);
+                calls.add(new CapturedCall(arrival, StoreCommand.readFrom(record)));
+            }
+        }
+        return calls;
+    }
+
+    // Поток записи: кодирует вызовы из очереди в буфер и сбрасывает его, когда он заполнен
+    // или очередь опустела
+    private void writeCalls() {
+        try {
+            while (running || !queuedCalls.isEmpty()) {
+                CapturedCall call;
+                long written = recordedCalls;
+                while ((call = queuedCalls.poll()) != null) {
+                    queuedCount.decrementAndGet();
+                    write(call);
+                    written++;
+                }
+                recordedCalls = written;
+                if (buffer.position() > 0) {
+                    flush();
+                } else if (running) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+            queuedCalls.clear();
+        }
+    }
+
+    private void write(CapturedCall call) throws IOException {
+        StoreCommand command = call.command();
+        int size = RECORD_HEADER + command.maxEncodedSize();
+        if (buffer.remaining() < size) {
+            flush();
+        }
+        ByteBuffer target = buffer.remaining() >= size ? buffer : ByteBuffer.allocate(size);
+        int start = target.position();
+        target.position(start + RECORD_HEADER);
+        command.writeTo(target);
+        target.putInt(start, target.position() - start - RECORD_HEADER);
+        target.putLong(start + Integer.BYTES, call.arrivalNanos());
+        if (target != buffer) {
+            // Команда больше буфера — пишется сразу
+            target.flip();
+            writeFully(target);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ru.lab11.queuingsystem.Capture;
+
+import ru.lab11.queuingsystem.MyStore.Store;
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+import ru.lab11.queuingsystem.RequestProcessing.DisruptorProcessor;
+import ru.lab11.queuingsystem.StoreAPI;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Воспроизведение записи TrafficRecorder на новом магазине.
+ * Аргументы: файл_записи [paced] — без paced вызовы подаются без пауз, с paced — с исходными
+ * интервалами между приходами.
+ *
+ * <p>Вызовы подаются одним потоком через StoreAPI.execute без ожидания результатов.
+ * Задержка считается до завершения результата: в режиме без пауз — от подачи вызова,
+ * с паузами — от запланированного времени прихода, чтобы отставание подачи попадало в задержку.
+ * Создание клиента, добавление товара и поставка сразу возвращают токен запроса, поэтому их
+ * задержка считается до выполнения токена (processor.waitFor): это ожидание идет в отдельном
+ * потоке, по порядку токенов, и не задерживает подачу.
+ */
+public class TrafficReplay {
+    private static final long SPIN_NANOS = 100_000; // Ближе этого к времени прихода ждем без сна.
+
+    public static void main(String[] args) throws Exception {
+        boolean paced = args.length > 1 && args[1].equals("paced");
+        ReplayReport report = replay(Path.of(args[0]), paced);
+        System.out.printf("Вызовов: %d, ошибок: %d, пропускная способность: %.0f вызовов/с%n",
+                report.calls(), report.failed(), report.throughput());
+        System.out.printf("Задержка, мкс: p50=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+                report.p50Nanos() / 1e3, report.p99Nanos() / 1e3, report.p999Nanos() / 1e3, report.maxNanos() / 1e3);
+        System.out.printf("Контрольная сумма состояния: %08x%n", report.checksum());
+    }
+
+    /**
+     * Воспроизводит запись на новом магазине и процессоре с настройками по умолчанию.
+     *
+     * @param capture файл записи.
+     * @param paced   сохранять ли исходные интервалы между вызовами.
+     * @return итог воспроизведения.
+     * @throws IOException при ошибке чтения записи.
+     */
+    public static ReplayReport replay(Path capture, boolean paced) throws IOException {
+        DisruptorProcessor processor = new DisruptorProcessor();
+        try {
+            return replay(capture, paced, processor);
+        } finally {
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * Воспроизводит запись на новом магазине через указанный процессор (для сравнения настроек).
+     * Процессор не должен обрабатывать другие запросы; он не останавливается.
+     *
+     * @param capture   файл записи.
+     * @param paced     сохранять ли исходные интервалы между вызовами.
+     * @param processor процессор запросов.
+     * @return итог воспроизведения.
+     * @throws IOException при ошибке чтения записи.
+     */
+    public static ReplayReport replay(Path capture, boolean paced, DisruptorProcessor processor) throws IOException {
+        List<CapturedCall> calls = TrafficRecorder.read(capture);
+        Store store = new Store(0.0);
+        StoreAPI api = new StoreAPI(processor, store);
+        long[] latencies = new long[calls.size()];
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(calls.size());
+        ExecutorService tokenWaiter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replay-token-waiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long firstArrival = calls.isEmpty() ? 0 : calls.get(0).arrivalNanos();
+        long start = System.nanoTime();
+        for (int i = 0; i < calls.size(); i++) {
+            CapturedCall call = calls.get(i);
+            long begin;
+            if (paced) {
+                begin = start + call.arrivalNanos() - firstArrival;
+                waitUntil(begin);
+            } else {
+                begin = System.nanoTime();
+            }
+            int index = i;
+            CompletableFuture<Long> result = api.execute(call.command());
+            if (returnsToken(call.command())) {
+                // Результат — токен: вызов выполнен, когда процессор дошел до него
+                result = result.thenApplyAsync(token -> {
+                    processor.waitFor(token);
+                    return token;
+                }, tokenWaiter);
+            }
+            result.whenComplete((value, error) -> {
+                // Каждая ячейка пишется один раз; ожидание done делает значения видимыми
+                latencies[index] = System.nanoTime() - begin;
+                if (error != null) {
+                    failed.incrementAndGet();
+                }
+                done.countDown();
+            });
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Воспроизведение прервано", e);
+        } finally {
+            tokenWaiter.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] checksum = new long[1];
+        processor.waitFor(processor.submitRequest(() -> checksum[0] = StateChecksum.of(store)));
+
+        Arrays.sort(latencies);
+        return new ReplayReport(calls.size(), failed.get(), elapsed, percentile(latencies, 0.50),
+                percentile(latencies, 0.99), percentile(latencies, 0.999),
+                latencies.length > 0 ? latencies[latencies.length - 1] : 0, checksum[0]);
+    }
+
+    // Операции, результат которых — токен запроса, а не итог его выполнения
+    private static boolean returnsToken(StoreCommand command) {
+        return command.op() == StoreCommand.CREATE_CUSTOMER || command.op() == StoreCommand.ADD_PRODUCT
+                || command.op() == StoreCommand.SUPPLY;
+    }
+
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.floor(quantile * sorted.length))];
+    }
+}
@@ -0,0 +1,256 @@
+package ru.lab11.queuingsystem.Durability;
+
+import com.lmax.disruptor.EventHandler;
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+import ru.lab11.queuingsystem.RequestProcessing.RequestEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Журнал изменяющих команд с групповой фиксацией. Работает как потребитель после потока
+ * обработки: дописывает StoreCommand каждого события в буфер и сбрасывает его на диск
+ * одним write + force в конце пакета Disruptor (endOfBatch), а также при заполнении буфера
+ * или по истечении maxBatchNanos внутри длинного пакета. Один fsync приходится на весь пакет.
+ *
+ * <p>После сброса номер последнего события пакета становится долговечным, и все ожидающие
+ * результаты с токенами не больше него освобождаются вместе (whenDurable). StoreAPI,
+ * созданный с журналом, завершает результаты записей только после этого.
+ *
+ * <p>Подключение:
+ * <pre>
+ * GroupCommitJournal journal = new GroupCommitJournal(Path.of("store.journal"));
+ * DisruptorProcessor processor = new DisruptorProcessor(null, journal);
+ * StoreAPI api = new StoreAPI(processor, store, journal);
+ * </pre>
+ *
+ * <p>Запись: [int длина][StoreCommand]. Недописанная последняя запись при чтении пропускается.
+ * При ошибке записи все ожидающие и последующие результаты завершаются с исключением.
+ */
+public class GroupCommitJournal implements EventHandler<RequestEvent>, Closeable {
+    private static final int DEFAULT_BATCH_BYTES = 1 << 20; // Размер буфера пакета по умолчанию.
+    private static final long DEFAULT_BATCH_NANOS = 2_000_000L; // Наибольшее время пакета по умолчанию.
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer; // Записи текущего пакета (только поток журнала).
+    private final long maxBatchNanos; // Наибольшее время между первой записью пакета и сбросом.
+
+    // Только поток журнала
+    private long batchStartNanos; // Время первой записи несброшенного пакета.
+    private long lastSequence = -1; // Номер последнего события, попавшего в пакет.
+    private final PriorityQueue<Waiter> pending = new PriorityQueue<>(Comparator.comparingLong(Waiter::token));
+
+    // Общие с ожидающими потоками
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>(); // Новые ожидающие.
+    private volatile long durableSequence = -1; // Номер последнего события, записанного на диск.
+    private volatile IOException failure; // Ошибка записи, после которой журнал не принимает данные.
+    private volatile long syncCount; // Количество fsync.
+    private volatile long writtenCommands; // Количество записанных команд.
+
+    // Ожидание долговечности события с номером token
+    private record Waiter(long token, CompletableFuture<Void> future) {
+    }
+
+    /**
+     * Открывает журнал с параметрами пакета по умолчанию (1 МБ, 2 мс).
+     *
+     * @param file файл журнала; дописывается, если существует.
+     * @throws IOException при ошибке открытия.
+     */
+    public GroupCommitJournal(Path file) throws IOException {
+        this(file, DEFAULT_BATCH_BYTES, DEFAULT_BATCH_NANOS);
+    }
+
+    /**
+     * Открывает журнал.
+     *
+     * @param file          файл журнала; дописывается, если существует.
+     * @param maxBatchBytes размер буфера пакета: при заполнении пакет сбрасывается раньше endOfBatch;
+     *                      не меньше записи самой большой команды (4 + StoreCommand.MAX_ENCODED_SIZE).
+     * @param maxBatchNanos наибольшее время пакета: более долгий пакет сбрасывается раньше endOfBatch.
+     * @throws IOException              при ошибке открытия.
+     * @throws IllegalArgumentException если буфер пакета меньше записи самой большой команды.
+     */
+    public GroupCommitJournal(Path file, int maxBatchBytes, long maxBatchNanos) throws IOException {
+        if (maxBatchBytes < Integer.BYTES + StoreCommand.MAX_ENCODED_SIZE) {
+            throw new IllegalArgumentException("Буфер пакета должен вмещать самую большую команду: "
+                    + (Integer.BYTES + StoreCommand.MAX_ENCODED_SIZE) + " байт");
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.buffer = ByteBuffer.allocateDirect(maxBatchBytes);
+        this.maxBatchNanos = maxBatchNanos;
+    }
+
+    @Override
+    public void onEvent(RequestEvent event, long sequence, boolean endOfBatch) {
+        StoreCommand command = event.getCommand();
+        if (failure == null && command != null && command.isWrite()) {
+            int size = Integer.BYTES + command.maxEncodedSize();
+            if (buffer.remaining() < size) {
+                flush();
+            }
+            if (buffer.position() == 0) {
+                batchStartNanos = System.nanoTime();
+            }
+            int start = buffer.position();
+            try {
+                buffer.position(start + Integer.BYTES);
+                command.writeTo(buffer);
+                buffer.putInt(start, buffer.position() - start - Integer.BYTES);
+                writtenCommands++;
+            } catch (RuntimeException e) {
+                // Команда, не прошедшая проверку StoreAPI: предыдущие команды пакета сбрасываются, затем
+                // журнал прекращает запись, как при ошибке диска, а ожидающие получают ошибку вместо вечного ожидания
+                buffer.position(start);
+                flush();
+                if (failure == null) {
+                    failure = new IOException("Команда не может быть записана в журнал", e);
+                }
+                releaseWaiters();
+            }
+        }
+        lastSequence = event.getSequence();
+        if (endOfBatch || (buffer.position() > 0 && System.nanoTime() - batchStartNanos >= maxBatchNanos)) {
+            flush();
+        }
+    }
+
+    // Сбрасывает пакет на диск и освобождает ожидающих
+    private void flush() {
+        if (failure == null && buffer.position() > 0) {
+            try {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                syncCount++;
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                buffer.clear();
+            }
+        }
+        if (failure == null) {
+            durableSequence = lastSequence;
+        }
+        releaseWaiters();
+    }
+
+    // Завершает результаты, чьи события уже на диске (или все, если запись невозможна)
+    private void releaseWaiters() {
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            pending.add(waiter);
+        }
+        long durable = durableSequence;
+        while (!pending.isEmpty() && (failure != null || pending.peek().token() <= durable)) {
+            complete(pending.poll().future());
+        }
+    }
+
+    private void complete(CompletableFuture<Void> future) {
+        IOException error = failure;
+        if (error != null) {
+            future.completeExceptionally(new UncheckedIOException("Журнал недоступен", error));
+        } else {
+            future.complete(null);
+        }
+    }
+
+    /**
+     * Возвращает результат, который завершится, когда событие с токеном (и все до него)
+     * будет записано на диск. Завершается потоком журнала; обработчики должны быть легкими.
+     *
+     * @param token токен запроса.
+     * @return результат ожидания.
+     */
+    public CompletableFuture<Void> whenDurable(long token) {
+        if (failure == null && durableSequence >= token) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        waiters.add(new Waiter(token, future));
+        // Поток журнала мог освободить ожидающих до добавления
+        if (failure != null) {
+            complete(future);
+        } else if (durableSequence >= token) {
+            future.complete(null);
+        }
+        return future;
+    }
+
+    /**
+     * Блокирует, пока событие с токеном не будет записано на диск.
+     *
+     * @param token токен запроса.
+     * @throws UncheckedIOException если запись журнала завершилась ошибкой.
+     */
+    public void awaitDurable(long token) {
+        try {
+            whenDurable(token).join();
+        } catch (java.util.concurrent.CompletionException e) {
+            throw (UncheckedIOException) e.getCause();
+        }
+    }
+
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    public long getWrittenCommands() {
+        return writtenCommands;
+    }
+
+    /**
+     * Закрывает файл журнала. Вызывается после остановки процессора.
+     *
+     * @throws IOException при ошибке закрытия.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Читает команды журнала по порядку (для восстановления: команды передаются в StoreAPI.execute).
+     *
+     * @param file     файл журнала.
+     * @param consumer получатель команд.
+     * @return количество прочитанных команд.
+     * @throws IOException при ошибке чтения.
+     */
+    public static long replay(Path file, Consumer<StoreCommand> consumer) throws IOException {
+        long count = 0;
+        try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer data = input.map(FileChannel.MapMode.READ_ONLY, 0, input.size());
+            while (data.remaining() >= Integer.BYTES) {
+                int length = data.getInt();
+                if (length <= 0 || length > data.remaining()) {
+                    break;
+                }
+                ByteBuffer record = data.slice(data.position(), length);
+                data.position(data.position() + length);
+                consumer.accept(StoreCommand.readFrom(record));
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,29 @@
+package ru.lab11.queuingsystem.History;
+
+import java.util.Arrays;
+
+//Общие номера записей одного клиента в порядке времени.
+//Один писатель (поток истории) дописывает номера; читатели читают count, затем массив:
+//массив увеличивается копированием до увеличения count, поэтому в нем всегда есть count номеров.
+class CustomerPostings {
+    private volatile long[] positions = new long[4];
+    private volatile int count;
+
+    void add(long position) {
+        long[] current = positions;
+        if (count == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            positions = current;
+        }
+        current[count] = position;
+        count = count + 1;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long[] positions() {
+        return positions;
+    }
+}
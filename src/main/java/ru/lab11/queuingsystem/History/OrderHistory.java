@@ -0,0 +1,294 @@
+package ru.lab11.queuingsystem.History;
+
+import com.lmax.disruptor.EventHandler;
+import ru.lab11.queuingsystem.MyStore.StoreChanges;
+import ru.lab11.queuingsystem.MyStore.StoreOperation;
+import ru.lab11.queuingsystem.RequestProcessing.RequestEvent;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * История заказов: каждая оплаченная позиция (покупка и оплата брони) в виде записи фиксированной
+ * ширины (клиент, товар, количество, сумма, время) в столбцовых сегментах на диске.
+ * Работает как потребитель после потока обработки и читает операции из StoreChanges,
+ * поэтому запись на диск не задерживает поток обработки.
+ *
+ * <p>Записи упорядочены по времени, поэтому выборка по интервалу пропускает сегменты
+ * по крайним значениям времени и ищет начало двоичным поиском. Для выборки по клиенту
+ * в памяти хранится индекс номеров записей каждого клиента (восстанавливается при открытии).
+ * Запросы выполняются в потоках читателей и видят записи, опубликованные в конце пакета.
+ *
+ * <p>Подключение:
+ * <pre>
+ * store.enableChangeTracking();
+ * OrderHistory history = new OrderHistory(Path.of("orders"));
+ * DisruptorProcessor processor = new DisruptorProcessor(store::drainChanges, history);
+ * </pre>
+ *
+ * <p>Названия товаров хранятся в словаре products.txt (номер товара — номер строки).
+ *
+ * <p>Ошибка записи на диск не останавливает процессор: история перестает принимать записи
+ * (уже опубликованные остаются доступны), а ошибка выбрасывается из close().
+ */
+public class OrderHistory implements EventHandler<RequestEvent>, Closeable {
+    private static final int DEFAULT_SEGMENT_RECORDS = 1 << 20; // Записей в сегменте по умолчанию.
+    private static final String DICTIONARY = "products.txt";
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final List<OrderSegment> segments = new CopyOnWriteArrayList<>();
+    private final Map<Integer, CustomerPostings> postings = new ConcurrentHashMap<>();
+    private final List<String> productNames = new CopyOnWriteArrayList<>(); // Номер товара -> название.
+
+    // Только поток истории
+    private final Map<String, Integer> productIds = new HashMap<>();
+    private final BufferedWriter dictionaryWriter;
+    private long lastTimestamp;
+
+    private volatile long publishedRecords; // Количество записей, видимых читателям.
+    private volatile IOException failure; // Ошибка записи, после которой история не принимает записи.
+
+    /**
+     * Открывает историю с сегментами по 2^20 записей.
+     *
+     * @param directory каталог истории; создается, если его нет.
+     * @throws IOException при ошибке открытия.
+     */
+    public OrderHistory(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * Открывает историю и восстанавливает индекс клиентов по существующим сегментам.
+     *
+     * @param directory      каталог истории; создается, если его нет.
+     * @param segmentRecords записей в сегменте (должно совпадать при повторном открытии).
+     * @throws IOException при ошибке открытия.
+     */
+    public OrderHistory(Path directory, int segmentRecords) throws IOException {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        Files.createDirectories(directory);
+        Path dictionary = directory.resolve(DICTIONARY);
+        if (Files.exists(dictionary)) {
+            for (String name : Files.readAllLines(dictionary, StandardCharsets.UTF_8)) {
+                productIds.put(name, productNames.size());
+                productNames.add(name);
+            }
+        }
+        dictionaryWriter = Files.newBufferedWriter(dictionary, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        long position = 0;
+        for (int index = 0; Files.exists(segmentFile(index)); index++) {
+            OrderSegment segment = OrderSegment.open(segmentFile(index), position, segmentRecords);
+            segments.add(segment);
+            for (int i = 0; i < segment.size(); i++) {
+                postings.computeIfAbsent(segment.customerId(i), id -> new CustomerPostings()).add(position + i);
+            }
+            if (segment.size() > 0) {
+                lastTimestamp = segment.timestamp(segment.size() - 1);
+            }
+            position += segment.size();
+        }
+        publishedRecords = position;
+    }
+
+    @Override
+    public void onEvent(RequestEvent event, long sequence, boolean endOfBatch) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            StoreChanges changes = event.getChanges();
+            if (changes != null) {
+                for (StoreOperation operation : changes.operations()) {
+                    if (operation.type() == StoreOperation.Type.PURCHASE
+                            || operation.type() == StoreOperation.Type.RESERVED_PURCHASE) {
+                        append(operation);
+                    }
+                }
+            }
+            if (endOfBatch) {
+                publish();
+            }
+        } catch (IOException e) {
+            // Исключение остановило бы потребителя и вместе с ним процессор
+            failure = e;
+        }
+    }
+
+    // Дописывает оплаченную позицию; время не убывает, даже если системные часы сдвинулись назад
+    private void append(StoreOperation operation) throws IOException {
+        OrderSegment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.isFull()) {
+            if (segment != null) {
+                segment.publish();
+            }
+            long firstPosition = segment == null ? 0 : segment.firstPosition + segment.capacity;
+            segment = OrderSegment.open(segmentFile(segments.size()), firstPosition, segmentRecords);
+            segments.add(segment);
+        }
+        lastTimestamp = Math.max(lastTimestamp, operation.timestamp());
+        long position = segment.firstPosition + segment.written();
+        segment.append(operation.customerId(), productId(operation.productName()), operation.quantity(),
+                operation.amount(), lastTimestamp);
+        // Номер попадает в индекс сразу, но читатели не смотрят дальше publishedRecords
+        postings.computeIfAbsent(operation.customerId(), id -> new CustomerPostings()).add(position);
+    }
+
+    // Номер товара в словаре; новый товар дописывается в словарь
+    private int productId(String productName) throws IOException {
+        Integer id = productIds.get(productName);
+        if (id == null) {
+            id = productNames.size();
+            productIds.put(productName, id);
+            productNames.add(productName);
+            dictionaryWriter.write(productName);
+            dictionaryWriter.newLine();
+        }
+        return id;
+    }
+
+    // Публикует записи пакета для читателей
+    private void publish() throws IOException {
+        dictionaryWriter.flush();
+        if (!segments.isEmpty()) {
+            OrderSegment segment = segments.get(segments.size() - 1);
+            segment.publish();
+            publishedRecords = segment.firstPosition + segment.size();
+        }
+    }
+
+    /**
+     * Возвращает заказы клиента за интервал времени в порядке времени.
+     *
+     * @param customerId номер клиента (Customer.getId()).
+     * @param fromMillis начало интервала включительно.
+     * @param toMillis   конец интервала включительно.
+     * @return заказы клиента.
+     */
+    public List<OrderRecord> ordersOf(int customerId, long fromMillis, long toMillis) {
+        List<OrderRecord> result = new ArrayList<>();
+        CustomerPostings customer = postings.get(customerId);
+        if (customer == null) {
+            return result;
+        }
+        long limit = publishedRecords;
+        List<OrderSegment> snapshot = segments;
+        int count = customer.count();
+        long[] positions = customer.positions();
+        // Двоичный поиск первой записи не раньше fromMillis
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (positions[middle] < limit && timestamp(snapshot, positions[middle]) < fromMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < count && positions[i] < limit; i++) {
+            OrderSegment segment = snapshot.get((int) (positions[i] / segmentRecords));
+            int index = (int) (positions[i] % segmentRecords);
+            if (segment.timestamp(index) > toMillis) {
+                break;
+            }
+            result.add(read(segment, index));
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает все заказы за интервал времени в порядке времени.
+     *
+     * @param fromMillis начало интервала включительно.
+     * @param toMillis   конец интервала включительно.
+     * @return заказы за интервал.
+     */
+    public List<OrderRecord> ordersBetween(long fromMillis, long toMillis) {
+        List<OrderRecord> result = new ArrayList<>();
+        long limit = publishedRecords;
+        for (OrderSegment segment : segments) {
+            int size = (int) Math.min(segment.capacity, Math.max(0, limit - segment.firstPosition));
+            if (size == 0 || segment.timestamp(size - 1) < fromMillis) {
+                continue;
+            }
+            if (segment.timestamp(0) > toMillis) {
+                break;
+            }
+            for (int i = segment.lowerBound(fromMillis, size); i < size && segment.timestamp(i) <= toMillis; i++) {
+                result.add(read(segment, i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Проверяет, прекращена ли запись истории из-за ошибки.
+     *
+     * @return true, если запись завершилась ошибкой.
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Возвращает количество опубликованных записей.
+     *
+     * @return количество записей.
+     */
+    public long getRecordCount() {
+        return publishedRecords;
+    }
+
+    /**
+     * Публикует последние записи и закрывает файлы. Вызывается после остановки процессора.
+     *
+     * @throws IOException при ошибке записи, в том числе если запись прерывалась из-за ошибки.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (failure == null) {
+                publish();
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            dictionaryWriter.close();
+            for (OrderSegment segment : segments) {
+                segment.close();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private long timestamp(List<OrderSegment> snapshot, long position) {
+        return snapshot.get((int) (position / segmentRecords)).timestamp((int) (position % segmentRecords));
+    }
+
+    private OrderRecord read(OrderSegment segment, int index) {
+        return new OrderRecord(segment.customerId(index), productNames.get(segment.productId(index)),
+                segment.quantity(index), segment.amount(index), segment.timestamp(index));
+    }
+
+    private Path segmentFile(int index) {
+        return directory.resolve(String.format("orders-%06d.seg", index));
+    }
+}
@@ -0,0 +1,13 @@
+package ru.lab11.queuingsystem.History;
+
+/**
+ * Запись истории заказов: одна оплаченная позиция.
+ *
+ * @param customerId  номер клиента в таблице клиентов магазина.
+ * @param productName название товара.
+ * @param quantity    количество товара.
+ * @param amount      сумма оплаты.
+ * @param timestamp   время оплаты в миллисекундах.
+ */
+public record OrderRecord(int customerId, String productName, int quantity, double amount, long timestamp) {
+}
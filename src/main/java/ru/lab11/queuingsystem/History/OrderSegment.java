@@ -0,0 +1,119 @@
+package ru.lab11.queuingsystem.History;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//Сегмент истории заказов: файл фиксированного размера, отображенный в память.
+//Формат: [long количество записей][столбец клиентов int][столбец товаров int]
+//[столбец количеств int][столбец сумм double][столбец времени long], в каждом столбце capacity значений.
+//Пишет только поток истории; читатели видят записи до опубликованного размера.
+class OrderSegment {
+    private static final int HEADER = Long.BYTES;
+    static final int RECORD_BYTES = 3 * Integer.BYTES + Double.BYTES + Long.BYTES;
+
+    final long firstPosition; // Общий номер первой записи сегмента.
+    final int capacity; // Наибольшее количество записей.
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int productOffset;
+    private final int quantityOffset;
+    private final int amountOffset;
+    private final int timestampOffset;
+
+    private int writeIndex; // Количество записанных записей (только поток истории).
+    private volatile int size; // Количество опубликованных записей.
+
+    private OrderSegment(Path file, long firstPosition, int capacity) throws IOException {
+        this.firstPosition = firstPosition;
+        this.capacity = capacity;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * RECORD_BYTES);
+        this.productOffset = HEADER + capacity * Integer.BYTES;
+        this.quantityOffset = productOffset + capacity * Integer.BYTES;
+        this.amountOffset = quantityOffset + capacity * Integer.BYTES;
+        this.timestampOffset = amountOffset + capacity * Double.BYTES;
+        this.writeIndex = (int) buffer.getLong(0);
+        this.size = writeIndex;
+    }
+
+    // Открывает существующий сегмент или создает новый
+    static OrderSegment open(Path file, long firstPosition, int capacity) throws IOException {
+        return new OrderSegment(file, firstPosition, capacity);
+    }
+
+    // Количество записанных (в том числе еще не опубликованных) записей; только поток истории
+    int written() {
+        return writeIndex;
+    }
+
+    boolean isFull() {
+        return writeIndex == capacity;
+    }
+
+    // Дописывает запись; видна читателям после publish
+    void append(int customerId, int productId, int quantity, double amount, long timestamp) {
+        int i = writeIndex++;
+        buffer.putInt(HEADER + i * Integer.BYTES, customerId);
+        buffer.putInt(productOffset + i * Integer.BYTES, productId);
+        buffer.putInt(quantityOffset + i * Integer.BYTES, quantity);
+        buffer.putDouble(amountOffset + i * Double.BYTES, amount);
+        buffer.putLong(timestampOffset + i * Long.BYTES, timestamp);
+    }
+
+    // Публикует записанные записи
+    void publish() {
+        if (size != writeIndex) {
+            buffer.putLong(0, writeIndex);
+            size = writeIndex;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int customerId(int i) {
+        return buffer.getInt(HEADER + i * Integer.BYTES);
+    }
+
+    int productId(int i) {
+        return buffer.getInt(productOffset + i * Integer.BYTES);
+    }
+
+    int quantity(int i) {
+        return buffer.getInt(quantityOffset + i * Integer.BYTES);
+    }
+
+    double amount(int i) {
+        return buffer.getDouble(amountOffset + i * Double.BYTES);
+    }
+
+    long timestamp(int i) {
+        return buffer.getLong(timestampOffset + i * Long.BYTES);
+    }
+
+    // Первый номер записи из [0, size) со временем не раньше timestamp (время не убывает)
+    int lowerBound(long timestamp, int size) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamp(middle) < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    void close() throws IOException {
+        publish();
+        buffer.force();
+        channel.close();
+    }
+}
@@ -8,16 +8,18 @@ public interface IStoreAPI {
      * Процедура создания пользователя и добавления его в онлайн-магазин
      * @param login логин пользователя
      * @param balance начальный баланс пользователя
+     * @return Токен запроса для чтения с гарантией "read-your-writes"
      */
-    void createCustomer(String login, double balance);
+    long createCustomer(String login, double balance);
 
     /**
      * Процедура добавления товара в онлайн-магазин
      * @param name название товара или артикул
      * @param quantity количество товара на складе
      * @param price цена товара
+     * @return Токен запроса для чтения с гарантией "read-your-writes"
      */
-    void addProductToStore(String name, int quantity, double price);
+    long addProductToStore(String name, int quantity, double price);
 
     /**
      * Функция покупки товара пользователем
@@ -29,6 +31,17 @@ public interface IStoreAPI {
      */
     boolean makePurchase(Customer customer, String productName, int quantity);
 
+    /**
+     * Функция покупки товара с идентификатором запроса. Повтор запроса с тем же
+     * идентификатором (например, после таймаута) не выполняет покупку повторно
+     * @param requestId идентификатор запроса, назначенный клиентом
+     * @param customer пользователь, купивший товар
+     * @param productName название покупаемого товара
+     * @param quantity количество покупаемого товара
+     * @return Результат первого выполнения запроса с этим идентификатором
+     */
+    boolean makePurchase(long requestId, Customer customer, String productName, int quantity);
+
     /**
      * Функция получения денежных средств, потраченных выбранным пользователем
      * @param customer выбранный пользователь
@@ -36,6 +49,14 @@ public interface IStoreAPI {
      */
     double getCustomerSpentAmount(Customer customer);
 
+    /**
+     * Функция получения потраченных средств после выполнения запроса с токеном
+     * @param customer выбранный пользователь
+     * @param token токен, возвращенный записывающим методом
+     * @return Количество денежных средств, потраченных пользователем customer
+     */
+    double getCustomerSpentAmount(Customer customer, long token);
+
     /**
      * Функция получения количества выбранного товара на складе
      * @param productName выбранный товар
@@ -43,6 +64,15 @@ public interface IStoreAPI {
      */
     int getStoreProductAvailability(String productName);
 
+    /**
+     * Функция получения количества товара после выполнения запроса с токеном.
+     * Ждет только запросы до токена, а не простоя всей системы
+     * @param productName выбранный товар
+     * @param token токен, возвращенный записывающим методом
+     * @return Количество товара на складе
+     */
+    int getStoreProductAvailability(String productName, long token);
+
     /**
      * Функция бронирования предмета
      * @param customer клиент
@@ -53,6 +83,17 @@ public interface IStoreAPI {
      */
     boolean reserveProduct(Customer customer, String productName, int quantity);
 
+    /**
+     * Функция бронирования предмета с идентификатором запроса. Повтор запроса с тем же
+     * идентификатором не бронирует товар повторно
+     * @param requestId идентификатор запроса, назначенный клиентом
+     * @param customer клиент
+     * @param productName бронируемый товар
+     * @param quantity количество бронируемого товара
+     * @return Результат первого выполнения запроса с этим идентификатором
+     */
+    boolean reserveProduct(long requestId, Customer customer, String productName, int quantity);
+
     /**
      * Функция оплаты забронированных товаров
      * @param customer клиент
@@ -61,12 +102,22 @@ public interface IStoreAPI {
      */
     boolean purchaseReservedProducts(Customer customer);
 
+    /**
+     * Функция оплаты забронированных товаров с идентификатором запроса. Повтор запроса
+     * с тем же идентификатором не списывает деньги повторно
+     * @param requestId идентификатор запроса, назначенный клиентом
+     * @param customer клиент
+     * @return Результат первого выполнения запроса с этим идентификатором
+     */
+    boolean purchaseReservedProducts(long requestId, Customer customer);
+
     /**
      * Процедура поставки товаров на склад
      * @param productName название товара (или артикул)
      * @param quantity количество поставляемого товара
+     * @return Токен запроса для чтения с гарантией "read-your-writes"
      */
-    void addSupply(String productName, int quantity);
+    long addSupply(String productName, int quantity);
 
     /**
      * Функция получения продукта по его имени
@@ -75,9 +126,24 @@ public interface IStoreAPI {
      */
     Product getProduct(String productName);
 
+    /**
+     * Функция получения продукта после выполнения запроса с токеном
+     * @param productName имя продукта
+     * @param token токен, возвращенный записывающим методом
+     * @return Продукт с данным именем
+     */
+    Product getProduct(String productName, long token);
+
     /**
      * Функция получения баланса магазина
      * @return баланс магазина
      */
     double getStoreBalance();
+
+    /**
+     * Функция получения баланса магазина после выполнения запроса с токеном
+     * @param token токен, возвращенный записывающим методом
+     * @return баланс магазина
+     */
+    double getStoreBalance(long token);
 }
@@ -18,22 +18,21 @@ public class Main {
         int initialQuantity = 50;
         double productPrice = 1000.0;
 
-        api.addProductToStore(productName, initialQuantity, productPrice);
+        long token = api.addProductToStore(productName, initialQuantity, productPrice);
 
         int numberOfCustomers = 5;
         Random random = new Random();
 
         for (int i = 0; i < numberOfCustomers; i++) {
             double initialCustomerBalance = 10000.0;
-            api.createCustomer("Customer_" + i, initialCustomerBalance);
+            token = api.createCustomer("Customer_" + i, initialCustomerBalance);
         }
 
         List<Thread> threads = new ArrayList<>();
         AtomicInteger totalReservedQuantity = new AtomicInteger();
 
-        processor.waitProcessor();
-
-        for (Customer customer : api.getAllCustomers()) {
+        // Ждем только собственные записи, а не простоя всего процессора
+        for (Customer customer : api.getAllCustomers(token)) {
             Thread thread = new Thread(() -> {
                 int reservedQuantity = random.nextInt(5) + 1;
                 boolean reservationSuccess = api.reserveProduct(customer, productName, reservedQuantity);
@@ -0,0 +1,141 @@
+package ru.lab11.queuingsystem.MultiTenant;
+
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+import ru.lab11.queuingsystem.RequestProcessing.RequestSubmitter;
+import ru.lab11.queuingsystem.RequestProcessing.SupplyTarget;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Очередь запросов одного арендатора в общем пуле потоков. Передается в StoreAPI вместо
+ * DisruptorProcessor: {@code new StoreAPI(processor.tenant("shop-1"), store)}.
+ *
+ * <p>Все запросы арендатора идут в один поток пула и выполняются в порядке публикации.
+ * Количество одновременно ожидающих запросов ограничено, поэтому один загруженный арендатор
+ * не может занять весь общий буфер: при достижении лимита отправитель ждет.
+ *
+ * <p>Описания запросов (StoreCommand) не передаются потребителям после обработки: в этом режиме
+ * нет репликации и журналов. Поставки не объединяются.
+ */
+public class TenantChannel implements RequestSubmitter {
+    private final String tenantId;
+    private final TenantShard shard; // Поток пула, за которым закреплен арендатор.
+    private final int maxInFlight; // Наибольшее количество ожидающих запросов.
+
+    private final AtomicInteger inFlight = new AtomicInteger(); // Опубликованные, но не выполненные запросы.
+    private final AtomicLong throttled = new AtomicLong(); // Сколько раз отправитель ждал из-за лимита.
+    private final AtomicLong completed = new AtomicLong(); // Запросы, выполненные без исключения.
+    private final AtomicLong failed = new AtomicLong(); // Запросы, завершившиеся исключением.
+
+    TenantChannel(String tenantId, TenantShard shard, int maxInFlight) {
+        this.tenantId = tenantId;
+        this.shard = shard;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public long submitRequest(Runnable task, StoreCommand command) {
+        acquire();
+        return shard.publish(this, task, null, null, 0);
+    }
+
+    @Override
+    public long submitSupply(SupplyTarget target, String productName, int quantity, StoreCommand command) {
+        acquire();
+        return shard.publish(this, null, target, productName, quantity);
+    }
+
+    @Override
+    public long trySubmitRequest(Runnable task, StoreCommand command) {
+        if (!tryAcquire()) {
+            return -1;
+        }
+        long token = shard.tryPublish(this, task, null, null, 0);
+        if (token < 0) {
+            inFlight.decrementAndGet();
+        }
+        return token;
+    }
+
+    @Override
+    public long trySubmitSupply(SupplyTarget target, String productName, int quantity, StoreCommand command) {
+        if (!tryAcquire()) {
+            return -1;
+        }
+        long token = shard.tryPublish(this, null, target, productName, quantity);
+        if (token < 0) {
+            inFlight.decrementAndGet();
+        }
+        return token;
+    }
+
+    @Override
+    public void waitFor(long token) {
+        shard.waitFor(token);
+    }
+
+    // Занимает место среди ожидающих запросов арендатора, при необходимости ждет
+    private void acquire() {
+        boolean waited = false;
+        while (true) {
+            int current = inFlight.get();
+            if (current < maxInFlight && inFlight.compareAndSet(current, current + 1)) {
+                break;
+            }
+            if (!waited) {
+                throttled.incrementAndGet();
+                waited = true;
+            }
+            Thread.yield();
+        }
+    }
+
+    // Занимает место среди ожидающих запросов арендатора, если лимит не достигнут
+    private boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= maxInFlight) {
+                throttled.incrementAndGet();
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    // Вызывается потоком пула, если запрос выполнен без исключения
+    void requestCompleted() {
+        completed.incrementAndGet();
+    }
+
+    // Вызывается потоком пула, если запрос завершился исключением
+    void requestFailed() {
+        failed.incrementAndGet();
+    }
+
+    // Вызывается потоком пула после любого запроса: освобождает место среди ожидающих
+    void requestFinished() {
+        inFlight.decrementAndGet();
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+}
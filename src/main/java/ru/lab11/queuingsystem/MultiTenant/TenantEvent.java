@@ -0,0 +1,23 @@
+package ru.lab11.queuingsystem.MultiTenant;
+
+import ru.lab11.queuingsystem.RequestProcessing.SupplyTarget;
+
+//Событие кольцевого буфера общего потока: задача или поставка одного арендатора.
+class TenantEvent {
+    TenantChannel tenant; // Арендатор, отправивший запрос
+    Runnable task; // Задача (null для поставки)
+
+    // Поставка товара вместо задачи
+    SupplyTarget supplyTarget;
+    String supplyProductName;
+    int supplyQuantity;
+
+    // Очищает событие после выполнения
+    void clear() {
+        tenant = null;
+        task = null;
+        supplyTarget = null;
+        supplyProductName = null;
+        supplyQuantity = 0;
+    }
+}
@@ -0,0 +1,99 @@
+package ru.lab11.queuingsystem.MultiTenant;
+
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Процессор для многих магазинов на фиксированном пуле потоков. Вместо двух выделенных потоков
+ * на магазин (как у DisruptorProcessor) все арендаторы делят threads потоков обработки:
+ * арендатор закрепляется за потоком по хешу идентификатора, поэтому его запросы выполняются
+ * по порядку, а разные магазины изменяются разными потоками без блокировок.
+ *
+ * <p>Пример:
+ * <pre>
+ * TenantProcessor processor = new TenantProcessor(4, 4096, 64);
+ * StoreAPI shop = new StoreAPI(processor.tenant("shop-1"), new Store(0.0));
+ * </pre>
+ *
+ * <p>Поток ожидает событий по стратегии ожидания (по умолчанию SleepingWaitStrategy),
+ * а не крутится постоянно, чтобы пул не занимал ядра без нагрузки.
+ */
+public class TenantProcessor {
+    private final TenantShard[] shards;
+    private final int maxInFlightPerTenant;
+    private final ConcurrentMap<String, TenantChannel> tenants = new ConcurrentHashMap<>();
+
+    /**
+     * Конструктор процессора со стратегией ожидания SleepingWaitStrategy.
+     *
+     * @param threads              количество потоков обработки.
+     * @param bufferSize           размер буфера каждого потока, степень двойки.
+     * @param maxInFlightPerTenant наибольшее количество ожидающих запросов одного арендатора.
+     */
+    public TenantProcessor(int threads, int bufferSize, int maxInFlightPerTenant) {
+        this(threads, bufferSize, maxInFlightPerTenant, SleepingWaitStrategy::new);
+    }
+
+    /**
+     * Конструктор процессора.
+     *
+     * @param threads              количество потоков обработки.
+     * @param bufferSize           размер буфера каждого потока, степень двойки.
+     * @param maxInFlightPerTenant наибольшее количество ожидающих запросов одного арендатора.
+     * @param waitStrategy         фабрика стратегий ожидания (по одной на поток).
+     */
+    public TenantProcessor(int threads, int bufferSize, int maxInFlightPerTenant,
+                           Supplier<WaitStrategy> waitStrategy) {
+        if (maxInFlightPerTenant < 1 || maxInFlightPerTenant > bufferSize) {
+            throw new IllegalArgumentException("Лимит запросов арендатора должен быть от 1 до размера буфера");
+        }
+        this.maxInFlightPerTenant = maxInFlightPerTenant;
+        this.shards = new TenantShard[threads];
+        for (int i = 0; i < threads; i++) {
+            shards[i] = new TenantShard(i, bufferSize, waitStrategy.get());
+        }
+    }
+
+    /**
+     * Возвращает очередь запросов арендатора, создавая ее при первом обращении.
+     *
+     * @param tenantId идентификатор арендатора (магазина).
+     * @return очередь запросов арендатора.
+     */
+    public TenantChannel tenant(String tenantId) {
+        return tenants.computeIfAbsent(tenantId, id ->
+                new TenantChannel(id, shards[shardIndex(id)], maxInFlightPerTenant));
+    }
+
+    /**
+     * Возвращает номер потока, за которым закреплен арендатор.
+     *
+     * @param tenantId идентификатор арендатора.
+     * @return номер потока от 0 до threads - 1.
+     */
+    public int shardIndex(String tenantId) {
+        return Math.floorMod(tenantId.hashCode(), shards.length);
+    }
+
+    /**
+     * Возвращает количество зарегистрированных арендаторов.
+     *
+     * @return количество арендаторов.
+     */
+    public int getTenantCount() {
+        return tenants.size();
+    }
+
+    /**
+     * Останавливает все потоки обработки, дождавшись опубликованных запросов.
+     */
+    public void shutdown() {
+        for (TenantShard shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
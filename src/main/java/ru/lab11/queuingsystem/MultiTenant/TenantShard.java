@@ -0,0 +1,93 @@
+package ru.lab11.queuingsystem.MultiTenant;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import ru.lab11.queuingsystem.RequestProcessing.SupplyTarget;
+
+import java.util.concurrent.ThreadFactory;
+
+//Один поток обработки общего пула: кольцевой буфер, в который пишут все арендаторы,
+//закрепленные за этим потоком. Запросы одного арендатора выполняются в порядке публикации.
+class TenantShard implements EventHandler<TenantEvent> {
+    private final Disruptor<TenantEvent> disruptor;
+    private final RingBuffer<TenantEvent> ringBuffer;
+    // Номер последнего выполненного события буфера
+    private final Sequence processedSequence = new Sequence(-1);
+
+    TenantShard(int index, int bufferSize, WaitStrategy waitStrategy) {
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "tenant-shard-" + index);
+            thread.setDaemon(true);
+            return thread;
+        };
+        disruptor = new Disruptor<>(TenantEvent::new, bufferSize, threadFactory, ProducerType.MULTI, waitStrategy);
+        disruptor.handleEventsWith(this);
+        ringBuffer = disruptor.getRingBuffer();
+        disruptor.start();
+    }
+
+    @Override
+    public void onEvent(TenantEvent event, long sequence, boolean endOfBatch) {
+        TenantChannel tenant = event.tenant;
+        try {
+            if (event.supplyTarget != null) {
+                event.supplyTarget.addSupply(event.supplyProductName, event.supplyQuantity);
+            } else if (event.task != null) {
+                event.task.run();
+            }
+            tenant.requestCompleted();
+        } catch (RuntimeException e) {
+            // Ошибка одного арендатора не должна останавливать поток остальных
+            tenant.requestFailed();
+        } finally {
+            tenant.requestFinished();
+            event.clear();
+            processedSequence.set(sequence);
+        }
+    }
+
+    // Публикует задачу или поставку арендатора; возвращает номер события в буфере
+    long publish(TenantChannel tenant, Runnable task, SupplyTarget target, String productName, int quantity) {
+        return fill(ringBuffer.next(), tenant, task, target, productName, quantity);
+    }
+
+    // Публикует без ожидания места в буфере; возвращает -1, если буфер заполнен
+    long tryPublish(TenantChannel tenant, Runnable task, SupplyTarget target, String productName, int quantity) {
+        try {
+            return fill(ringBuffer.tryNext(), tenant, task, target, productName, quantity);
+        } catch (InsufficientCapacityException e) {
+            return -1;
+        }
+    }
+
+    private long fill(long sequence, TenantChannel tenant, Runnable task, SupplyTarget target, String productName,
+                      int quantity) {
+        try {
+            TenantEvent event = ringBuffer.get(sequence);
+            event.tenant = tenant;
+            event.task = task;
+            event.supplyTarget = target;
+            event.supplyProductName = productName;
+            event.supplyQuantity = quantity;
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+        return sequence;
+    }
+
+    // Ожидает выполнения события с указанным номером и всех событий до него
+    void waitFor(long sequence) {
+        while (processedSequence.get() < sequence) {
+            Thread.onSpinWait();
+        }
+    }
+
+    void shutdown() {
+        disruptor.shutdown();
+    }
+}
@@ -2,95 +2,145 @@ package ru.lab11.queuingsystem.MyStore;
 
 import java.util.*;
 
+// Клиент магазина. Данные клиента хранятся в строке CustomerTable,
+// а сам объект — легкое представление: ссылка на таблицу и номер строки.
+// Магазин не хранит эти объекты и создает их при каждом обращении.
 public class Customer {
-    // Логин клиента
-    private String login;
-    // Баланс клиента
-    private double balance;
-    // Общая сумма, потраченная клиентом
-    private double spentAmount;
-    // Список сообщений, отправленных клиенту
-    private List<Message> messages;
-    // Карта зарезервированных товаров и их количества
-    private Map<Product, Integer> reservedProducts;
-
-    // Конструктор для создания клиента с заданным логином и балансом
+    // Таблица, в которой хранятся данные клиента
+    private CustomerTable table;
+    // Номер строки клиента в таблице
+    private int id;
+
+    // Конструктор для создания клиента с заданным логином и балансом.
+    // Клиент хранится в собственной маленькой таблице, пока его не добавят в магазин
     public Customer(String login, double balance) {
-        this.login = login;
-        this.balance = balance;
-        this.spentAmount = 0;
-        messages = new ArrayList<>();
-        reservedProducts = new HashMap<>();
+        this.table = new CustomerTable(1);
+        this.id = table.add(login, balance, 0);
+    }
+
+    // Представление существующей строки таблицы
+    Customer(CustomerTable table, int id) {
+        this.table = table;
+        this.id = id;
+    }
+
+    // Переносит данные клиента в другую таблицу (при добавлении в магазин)
+    void moveTo(CustomerTable target) {
+        if (table == target) {
+            return;
+        }
+        int newId = target.add(table.login(id), table.balance(id), table.spentAmount(id));
+        List<Message> messages = table.messages(id);
+        if (messages != null) {
+            target.copyMessages(newId, messages);
+        }
+        Map<Product, Integer> reserved = table.reservations(id);
+        if (reserved != null) {
+            for (Map.Entry<Product, Integer> entry : reserved.entrySet()) {
+                target.reserve(newId, entry.getKey(), entry.getValue());
+            }
+        }
+        table = target;
+        id = newId;
+    }
+
+    // Проверяет, хранится ли клиент в указанной таблице
+    boolean isIn(CustomerTable target) {
+        return table == target;
+    }
+
+    // Представления одной и той же строки таблицы равны
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Customer customer && customer.table == table && customer.id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(table) * 31 + id;
     }
 
     // Покупка указанного количества товара
     public double purchase(Product product, int quantity) {
         // Рассчитываем общую стоимость
         double totalCost = product.getPrice() * quantity;
+        double balance = table.balance(id);
 
         // Проверяем наличие товара
         if (product.getQuantity() < quantity) {
             Message message = new Message("Недостаточно товара на складе!", new Date());
-            this.messages.add(message);
+            addMessage(message);
             return 0;
         }
         // Проверяем достаточность средств
         else if (balance < totalCost) {
             Message message = new Message("Недостаточно средств на счету!", new Date());
-            this.messages.add(message);
+            addMessage(message);
             return 0;
         }
         // Успешная покупка
         else {
-            product.decreaseQuantity(quantity); // Уменьшаем количество товара
-            spentAmount += totalCost;          // Увеличиваем сумму потраченных средств
-            balance -= totalCost;              // Списываем деньги с баланса
+            product.decreaseQuantity(quantity);                            // Уменьшаем количество товара
+            table.setSpentAmount(id, table.spentAmount(id) + totalCost); // Увеличиваем сумму потраченных средств
+            table.setBalance(id, balance - totalCost);                   // Списываем деньги с баланса
             return totalCost;
         }
     }
 
+    // Возвращает номер клиента в таблице
+    public int getId() {
+        return id;
+    }
+
+    // Возвращает логин клиента
+    public String getLogin() {
+        return table.login(id);
+    }
+
     // Возвращает общую сумму, потраченную клиентом
     public double getSpentAmount() {
-        return spentAmount;
+        return table.spentAmount(id);
     }
 
-    // Возвращает список сообщений клиента
+    // Возвращает список сообщений клиента (пустой неизменяемый, если сообщений нет)
     public List<Message> getMessages() {
-        return messages;
+        List<Message> messages = table.messages(id);
+        return messages != null ? messages : Collections.emptyList();
     }
 
     // Возвращает текущий баланс клиента
     public double getBalance() {
-        return balance;
+        return table.balance(id);
     }
 
     // Устанавливает новый баланс клиента
     public void setBalance(double balance) {
-        this.balance = balance;
+        table.setBalance(id, balance);
     }
 
     // Устанавливает общую сумму, потраченную клиентом
     public void setSpentAmount(double spentAmount) {
-        this.spentAmount = spentAmount;
+        table.setSpentAmount(id, spentAmount);
     }
 
     // Добавляет сообщение клиенту
     public void addMessage(Message message) {
-        messages.add(message);
+        table.addMessage(id, message);
     }
 
     // Резервирует указанный товар и его количество
     public void reserveProduct(Product product, int quantity) {
-        reservedProducts.put(product, reservedProducts.getOrDefault(product, 0) + quantity);
+        table.reserve(id, product, quantity);
     }
 
     // Очищает список зарезервированных товаров
     public void clearReservedItems() {
-        reservedProducts.clear();
+        table.clearReservations(id);
     }
 
-    // Возвращает карту зарезервированных товаров и их количества
+    // Возвращает карту зарезервированных товаров и их количества (пустую, если бронирований нет)
     public Map<Product, Integer> getReservedProducts() {
-        return reservedProducts;
+        Map<Product, Integer> reserved = table.reservations(id);
+        return reserved != null ? reserved : Collections.emptyMap();
     }
 }
@@ -0,0 +1,13 @@
+package ru.lab11.queuingsystem.MyStore;
+
+/**
+ * Новое сообщение клиенту (отказ в покупке, нехватка товара и т. п.).
+ * Создается потоком обработки при добавлении сообщения и передается подписчикам
+ * через StoreChanges.
+ *
+ * @param login      логин клиента.
+ * @param customerId номер клиента в таблице магазина.
+ * @param message    сообщение.
+ */
+public record CustomerNotification(String login, int customerId, Message message) {
+}
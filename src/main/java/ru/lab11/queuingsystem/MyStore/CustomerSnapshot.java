@@ -0,0 +1,28 @@
+package ru.lab11.queuingsystem.MyStore;
+
+import java.util.List;
+
+/**
+ * Неизменяемый снимок состояния клиента на момент обработки запроса.
+ *
+ * @param login          логин клиента.
+ * @param balance        баланс клиента.
+ * @param spentAmount    сумма, потраченная клиентом.
+ * @param recentMessages последние сообщения клиента (не более RECENT_MESSAGES).
+ */
+public record CustomerSnapshot(String login, double balance, double spentAmount, List<Message> recentMessages) {
+    // Сколько последних сообщений хранится в снимке
+    public static final int RECENT_MESSAGES = 10;
+
+    /**
+     * Создает снимок клиента. Вызывается в потоке обработки.
+     *
+     * @param customer клиент.
+     * @return снимок клиента.
+     */
+    public static CustomerSnapshot of(Customer customer) {
+        List<Message> messages = customer.getMessages();
+        List<Message> recent = List.copyOf(messages.subList(Math.max(0, messages.size() - RECENT_MESSAGES), messages.size()));
+        return new CustomerSnapshot(customer.getLogin(), customer.getBalance(), customer.getSpentAmount(), recent);
+    }
+}
@@ -0,0 +1,369 @@
+package ru.lab11.queuingsystem.MyStore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Компактное хранилище клиентов: по массиву примитивов на каждое поле, строка — номер клиента.
+ * Сообщения и бронирования хранятся в общих таблицах и создаются только для тех клиентов,
+ * у которых они есть, поэтому клиент без сообщений и бронирований занимает несколько
+ * элементов массивов вместо собственных списков и карт. Общие таблицы и индекс логинов
+ * хранят номера клиентов без упаковки в Integer.
+ * Изменяется только потоком обработки; Customer — легкое представление одной строки,
+ * которое создается по номеру при обращении.
+ */
+public class CustomerTable {
+    private String[] logins; // Логины клиентов.
+    private double[] balances; // Балансы клиентов.
+    private double[] spentAmounts; // Суммы, потраченные клиентами.
+    private int size; // Количество клиентов.
+    // Индекс логинов с открытой адресацией: номер клиента + 1 (0 — свободная ячейка)
+    private int[] loginIndex;
+
+    // Общие таблицы: номер клиента -> сообщения / бронирования (только у кого они есть)
+    private final IntObjectMap<List<Message>> messages = new IntObjectMap<>();
+    private final IntObjectMap<Map<Product, Integer>> reservations = new IntObjectMap<>();
+    // Новые сообщения с прошлого drainNotifications (null — учет выключен)
+    private List<CustomerNotification> notifications;
+    // Незавершенные копии столбцов (обычно ни одной)
+    private final List<ColumnCopy> activeCopies = new ArrayList<>(1);
+
+    /**
+     * Создает таблицу с начальной емкостью.
+     *
+     * @param capacity начальное количество строк.
+     */
+    public CustomerTable(int capacity) {
+        logins = new String[Math.max(1, capacity)];
+        balances = new double[logins.length];
+        spentAmounts = new double[logins.length];
+        loginIndex = new int[Integer.highestOneBit(logins.length) * 4];
+    }
+
+    /**
+     * Добавляет клиента. Если клиент с таким логином уже есть, поиск по логину
+     * будет находить нового клиента.
+     *
+     * @param login       логин клиента.
+     * @param balance     баланс клиента.
+     * @param spentAmount сумма, потраченная клиентом.
+     * @return номер клиента в таблице.
+     */
+    public int add(String login, double balance, double spentAmount) {
+        if (size == logins.length) {
+            int capacity = size * 2;
+            logins = Arrays.copyOf(logins, capacity);
+            balances = Arrays.copyOf(balances, capacity);
+            spentAmounts = Arrays.copyOf(spentAmounts, capacity);
+        }
+        logins[size] = login;
+        balances[size] = balance;
+        spentAmounts[size] = spentAmount;
+        if ((size + 1) * 2 > loginIndex.length) {
+            rebuildLoginIndex(loginIndex.length * 2);
+        }
+        indexLogin(size);
+        return size++;
+    }
+
+    /**
+     * Ищет клиента по логину.
+     *
+     * @param login логин клиента.
+     * @return номер клиента или -1, если клиента нет.
+     */
+    public int find(String login) {
+        int mask = loginIndex.length - 1;
+        for (int slot = loginSlot(login, mask); loginIndex[slot] != 0; slot = (slot + 1) & mask) {
+            int id = loginIndex[slot] - 1;
+            if (logins[id].equals(login)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    // Записывает клиента в индекс логинов, заменяя прежнего клиента с тем же логином
+    private void indexLogin(int id) {
+        int mask = loginIndex.length - 1;
+        int slot = loginSlot(logins[id], mask);
+        while (loginIndex[slot] != 0 && !logins[loginIndex[slot] - 1].equals(logins[id])) {
+            slot = (slot + 1) & mask;
+        }
+        loginIndex[slot] = id + 1;
+    }
+
+    private void rebuildLoginIndex(int capacity) {
+        int[] old = loginIndex;
+        loginIndex = new int[capacity];
+        int mask = capacity - 1;
+        for (int entry : old) {
+            if (entry != 0) {
+                int slot = loginSlot(logins[entry - 1], mask);
+                while (loginIndex[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                loginIndex[slot] = entry;
+            }
+        }
+    }
+
+    private static int loginSlot(String login, int mask) {
+        int hash = login.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Возвращает количество клиентов.
+     *
+     * @return количество клиентов.
+     */
+    public int size() {
+        return size;
+    }
+
+    public String login(int id) {
+        return logins[id];
+    }
+
+    public double balance(int id) {
+        return balances[id];
+    }
+
+    public void setBalance(int id, double balance) {
+        beforeWrite(id);
+        balances[id] = balance;
+    }
+
+    public double spentAmount(int id) {
+        return spentAmounts[id];
+    }
+
+    public void setSpentAmount(int id, double spentAmount) {
+        beforeWrite(id);
+        spentAmounts[id] = spentAmount;
+    }
+
+    /**
+     * Начинает согласованное копирование столбцов, которое выполняется частями.
+     * В копию попадут значения на момент вызова: строки, которые изменяются до того,
+     * как до них дошло копирование, сохраняются в копию перед изменением.
+     * Все методы копии, как и сама таблица, вызываются только потоком обработки.
+     *
+     * @param loginTarget    массив длиной не меньше size() для логинов.
+     * @param balanceTarget  массив длиной не меньше size() для балансов.
+     * @param spentTarget    массив длиной не меньше size() для трат.
+     * @param reservedTarget массив длиной не меньше size() для забронированных единиц товара.
+     * @return незавершенная копия.
+     */
+    public ColumnCopy startCopy(String[] loginTarget, double[] balanceTarget, double[] spentTarget,
+                                int[] reservedTarget) {
+        ColumnCopy copy = new ColumnCopy(loginTarget, balanceTarget, spentTarget, reservedTarget);
+        activeCopies.add(copy);
+        return copy;
+    }
+
+    // Сохраняет строку в незавершенные копии перед ее изменением
+    private void beforeWrite(int id) {
+        if (!activeCopies.isEmpty()) {
+            for (ColumnCopy copy : activeCopies) {
+                copy.save(id);
+            }
+        }
+    }
+
+    // Количество забронированных, но не оплаченных единиц товара клиента
+    private int reservedUnits(int id) {
+        Map<Product, Integer> reserved = reservations.get(id);
+        int units = 0;
+        if (reserved != null) {
+            for (int quantity : reserved.values()) {
+                units += quantity;
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Копия столбцов таблицы, которая снимается частями между запросами.
+     */
+    public final class ColumnCopy {
+        private final String[] loginTarget;
+        private final double[] balanceTarget;
+        private final double[] spentTarget;
+        private final int[] reservedTarget;
+        private final int rows; // Строк в копии (размер таблицы при начале копирования).
+        private final BitSet saved; // Строки, сохраненные перед изменением.
+        private int copiedUpTo; // Строки до этой скопированы или сохранены.
+
+        private ColumnCopy(String[] loginTarget, double[] balanceTarget, double[] spentTarget, int[] reservedTarget) {
+            this.loginTarget = loginTarget;
+            this.balanceTarget = balanceTarget;
+            this.spentTarget = spentTarget;
+            this.reservedTarget = reservedTarget;
+            this.rows = size;
+            this.saved = new BitSet();
+        }
+
+        /**
+         * Возвращает количество строк в копии.
+         *
+         * @return количество строк.
+         */
+        public int rows() {
+            return rows;
+        }
+
+        /**
+         * Копирует следующие строки.
+         *
+         * @param count сколько строк скопировать.
+         * @return true, если копия завершена.
+         */
+        public boolean copyNext(int count) {
+            int end = Math.min(rows, copiedUpTo + count);
+            // Логины не меняются, поэтому их можно копировать целым диапазоном
+            System.arraycopy(logins, copiedUpTo, loginTarget, copiedUpTo, end - copiedUpTo);
+            for (int id = copiedUpTo; id < end; id++) {
+                if (!saved.get(id)) {
+                    copyRow(id);
+                }
+            }
+            copiedUpTo = end;
+            if (copiedUpTo == rows) {
+                activeCopies.remove(this);
+                return true;
+            }
+            return false;
+        }
+
+        private void save(int id) {
+            if (id >= copiedUpTo && id < rows && !saved.get(id)) {
+                copyRow(id);
+                saved.set(id);
+            }
+        }
+
+        private void copyRow(int id) {
+            balanceTarget[id] = balances[id];
+            spentTarget[id] = spentAmounts[id];
+            reservedTarget[id] = reservedUnits(id);
+        }
+    }
+
+    // Записывает строки таблицы с сообщениями и бронированиями (для копии состояния магазина).
+    // Бронь хранит название и цену товара: товар мог быть убран из магазина после бронирования
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int id = 0; id < size; id++) {
+            out.writeUTF(logins[id]);
+            out.writeDouble(balances[id]);
+            out.writeDouble(spentAmounts[id]);
+            List<Message> customerMessages = messages.get(id);
+            out.writeInt(customerMessages != null ? customerMessages.size() : 0);
+            if (customerMessages != null) {
+                for (Message message : customerMessages) {
+                    out.writeUTF(message.getMessage());
+                    out.writeLong(message.getDate().getTime());
+                }
+            }
+            Map<Product, Integer> reserved = reservations.get(id);
+            out.writeInt(reserved != null ? reserved.size() : 0);
+            if (reserved != null) {
+                for (Map.Entry<Product, Integer> entry : reserved.entrySet()) {
+                    out.writeUTF(entry.getKey().getName());
+                    out.writeDouble(entry.getKey().getPrice());
+                    out.writeInt(entry.getValue());
+                }
+            }
+        }
+    }
+
+    // Читает таблицу, записанную writeTo. Брони ссылаются на товары из products,
+    // а брони на убранные товары — на отдельные объекты с прежней ценой
+    static CustomerTable readFrom(DataInputStream in, Map<String, Product> products) throws IOException {
+        int rows = in.readInt();
+        CustomerTable table = new CustomerTable(rows);
+        Map<String, Product> removed = new HashMap<>();
+        for (int row = 0; row < rows; row++) {
+            int id = table.add(in.readUTF(), in.readDouble(), in.readDouble());
+            int messageCount = in.readInt();
+            if (messageCount > 0) {
+                List<Message> customerMessages = new ArrayList<>(messageCount);
+                for (int i = 0; i < messageCount; i++) {
+                    customerMessages.add(new Message(in.readUTF(), new Date(in.readLong())));
+                }
+                table.messages.put(id, customerMessages);
+            }
+            int reservedCount = in.readInt();
+            for (int i = 0; i < reservedCount; i++) {
+                String name = in.readUTF();
+                double price = in.readDouble();
+                int quantity = in.readInt();
+                Product product = products.get(name);
+                if (product == null || product.getPrice() != price) {
+                    product = removed.computeIfAbsent(name + '\0' + price, key -> new Product(name, 0, price));
+                }
+                table.reserve(id, product, quantity);
+            }
+        }
+        return table;
+    }
+
+    // Сообщения клиента; создаются при первом сообщении
+    List<Message> messages(int id) {
+        return messages.get(id);
+    }
+
+    void addMessage(int id, Message message) {
+        messages.computeIfAbsent(id, key -> new ArrayList<>(2)).add(message);
+        if (notifications != null) {
+            notifications.add(new CustomerNotification(logins[id], id, message));
+        }
+    }
+
+    // Переносит уже доставленные сообщения клиента без новых уведомлений
+    void copyMessages(int id, List<Message> source) {
+        messages.put(id, new ArrayList<>(source));
+    }
+
+    // Включает учет новых сообщений для подписчиков
+    void trackNotifications() {
+        if (notifications == null) {
+            notifications = new ArrayList<>();
+        }
+    }
+
+    // Возвращает новые сообщения с прошлого вызова (пустой список, если их нет)
+    List<CustomerNotification> drainNotifications() {
+        if (notifications == null || notifications.isEmpty()) {
+            return List.of();
+        }
+        List<CustomerNotification> drained = notifications;
+        notifications = new ArrayList<>();
+        return drained;
+    }
+
+    // Бронирования клиента; создаются при первом бронировании
+    Map<Product, Integer> reservations(int id) {
+        return reservations.get(id);
+    }
+
+    void reserve(int id, Product product, int quantity) {
+        beforeWrite(id);
+        reservations.computeIfAbsent(id, key -> new HashMap<>(2)).merge(product, quantity, Integer::sum);
+    }
+
+    void clearReservations(int id) {
+        beforeWrite(id);
+        reservations.remove(id);
+    }
+}
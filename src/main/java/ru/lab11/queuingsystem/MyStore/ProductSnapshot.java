@@ -0,0 +1,21 @@
+package ru.lab11.queuingsystem.MyStore;
+
+/**
+ * Неизменяемый снимок состояния продукта на момент обработки запроса.
+ *
+ * @param name     название продукта.
+ * @param quantity количество продукта на складе.
+ * @param price    цена продукта.
+ */
+public record ProductSnapshot(String name, int quantity, double price) {
+
+    /**
+     * Создает снимок продукта. Вызывается в потоке обработки.
+     *
+     * @param product продукт.
+     * @return снимок продукта.
+     */
+    public static ProductSnapshot of(Product product) {
+        return new ProductSnapshot(product.getName(), product.getQuantity(), product.getPrice());
+    }
+}
@@ -1,5 +1,8 @@
 package ru.lab11.queuingsystem.MyStore;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
 
 public class Store {
@@ -7,17 +10,56 @@ public class Store {
     private Map<String, Product> products = new HashMap<>();
     // Баланс магазина
     private double balance;
-    // Список клиентов магазина
-    private List<Customer> customers = new ArrayList<>();
+    // Данные клиентов в столбцовом виде вместе с индексом логинов.
+    // Объекты Customer не хранятся: представление строки создается по номеру при обращении
+    private CustomerTable customerTable = new CustomerTable(16);
+    // Клиенты магазина в порядке добавления (представления строк таблицы)
+    private final List<Customer> customers = new CustomerList();
+
+    // Учет изменений для потребителей после потока обработки (включается явно)
+    private boolean changeTracking;
+    // Товары и клиенты, измененные с последнего вызова drainChanges
+    private Set<Product> changedProducts = new LinkedHashSet<>();
+    // Клиенты хранятся номерами: отметка в changedCustomerMarks защищает от повторов
+    private int[] changedCustomerIds = new int[16];
+    private int changedCustomerCount;
+    private final BitSet changedCustomerMarks = new BitSet();
+    // Успешные операции с прошлого вызова drainChanges
+    private List<StoreOperation> operations = new ArrayList<>();
+    // Время операций: часы читаются один раз на операции между вызовами drainChanges
+    private long operationTime;
 
     // Конструктор для инициализации магазина с заданным балансом
     public Store(double balance) {
         this.balance = balance;
     }
 
+    // Конструктор с заранее выделенной памятью под ожидаемое количество товаров и клиентов,
+    // чтобы таблицы не перестраивались под нагрузкой
+    public Store(double balance, int expectedProducts, int expectedCustomers) {
+        this.balance = balance;
+        this.products = new HashMap<>(expectedProducts * 4 / 3 + 1);
+        this.customerTable = new CustomerTable(expectedCustomers);
+    }
+
+    // Читает все товары и клиентов, чтобы их память была затронута до первых запросов.
+    // Возвращает суммарное количество товара (чтобы чтение не было выброшено JIT)
+    public long preTouch() {
+        long total = 0;
+        for (Product product : products.values()) {
+            total += product.getQuantity();
+        }
+        for (int id = 0; id < customerTable.size(); id++) {
+            total += (long) customerTable.balance(id);
+        }
+        return total;
+    }
+
     // Добавляет новый продукт или обновляет существующий
     public void addProduct(String name, int quantity, double price) {
-        products.put(name, new Product(name, quantity, price));
+        Product product = new Product(name, quantity, price);
+        products.put(name, product);
+        productChanged(product);
     }
 
     // Возвращает количество доступного товара
@@ -36,18 +78,54 @@ public class Store {
         return products.get(productName);
     }
 
-    // Возвращает список всех клиентов магазина
+    // Возвращает все товары магазина (только для чтения)
+    public Collection<Product> getProducts() {
+        return Collections.unmodifiableCollection(products.values());
+    }
+
+    // Возвращает список всех клиентов магазина (только для чтения); элементы создаются при обращении
     public List<Customer> getCustomers() {
         return customers;
     }
 
+    // Создает клиента прямо в таблице магазина и возвращает его
+    public Customer createCustomer(String login, double balance) {
+        Customer customer = new Customer(customerTable, customerTable.add(login, balance, 0));
+        customerChanged(customer);
+        return customer;
+    }
+
+    // Возвращает таблицу клиентов (для снимков и отчетов в потоке обработки)
+    public CustomerTable getCustomerTable() {
+        return customerTable;
+    }
+
+    // Возвращает клиента по логину или null, если такого клиента нет
+    public Customer getCustomer(String login) {
+        int id = customerTable.find(login);
+        return id >= 0 ? new Customer(customerTable, id) : null;
+    }
+
     // Добавляет клиента в магазин
     public void addCustomer(Customer customer) {
-        customers.add(customer);
+        customer.moveTo(customerTable);
+        customerChanged(customer);
+    }
+
+    // Резервирует товар по названию; если товара нет, уведомляет клиента
+    public boolean reserveProduct(Customer customer, String productName, int quantity) {
+        Product product = products.get(productName);
+        if (product == null) {
+            customer.addMessage(new Message("Продукт " + productName + " отсутствует!", new Date()));
+            customerChanged(customer);
+            return false;
+        }
+        return reserveProduct(customer, product, quantity);
     }
 
     // Резервирует указанный товар для клиента
     public boolean reserveProduct(Customer customer, Product product, int quantity) {
+        customerChanged(customer);
         // Проверяем, что товар существует и его достаточно для бронирования
         if (product == null || product.getQuantity() < quantity) {
             customer.addMessage(new Message("Недостаточно товара для бронирования!", new Date()));
@@ -56,11 +134,14 @@ public class Store {
         // Уменьшаем количество товара и добавляем его в список зарезервированных товаров клиента
         product.decreaseQuantity(quantity);
         customer.reserveProduct(product, quantity);
+        productChanged(product);
+        operationDone(StoreOperation.Type.RESERVE, customer, product, quantity, product.getPrice() * quantity);
         return true;
     }
 
     // Осуществляет покупку всех зарезервированных товаров клиента
     public boolean purchaseReservedItems(Customer customer) {
+        customerChanged(customer);
         // Рассчитываем общую стоимость всех зарезервированных товаров
         double totalCost = customer.getReservedProducts().entrySet().stream()
                 .mapToDouble(entry -> entry.getKey().getPrice() * entry.getValue())
@@ -75,24 +156,75 @@ public class Store {
         // Списываем средства, обновляем траты клиента и баланс магазина
         customer.setBalance(customer.getBalance() - totalCost);
         customer.setSpentAmount(customer.getSpentAmount() + totalCost);
+        for (Map.Entry<Product, Integer> entry : customer.getReservedProducts().entrySet()) {
+            operationDone(StoreOperation.Type.RESERVED_PURCHASE, customer, entry.getKey(), entry.getValue(),
+                    entry.getKey().getPrice() * entry.getValue());
+        }
         customer.clearReservedItems();
         balance += totalCost;
         return true;
     }
 
+    // Убирает товар из магазина (при переносе на другой узел); возвращает остаток или -1, если товара нет.
+    // Брони клиентов на этот товар остаются и могут быть оплачены
+    public int removeProduct(String productName) {
+        Product product = products.remove(productName);
+        if (product == null) {
+            return -1;
+        }
+        int quantity = product.getQuantity();
+        product.decreaseQuantity(quantity);
+        productChanged(product);
+        return quantity;
+    }
+
+    // Списывает сумму со счета клиента, если средств достаточно
+    public boolean withdraw(Customer customer, double amount) {
+        if (customer.getBalance() < amount) {
+            return false;
+        }
+        customer.setBalance(customer.getBalance() - amount);
+        customerChanged(customer);
+        return true;
+    }
+
+    // Зачисляет сумму на счет клиента; если клиента нет, создает его с этим балансом
+    public void deposit(String login, double amount) {
+        Customer customer = getCustomer(login);
+        if (customer == null) {
+            createCustomer(login, amount);
+        } else {
+            customer.setBalance(customer.getBalance() + amount);
+            customerChanged(customer);
+        }
+    }
+
+    // Возвращает стоимость забронированных клиентом товаров
+    public double getReservedTotal(Customer customer) {
+        double total = 0;
+        for (Map.Entry<Product, Integer> entry : customer.getReservedProducts().entrySet()) {
+            total += entry.getKey().getPrice() * entry.getValue();
+        }
+        return total;
+    }
+
     // Добавляет указанное количество товара в магазин
     public void addSupply(String productName, int quantity) {
         // Если товар отсутствует, создаем его с ценой 0.0
         Product product = products.get(productName);
         if (product == null) {
-            products.put(productName, new Product(productName, quantity, 0.0));
+            product = new Product(productName, quantity, 0.0);
+            products.put(productName, product);
         } else {
             product.increaseQuantity(quantity);
         }
+        productChanged(product);
+        operationDone(StoreOperation.Type.SUPPLY, null, product, quantity, 0.0);
     }
 
     // Обрабатывает покупку товара клиентом без бронирования
     public boolean handlePurchase(Customer customer, String productName, int quantity) {
+        customerChanged(customer);
         // Проверяем, существует ли товар
         Product product = products.get(productName);
         if (product == null) {
@@ -100,14 +232,137 @@ public class Store {
             customer.addMessage(message);
             return false;
         } else {
+            productChanged(product);
             // Рассчитываем стоимость и обновляем баланс, если покупка прошла успешно
             double cost = customer.purchase(product, quantity);
             if (cost <= 0) {
                 return false;
             } else {
                 balance += cost;
+                operationDone(StoreOperation.Type.PURCHASE, customer, product, quantity, cost);
                 return true;
             }
         }
     }
+
+    // Записывает состояние магазина: баланс, товары и клиентов (для восстановления ведомого узла репликации).
+    // Вызывается потоком обработки
+    public void writeState(DataOutputStream out) throws IOException {
+        out.writeDouble(balance);
+        out.writeInt(products.size());
+        for (Product product : products.values()) {
+            out.writeUTF(product.getName());
+            out.writeInt(product.getQuantity());
+            out.writeDouble(product.getPrice());
+        }
+        customerTable.writeTo(out);
+    }
+
+    // Читает состояние, записанное writeState, в новый магазин; может вызываться любым потоком
+    public static Store readState(DataInputStream in) throws IOException {
+        Store store = new Store(in.readDouble());
+        int productCount = in.readInt();
+        store.products = new HashMap<>(productCount * 4 / 3 + 1);
+        for (int i = 0; i < productCount; i++) {
+            Product product = new Product(in.readUTF(), in.readInt(), in.readDouble());
+            store.products.put(product.getName(), product);
+        }
+        store.customerTable = CustomerTable.readFrom(in, store.products);
+        return store;
+    }
+
+    // Заменяет состояние магазина состоянием другого магазина (прочитанного readState).
+    // Ранее полученные объекты Customer и Product относятся к прежнему состоянию.
+    // При учете изменений все товары и клиенты считаются измененными
+    public void replaceWith(Store other) {
+        balance = other.balance;
+        products = other.products;
+        customerTable = other.customerTable;
+        changedProducts.clear();
+        changedCustomerMarks.clear();
+        changedCustomerCount = 0;
+        operations.clear();
+        if (changeTracking) {
+            customerTable.trackNotifications();
+            for (Product product : products.values()) {
+                productChanged(product);
+            }
+            for (int id = 0; id < customerTable.size(); id++) {
+                customerChanged(new Customer(customerTable, id));
+            }
+        }
+    }
+
+    // Включает учет изменений; вызывается до запуска обработки
+    public void enableChangeTracking() {
+        changeTracking = true;
+        customerTable.trackNotifications();
+    }
+
+    // Возвращает снимок товаров и клиентов, измененных с прошлого вызова, или null, если изменений нет.
+    // Вызывается потоком обработки после каждого запроса
+    public StoreChanges drainChanges() {
+        List<CustomerNotification> notifications = customerTable.drainNotifications();
+        if (changedProducts.isEmpty() && changedCustomerCount == 0 && operations.isEmpty()
+                && notifications.isEmpty()) {
+            return null;
+        }
+        List<ProductSnapshot> productSnapshots = new ArrayList<>(changedProducts.size());
+        for (Product product : changedProducts) {
+            productSnapshots.add(ProductSnapshot.of(product));
+        }
+        List<CustomerSnapshot> customerSnapshots = new ArrayList<>(changedCustomerCount);
+        for (int i = 0; i < changedCustomerCount; i++) {
+            int id = changedCustomerIds[i];
+            customerSnapshots.add(CustomerSnapshot.of(new Customer(customerTable, id)));
+            changedCustomerMarks.clear(id);
+        }
+        changedCustomerCount = 0;
+        List<StoreOperation> doneOperations = operations;
+        operations = new ArrayList<>();
+        changedProducts.clear();
+        return new StoreChanges(productSnapshots, customerSnapshots, doneOperations, balance, notifications);
+    }
+
+    private void productChanged(Product product) {
+        if (changeTracking) {
+            changedProducts.add(product);
+        }
+    }
+
+    private void operationDone(StoreOperation.Type type, Customer customer, Product product, int quantity, double amount) {
+        if (changeTracking) {
+            if (operations.isEmpty()) {
+                operationTime = System.currentTimeMillis();
+            }
+            operations.add(new StoreOperation(type, customer != null ? customer.getLogin() : null,
+                    customer != null ? customer.getId() : -1, product.getName(), quantity, amount,
+                    operationTime));
+        }
+    }
+
+    private void customerChanged(Customer customer) {
+        // Клиент, которого нет в магазине, живет в собственной таблице и не отслеживается
+        if (changeTracking && customer.isIn(customerTable) && !changedCustomerMarks.get(customer.getId())) {
+            changedCustomerMarks.set(customer.getId());
+            if (changedCustomerCount == changedCustomerIds.length) {
+                changedCustomerIds = Arrays.copyOf(changedCustomerIds, changedCustomerCount * 2);
+            }
+            changedCustomerIds[changedCustomerCount++] = customer.getId();
+        }
+    }
+
+    // Список клиентов поверх таблицы: не хранит объектов, представление строки создается в get
+    private class CustomerList extends AbstractList<Customer> implements RandomAccess {
+        @Override
+        public Customer get(int index) {
+            Objects.checkIndex(index, customerTable.size());
+            return new Customer(customerTable, index);
+        }
+
+        @Override
+        public int size() {
+            return customerTable.size();
+        }
+    }
 }
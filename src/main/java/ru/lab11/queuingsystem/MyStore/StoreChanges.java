@@ -0,0 +1,18 @@
+package ru.lab11.queuingsystem.MyStore;
+
+import java.util.List;
+
+/**
+ * Изменения магазина, сделанные одним или несколькими запросами.
+ * Создается потоком обработки и передается потребителям, работающим после него.
+ *
+ * @param products     снимки измененных продуктов.
+ * @param customers    снимки измененных клиентов.
+ * @param operations    успешные операции в порядке выполнения.
+ * @param storeBalance  баланс магазина после изменений.
+ * @param notifications новые сообщения клиентам в порядке добавления.
+ */
+public record StoreChanges(List<ProductSnapshot> products, List<CustomerSnapshot> customers,
+                           List<StoreOperation> operations, double storeBalance,
+                           List<CustomerNotification> notifications) {
+}
@@ -0,0 +1,26 @@
+package ru.lab11.queuingsystem.MyStore;
+
+/**
+ * Успешно выполненная операция магазина, записанная потоком обработки.
+ *
+ * @param type          тип операции.
+ * @param customerLogin логин клиента (null для поставки).
+ * @param customerId    номер клиента в таблице клиентов магазина (-1 для поставки).
+ * @param productName   название товара.
+ * @param quantity      количество товара.
+ * @param amount        сумма операции (цена * количество; 0 для поставки).
+ * @param timestamp     время выполнения в миллисекундах.
+ */
+public record StoreOperation(Type type, String customerLogin, int customerId, String productName, int quantity,
+                             double amount, long timestamp) {
+
+    /**
+     * Тип операции магазина.
+     */
+    public enum Type {
+        PURCHASE,          // Покупка без бронирования
+        RESERVE,           // Бронирование товара
+        RESERVED_PURCHASE, // Оплата забронированного товара (по одной записи на товар)
+        SUPPLY             // Поставка товара на склад
+    }
+}
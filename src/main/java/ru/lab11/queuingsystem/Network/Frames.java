@@ -0,0 +1,17 @@
+package ru.lab11.queuingsystem.Network;
+
+//Формат кадров протокола магазина.
+//Запрос:  [int длина остатка кадра][long номер запроса][StoreCommand]
+//Ответ:   [int длина остатка кадра = 17][long номер запроса][byte статус][long значение]
+//Номер запроса выбирает клиент; по нему сопоставляются ответы при конвейерной отправке.
+final class Frames {
+    static final int MAX_REQUEST_FRAME = 4096; // Максимальная длина кадра запроса.
+    static final int RESPONSE_BODY = Long.BYTES + 1 + Long.BYTES; // Длина ответа без заголовка длины.
+    static final int RESPONSE_FRAME = Integer.BYTES + RESPONSE_BODY; // Полная длина кадра ответа.
+
+    static final byte STATUS_OK = 0; // Команда выполнена, значение — ее результат.
+    static final byte STATUS_ERROR = 1; // Команда некорректна или не выполнена.
+
+    private Frames() {
+    }
+}
@@ -0,0 +1,175 @@
+package ru.lab11.queuingsystem.Network;
+
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Клиент сервера магазина. Запросы отправляются без ожидания ответа на предыдущие
+ * (конвейер); отдельный поток читает ответы и завершает результаты по номеру запроса.
+ */
+public class StoreClient implements Closeable {
+    private final SocketChannel channel; // Соединение с сервером.
+    private final ByteBuffer out = ByteBuffer.allocateDirect(Frames.MAX_REQUEST_FRAME + Integer.BYTES); // Буфер отправки.
+    private final Map<Long, CompletableFuture<Long>> inFlight = new ConcurrentHashMap<>(); // Запросы без ответа.
+    private final AtomicLong nextRequestId = new AtomicLong(); // Номер следующего запроса.
+    private final Thread reader; // Поток чтения ответов.
+    private volatile boolean closed; // Поток чтения завершился: новые запросы сразу завершаются ошибкой.
+
+    /**
+     * Подключается к серверу.
+     *
+     * @param address адрес сервера.
+     * @throws IOException при ошибке подключения.
+     */
+    public StoreClient(InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        reader = new Thread(this::readResponses, "store-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Отправляет команду.
+     *
+     * @param command команда.
+     * @return результат команды (см. StoreCommand.execute).
+     */
+    public CompletableFuture<Long> send(StoreCommand command) {
+        long requestId = nextRequestId.getAndIncrement();
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        inFlight.put(requestId, result);
+        // Ответ на запрос после завершения потока чтения не придет
+        if (closed) {
+            inFlight.remove(requestId);
+            result.completeExceptionally(new IOException("Соединение с сервером закрыто"));
+            return result;
+        }
+        try {
+            synchronized (out) {
+                out.clear();
+                out.position(Integer.BYTES);
+                out.putLong(requestId);
+                command.writeTo(out);
+                out.putInt(0, out.position() - Integer.BYTES);
+                out.flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            inFlight.remove(requestId);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Покупка товара.
+     *
+     * @return true, если покупка успешна.
+     */
+    public CompletableFuture<Boolean> purchase(String login, String productName, int quantity) {
+        return send(StoreCommand.purchase(login, productName, quantity)).thenApply(value -> value != 0);
+    }
+
+    /**
+     * Бронирование товара.
+     *
+     * @return true, если бронирование успешно.
+     */
+    public CompletableFuture<Boolean> reserve(String login, String productName, int quantity) {
+        return send(StoreCommand.reserve(login, productName, quantity)).thenApply(value -> value != 0);
+    }
+
+    /**
+     * Оплата забронированных товаров.
+     *
+     * @return true, если оплата успешна.
+     */
+    public CompletableFuture<Boolean> buyReserved(String login) {
+        return send(StoreCommand.buyReserved(login)).thenApply(value -> value != 0);
+    }
+
+    /**
+     * Поставка товара.
+     *
+     * @return токен запроса на сервере.
+     */
+    public CompletableFuture<Long> supply(String productName, int quantity) {
+        return send(StoreCommand.supply(productName, quantity));
+    }
+
+    /**
+     * Остаток товара, упорядоченный с предыдущими запросами этого соединения.
+     *
+     * @return количество товара на складе.
+     */
+    public CompletableFuture<Integer> availability(String productName) {
+        return send(StoreCommand.availability(productName)).thenApply(Long::intValue);
+    }
+
+    /**
+     * Возвращает количество запросов, ожидающих ответа.
+     *
+     * @return количество запросов.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Проверяет, открыто ли соединение и читаются ли ответы.
+     *
+     * @return false, если соединение закрыто клиентом или сервером.
+     */
+    public boolean isOpen() {
+        return channel.isOpen() && reader.isAlive();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readResponses() {
+        ByteBuffer in = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (channel.read(in) >= 0) {
+                in.flip();
+                while (in.remaining() >= Frames.RESPONSE_FRAME) {
+                    in.getInt();
+                    long requestId = in.getLong();
+                    byte status = in.get();
+                    long value = in.getLong();
+                    CompletableFuture<Long> result = inFlight.remove(requestId);
+                    if (result == null) {
+                        continue;
+                    }
+                    if (status == Frames.STATUS_OK) {
+                        result.complete(value);
+                    } else {
+                        result.completeExceptionally(new IllegalStateException("Сервер отклонил запрос " + requestId));
+                    }
+                }
+                in.compact();
+            }
+        } catch (IOException e) {
+            // Соединение закрыто; ниже завершаем оставшиеся запросы
+        }
+        closed = true;
+        IOException failure = new IOException("Соединение с сервером закрыто");
+        inFlight.values().forEach(result -> result.completeExceptionally(failure));
+        inFlight.clear();
+    }
+}
@@ -0,0 +1,158 @@
+package ru.lab11.queuingsystem.Network;
+
+import ru.lab11.queuingsystem.MyStore.Store;
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+import ru.lab11.queuingsystem.RequestProcessing.DisruptorProcessor;
+import ru.lab11.queuingsystem.StoreAPI;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочный клиент сервера магазина.
+ * Аргументы: хост порт соединений секунд глубина_конвейера — нагрузка на внешний сервер,
+ * или только [соединений [секунд [глубина_конвейера]]] — магазин и сервер запускаются
+ * в этом же процессе на loopback.
+ * Каждое соединение держит до глубины конвейера запросов в полете; смесь операций:
+ * покупка, бронирование с оплатой, поставка и чтение остатка.
+ */
+public class StoreLoadClient {
+    private static final int PRODUCTS = 100; // Количество товаров в нагрузке.
+    private static final int CUSTOMERS = 1000; // Количество клиентов в нагрузке.
+    private static final int LATENCY_SAMPLES = 1 << 20; // Размер буфера задержек одного соединения.
+
+    public static void main(String[] args) throws Exception {
+        boolean embedded = args.length < 5;
+        int offset = embedded ? 0 : 2;
+        int connections = args.length > offset ? Integer.parseInt(args[offset]) : 4;
+        int seconds = args.length > offset + 1 ? Integer.parseInt(args[offset + 1]) : 10;
+        int depth = args.length > offset + 2 ? Integer.parseInt(args[offset + 2]) : 64;
+
+        DisruptorProcessor processor = null;
+        StoreServer server = null;
+        InetSocketAddress address;
+        if (embedded) {
+            processor = new DisruptorProcessor();
+            server = new StoreServer(new StoreAPI(processor, new Store(0.0)),
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            server.start();
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+        } else {
+            address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+        }
+
+        try {
+            seed(address);
+            run(address, connections, seconds, depth);
+        } finally {
+            if (server != null) {
+                server.close();
+                processor.shutdown();
+            }
+        }
+    }
+
+    // Создает товары и клиентов нагрузки
+    private static void seed(InetSocketAddress address) throws IOException {
+        try (StoreClient client = new StoreClient(address)) {
+            for (int i = 0; i < PRODUCTS; i++) {
+                client.send(StoreCommand.addProduct("SKU-" + i, 1_000_000, 10.0));
+            }
+            for (int i = 0; i < CUSTOMERS; i++) {
+                client.send(StoreCommand.createCustomer("Customer" + i, 1e12));
+            }
+            // Чтение упорядочено после всех записей соединения
+            client.availability("SKU-0").join();
+        }
+    }
+
+    private static void run(InetSocketAddress address, int connections, int seconds, int depth) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong completed = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        List<long[]> latencies = new ArrayList<>();
+        List<AtomicLong> sampleCounts = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        List<StoreClient> clients = new ArrayList<>();
+
+        for (int c = 0; c < connections; c++) {
+            StoreClient client = new StoreClient(address);
+            long[] samples = new long[LATENCY_SAMPLES];
+            AtomicLong sampleCount = new AtomicLong();
+            clients.add(client);
+            latencies.add(samples);
+            sampleCounts.add(sampleCount);
+            Thread thread = new Thread(() -> {
+                Semaphore window = new Semaphore(depth);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    window.acquireUninterruptibly();
+                    String login = "Customer" + random.nextInt(CUSTOMERS);
+                    String product = "SKU-" + random.nextInt(PRODUCTS);
+                    long start = System.nanoTime();
+                    int kind = random.nextInt(10);
+                    var result = kind < 6 ? client.purchase(login, product, 1).thenApply(ok -> 0L)
+                            : kind < 8 ? client.reserve(login, product, 1).thenApply(ok -> 0L)
+                            : kind < 9 ? client.supply(product, 1)
+                            : client.availability(product).thenApply(Integer::longValue);
+                    result.whenComplete((value, error) -> {
+                        if (error != null) {
+                            failed.incrementAndGet();
+                        } else {
+                            completed.incrementAndGet();
+                            long index = sampleCount.getAndIncrement();
+                            samples[(int) (index % LATENCY_SAMPLES)] = System.nanoTime() - start;
+                        }
+                        window.release();
+                    });
+                }
+                // Дожидаемся ответов на запросы в полете
+                window.acquireUninterruptibly(depth);
+            }, "store-load-" + c);
+            threads.add(thread);
+        }
+
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        for (StoreClient client : clients) {
+            client.close();
+        }
+
+        // Собираем задержки всех соединений
+        int total = 0;
+        for (AtomicLong count : sampleCounts) {
+            total += (int) Math.min(count.get(), LATENCY_SAMPLES);
+        }
+        long[] all = new long[total];
+        int position = 0;
+        for (int c = 0; c < connections; c++) {
+            int count = (int) Math.min(sampleCounts.get(c).get(), LATENCY_SAMPLES);
+            System.arraycopy(latencies.get(c), 0, all, position, count);
+            position += count;
+        }
+        Arrays.sort(all);
+
+        System.out.printf("Соединений: %d, глубина конвейера: %d%n", connections, depth);
+        System.out.printf("Выполнено: %d, ошибок: %d, пропускная способность: %.0f запросов/с%n",
+                completed.get(), failed.get(), completed.get() / elapsedSeconds);
+        if (all.length > 0) {
+            System.out.printf("Задержка, мкс: p50=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+                    percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999), all[all.length - 1] / 1e3);
+        }
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(quantile * sorted.length))] / 1e3;
+    }
+}
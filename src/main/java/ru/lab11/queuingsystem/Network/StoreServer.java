@@ -0,0 +1,341 @@
+package ru.lab11.queuingsystem.Network;
+
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+import ru.lab11.queuingsystem.StoreAPI;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Неблокирующий TCP-сервер магазина с двоичным протоколом (см. Frames и StoreCommand).
+ * Один поток с Selector принимает соединения, читает и разбирает кадры и сразу
+ * публикует команды в процессор через StoreAPI. Запросы одного соединения могут
+ * идти конвейером; ответы завершаются потоком обработки, ставятся в очередь
+ * соединения и записываются потоком Selector.
+ *
+ * <p>Поток Selector никогда не ждет процессор: команды публикуются через tryExecuteLimited
+ * (с лимитом клиента, если он задан в StoreAPI), и если входной буфер заполнен, соединение
+ * перестает читать сокет и повторяет кадр на следующем обороте цикла. Соединение также перестает читать, когда у него больше
+ * MAX_PENDING_RESPONSES неотправленных ответов (клиент не читает ответы), и продолжает,
+ * когда их становится вдвое меньше. Так память сервера на соединение ограничена,
+ * а медленный клиент сдерживается через TCP.
+ */
+public class StoreServer implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024; // Размер буферов чтения и записи соединения.
+    private static final int MAX_PENDING_RESPONSES = 1024; // Неотправленных ответов, после которых чтение приостанавливается.
+    private static final long RETRY_MILLIS = 1; // Пауза перед повтором кадров, не поместившихся в буфер процессора.
+
+    private final StoreAPI api; // API магазина, которому передаются команды.
+    private final Selector selector; // Селектор событий ввода-вывода.
+    private final ServerSocketChannel serverChannel; // Слушающий сокет.
+    private final Queue<Connection> writeReady = new ConcurrentLinkedQueue<>(); // Соединения с новыми ответами.
+    private final List<Connection> stalledConnections = new ArrayList<>(); // Соединения, ждущие места в буфере процессора.
+    private final Thread eventLoop; // Поток Selector.
+    private volatile boolean running = true;
+
+    /**
+     * Создает сервер и занимает адрес. Прием соединений начинается после start().
+     *
+     * @param api     API магазина.
+     * @param address адрес (порт 0 — любой свободный).
+     * @throws IOException при ошибке открытия сокета.
+     */
+    public StoreServer(StoreAPI api, InetSocketAddress address) throws IOException {
+        this.api = api;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.eventLoop = new Thread(this::runEventLoop, "store-server");
+    }
+
+    /**
+     * Запускает поток обработки соединений.
+     */
+    public void start() {
+        eventLoop.start();
+    }
+
+    /**
+     * Возвращает порт, на котором слушает сервер.
+     *
+     * @return номер порта.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Останавливает сервер и закрывает все соединения. Сокет и Selector закрываются,
+     * даже если сервер не был запущен.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            eventLoop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Если поток не запускался, закрываем сами (повторное закрытие ничего не делает)
+        try {
+            serverChannel.close();
+        } finally {
+            selector.close();
+        }
+    }
+
+    private void runEventLoop() {
+        try {
+            while (running) {
+                if (stalledConnections.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.select(RETRY_MILLIS);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                        }
+                    } catch (IOException e) {
+                        // Ошибка одного соединения не останавливает сервер
+                        key.cancel();
+                        key.channel().close();
+                    }
+                }
+                // Отправляем ответы, которые завершились в потоке обработки
+                Connection connection;
+                while ((connection = writeReady.poll()) != null) {
+                    try {
+                        connection.flush();
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+                // Повторяем кадры, которым не хватило места в буфере процессора
+                for (int i = stalledConnections.size() - 1; i >= 0; i--) {
+                    Connection waiting = stalledConnections.remove(i);
+                    waiting.stalled = false;
+                    waiting.resume();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка сервера магазина", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException ignored) {
+                    // Закрываем остальные каналы
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                // Сервер уже остановлен
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    // Состояние одного соединения
+    private class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        // Ответы, завершенные потоком обработки и еще не скопированные в out
+        private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+        // Соединение уже стоит в очереди writeReady
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        // Принятые кадры, ответы на которые еще не скопированы в out
+        private final AtomicInteger pendingResponses = new AtomicInteger();
+        // Кадр не поместился в буфер процессора; соединение стоит в stalled (только поток Selector)
+        private boolean stalled;
+        // Достигнут лимит неотправленных ответов; чтение продолжится, когда их станет вдвое меньше
+        private boolean paused;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+            out.flip();
+        }
+
+        // Читает доступные данные и выполняет полностью полученные кадры
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            processFrames();
+        }
+
+        // Продолжает разбор уже прочитанных кадров после паузы
+        void resume() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                processFrames();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        // Выполняет кадры из буфера чтения, пока есть место в процессоре и лимит ответов не достигнут
+        private void processFrames() throws IOException {
+            in.flip();
+            while (in.remaining() >= Integer.BYTES && pendingResponses.get() < MAX_PENDING_RESPONSES) {
+                int length = in.getInt(in.position());
+                if (length < Long.BYTES + 1 || length > Frames.MAX_REQUEST_FRAME) {
+                    close();
+                    return;
+                }
+                if (in.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                int frameStart = in.position() + Integer.BYTES;
+                int frameEnd = frameStart + length;
+                long requestId = in.getLong(frameStart);
+                ByteBuffer body = in.slice(frameStart + Long.BYTES, frameEnd - frameStart - Long.BYTES);
+                if (!dispatch(requestId, body)) {
+                    // Процессор заполнен: кадр остается в буфере и будет повторен
+                    stalled = true;
+                    stalledConnections.add(this);
+                    break;
+                }
+                in.position(frameEnd);
+            }
+            paused = pendingResponses.get() >= MAX_PENDING_RESPONSES;
+            in.compact();
+            updateInterest();
+        }
+
+        // Публикует команду; false, если во входном буфере процессора нет места
+        private boolean dispatch(long requestId, ByteBuffer body) {
+            StoreCommand command;
+            CompletableFuture<Long> result;
+            try {
+                command = StoreCommand.readFrom(body);
+                result = api.tryExecuteLimited(command);
+            } catch (RuntimeException e) {
+                // Некорректный кадр или ошибка публикации: отвечаем ошибкой, соединение продолжает работу
+                pendingResponses.incrementAndGet();
+                respond(requestId, Frames.STATUS_ERROR, 0);
+                return true;
+            }
+            if (result == null) {
+                return false;
+            }
+            pendingResponses.incrementAndGet();
+            result.whenComplete((value, error) -> {
+                if (error != null) {
+                    respond(requestId, Frames.STATUS_ERROR, 0);
+                } else {
+                    respond(requestId, Frames.STATUS_OK, value);
+                }
+            });
+            return true;
+        }
+
+        // Ставит ответ в очередь; может вызываться из любого потока
+        void respond(long requestId, byte status, long value) {
+            ByteBuffer response = ByteBuffer.allocate(Frames.RESPONSE_FRAME);
+            response.putInt(Frames.RESPONSE_BODY).putLong(requestId).put(status).putLong(value).flip();
+            responses.add(response);
+            if (flushScheduled.compareAndSet(false, true)) {
+                writeReady.add(this);
+                selector.wakeup();
+            }
+        }
+
+        // Записывает накопленные ответы; вызывается только потоком Selector
+        void flush() throws IOException {
+            if (!channel.isOpen()) {
+                return;
+            }
+            flushScheduled.set(false);
+            while (true) {
+                // Переносим ответы из очереди в буфер записи, пока есть место
+                out.compact();
+                ByteBuffer response;
+                while (out.remaining() >= Frames.RESPONSE_FRAME && (response = responses.poll()) != null) {
+                    out.put(response);
+                    pendingResponses.decrementAndGet();
+                }
+                out.flip();
+                if (!out.hasRemaining()) {
+                    break;
+                }
+                channel.write(out);
+                if (out.hasRemaining()) {
+                    // Сокет заполнен: дописываем, когда он станет доступен для записи
+                    break;
+                }
+            }
+            // Клиент снова читает ответы: продолжаем разбор отложенных кадров
+            if (paused && !stalled && pendingResponses.get() <= MAX_PENDING_RESPONSES / 2) {
+                processFrames();
+            } else {
+                updateInterest();
+            }
+        }
+
+        // Читаем сокет, только если можем выполнить прочитанное; пишем, пока есть неотправленные данные
+        private void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            boolean reading = !stalled && !paused;
+            key.interestOps((reading ? SelectionKey.OP_READ : 0) | (out.hasRemaining() ? SelectionKey.OP_WRITE : 0));
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Соединение уже закрыто
+            }
+        }
+    }
+}
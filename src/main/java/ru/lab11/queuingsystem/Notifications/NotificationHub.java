@@ -0,0 +1,259 @@
+package ru.lab11.queuingsystem.Notifications;
+
+import com.lmax.disruptor.EventHandler;
+import ru.lab11.queuingsystem.MyStore.CustomerNotification;
+import ru.lab11.queuingsystem.MyStore.StoreChanges;
+import ru.lab11.queuingsystem.RequestProcessing.RequestEvent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Рассылка сообщений клиентам подписчикам вместо опроса Customer.getMessages().
+ * Работает как потребитель после потока обработки: берет новые сообщения из StoreChanges
+ * и передает их подписчикам логина. Событие без новых сообщений обходится одной проверкой,
+ * а сообщения клиентов без подписчиков — одним поиском в таблице.
+ *
+ * <p>Два вида подписки:
+ * <ul>
+ * <li>subscribe(login, listener) — слушатель вызывается потоком рассылки и должен быть легким;</li>
+ * <li>publisher(login) — Flow.Publisher с собственным буфером у каждого подписчика. Сообщение
+ * для подписчика с полным буфером отбрасывается (см. getDroppedCount), чтобы медленный
+ * подписчик не задерживал рассылку. Когда последний подписчик логина отменяет подписку,
+ * издатель логина удаляется из таблицы; следующая подписка создает новый.</li>
+ * </ul>
+ *
+ * <p>Подключение:
+ * <pre>
+ * Store store = new Store(100000.0);
+ * store.enableChangeTracking();
+ * NotificationHub hub = new NotificationHub();
+ * DisruptorProcessor processor = new DisruptorProcessor(store::drainChanges, hub);
+ * hub.subscribe("Customer", notification -> ...);
+ * </pre>
+ */
+public class NotificationHub implements EventHandler<RequestEvent>, AutoCloseable {
+    private static final int DEFAULT_BUFFER = 256; // Буфер подписчика Flow.Publisher по умолчанию.
+
+    private final Executor executor; // Потоки доставки подписчикам Flow.Publisher.
+    private final int bufferCapacity; // Буфер одного подписчика Flow.Publisher.
+    private final Map<String, List<Consumer<CustomerNotification>>> listeners = new ConcurrentHashMap<>();
+    private final Map<String, CustomerFeed> publishers = new ConcurrentHashMap<>();
+    private final AtomicLong delivered = new AtomicLong(); // Сообщения, переданные подписчикам.
+    private final AtomicLong dropped = new AtomicLong(); // Сообщения, отброшенные из-за полного буфера.
+
+    /**
+     * Конструктор с доставкой Flow.Publisher через общий ForkJoinPool.
+     */
+    public NotificationHub() {
+        this(ForkJoinPool.commonPool(), DEFAULT_BUFFER);
+    }
+
+    /**
+     * Конструктор рассылки.
+     *
+     * @param executor       потоки доставки подписчикам Flow.Publisher.
+     * @param bufferCapacity буфер одного подписчика Flow.Publisher.
+     */
+    public NotificationHub(Executor executor, int bufferCapacity) {
+        this.executor = executor;
+        this.bufferCapacity = bufferCapacity;
+    }
+
+    @Override
+    public void onEvent(RequestEvent event, long sequence, boolean endOfBatch) {
+        StoreChanges changes = event.getChanges();
+        if (changes == null || changes.notifications().isEmpty()) {
+            return;
+        }
+        for (CustomerNotification notification : changes.notifications()) {
+            List<Consumer<CustomerNotification>> customerListeners = listeners.get(notification.login());
+            if (customerListeners != null) {
+                for (Consumer<CustomerNotification> listener : customerListeners) {
+                    try {
+                        listener.accept(notification);
+                        delivered.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        // Ошибка одного слушателя не мешает остальным и не останавливает рассылку
+                    }
+                }
+            }
+            CustomerFeed feed = publishers.get(notification.login());
+            SubmissionPublisher<CustomerNotification> publisher = feed != null ? feed.publisher : null;
+            if (publisher != null && publisher.hasSubscribers()) {
+                int lag = publisher.offer(notification, (subscriber, item) -> {
+                    dropped.incrementAndGet();
+                    return false;
+                });
+                if (lag >= 0) {
+                    delivered.addAndGet(publisher.getNumberOfSubscribers());
+                } else {
+                    delivered.addAndGet(publisher.getNumberOfSubscribers() + lag);
+                }
+            }
+        }
+    }
+
+    /**
+     * Подписывает слушателя на сообщения клиента.
+     *
+     * @param login    логин клиента.
+     * @param listener слушатель; вызывается потоком рассылки.
+     */
+    public void subscribe(String login, Consumer<CustomerNotification> listener) {
+        // Добавление внутри compute: unsubscribe не может удалить список между созданием и добавлением
+        listeners.compute(login, (key, list) -> {
+            List<Consumer<CustomerNotification>> current = list != null ? list : new CopyOnWriteArrayList<>();
+            current.add(listener);
+            return current;
+        });
+    }
+
+    /**
+     * Отписывает слушателя.
+     *
+     * @param login    логин клиента.
+     * @param listener слушатель, переданный в subscribe.
+     */
+    public void unsubscribe(String login, Consumer<CustomerNotification> listener) {
+        listeners.computeIfPresent(login, (key, list) -> {
+            list.remove(listener);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    /**
+     * Возвращает поток сообщений клиента. Подписчик получает сообщения, появившиеся после подписки.
+     *
+     * @param login логин клиента.
+     * @return издатель сообщений клиента.
+     */
+    public Flow.Publisher<CustomerNotification> publisher(String login) {
+        return subscriber -> publishers.compute(login, (key, feed) -> {
+            CustomerFeed current = feed != null ? feed : new CustomerFeed(new SubmissionPublisher<>(executor, bufferCapacity));
+            current.subscribers++;
+            current.publisher.subscribe(new FeedSubscriber(login, current, subscriber));
+            return current;
+        });
+    }
+
+    /**
+     * Возвращает количество логинов, у которых есть подписчики Flow.Publisher.
+     *
+     * @return количество издателей.
+     */
+    public int getPublisherCount() {
+        return publishers.size();
+    }
+
+    /**
+     * Возвращает количество доставленных подписчикам сообщений.
+     *
+     * @return количество сообщений.
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * Возвращает количество сообщений, отброшенных для подписчиков с полным буфером.
+     *
+     * @return количество сообщений.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Завершает потоки Flow.Publisher (подписчики получают onComplete).
+     */
+    @Override
+    public void close() {
+        publishers.values().forEach(feed -> feed.publisher.close());
+        publishers.clear();
+        listeners.clear();
+    }
+
+    // Подписчик ушел: удаляет издатель логина, если подписчиков у него не осталось.
+    // Издатель не закрывается — рассылка могла уже взять его из таблицы
+    private void release(String login, CustomerFeed feed) {
+        publishers.computeIfPresent(login, (key, current) -> {
+            if (current == feed && --current.subscribers == 0) {
+                return null;
+            }
+            return current;
+        });
+    }
+
+    // Издатель логина и количество его подписчиков (меняется только внутри compute таблицы)
+    private static final class CustomerFeed {
+        final SubmissionPublisher<CustomerNotification> publisher;
+        int subscribers;
+
+        CustomerFeed(SubmissionPublisher<CustomerNotification> publisher) {
+            this.publisher = publisher;
+        }
+    }
+
+    // Подписчик, который при отмене подписки освобождает место в издателе логина
+    private final class FeedSubscriber implements Flow.Subscriber<CustomerNotification> {
+        private final String login;
+        private final CustomerFeed feed;
+        private final Flow.Subscriber<? super CustomerNotification> delegate;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        FeedSubscriber(String login, CustomerFeed feed, Flow.Subscriber<? super CustomerNotification> delegate) {
+            this.login = login;
+            this.feed = feed;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    subscription.cancel();
+                    releaseOnce();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(CustomerNotification item) {
+            delegate.onNext(item);
+        }
+
+        // Издатель отменяет подписку сам, если подписчик выбросил исключение
+        @Override
+        public void onError(Throwable throwable) {
+            releaseOnce();
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            delegate.onComplete();
+        }
+
+        private void releaseOnce() {
+            if (released.compareAndSet(false, true)) {
+                release(login, feed);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ru.lab11.queuingsystem.Partitioning;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Кольцо согласованного хеширования. Каждый узел занимает virtualNodes точек кольца,
+ * ключ принадлежит первому узлу по часовой стрелке от своего хеша. При добавлении узла
+ * к нему переходит примерно 1/N ключей, остальные остаются на месте.
+ * Неизменяемое: addNode и removeNode возвращают новое кольцо.
+ */
+public final class HashRing {
+    private final int virtualNodes;
+    private final TreeMap<Long, String> points;
+    private final Set<String> nodes;
+
+    /**
+     * Создает пустое кольцо.
+     *
+     * @param virtualNodes количество точек кольца на узел.
+     */
+    public HashRing(int virtualNodes) {
+        this(virtualNodes, new TreeMap<>(), new LinkedHashSet<>());
+    }
+
+    private HashRing(int virtualNodes, TreeMap<Long, String> points, Set<String> nodes) {
+        this.virtualNodes = virtualNodes;
+        this.points = points;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Возвращает кольцо с добавленным узлом.
+     *
+     * @param node идентификатор узла.
+     * @return новое кольцо.
+     */
+    public HashRing addNode(String node) {
+        TreeMap<Long, String> newPoints = new TreeMap<>(points);
+        for (int i = 0; i < virtualNodes; i++) {
+            newPoints.put(hash(node + "#" + i), node);
+        }
+        Set<String> newNodes = new LinkedHashSet<>(nodes);
+        newNodes.add(node);
+        return new HashRing(virtualNodes, newPoints, newNodes);
+    }
+
+    /**
+     * Возвращает кольцо без узла.
+     *
+     * @param node идентификатор узла.
+     * @return новое кольцо.
+     */
+    public HashRing removeNode(String node) {
+        TreeMap<Long, String> newPoints = new TreeMap<>(points);
+        newPoints.values().removeIf(node::equals);
+        Set<String> newNodes = new LinkedHashSet<>(nodes);
+        newNodes.remove(node);
+        return new HashRing(virtualNodes, newPoints, newNodes);
+    }
+
+    /**
+     * Возвращает узел, которому принадлежит ключ.
+     *
+     * @param key ключ (название товара или логин клиента).
+     * @return идентификатор узла.
+     * @throws IllegalStateException если в кольце нет узлов.
+     */
+    public String ownerOf(String key) {
+        if (points.isEmpty()) {
+            throw new IllegalStateException("В кольце нет узлов");
+        }
+        Map.Entry<Long, String> entry = points.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : points.firstEntry().getValue();
+    }
+
+    /**
+     * Возвращает узлы кольца.
+     *
+     * @return неизменяемое множество узлов.
+     */
+    public Set<String> getNodes() {
+        return Collections.unmodifiableSet(nodes);
+    }
+
+    // 64-битный FNV-1a по UTF-8 с перемешиванием из MurmurHash3, чтобы точки были равномерны
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
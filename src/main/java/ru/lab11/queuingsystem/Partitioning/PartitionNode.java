@@ -0,0 +1,34 @@
+package ru.lab11.queuingsystem.Partitioning;
+
+import ru.lab11.queuingsystem.MyStore.Store;
+import ru.lab11.queuingsystem.Network.StoreServer;
+import ru.lab11.queuingsystem.RequestProcessing.DisruptorProcessor;
+import ru.lab11.queuingsystem.StoreAPI;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * Отдельный процесс-узел разнесенного магазина: пустой магазин за StoreServer на loopback.
+ * Аргументы: [порт] (0 или без аргумента — любой свободный). Печатает занятый порт и работает
+ * до завершения процесса; узлы объединяются маршрутизатором PartitionRouter.
+ */
+public class PartitionNode {
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        DisruptorProcessor processor = new DisruptorProcessor();
+        StoreServer server = new StoreServer(new StoreAPI(processor, new Store(0.0)),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.start();
+        System.out.println(server.getPort());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (Exception e) {
+                // Процесс завершается
+            }
+            processor.shutdown();
+        }));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,505 @@
+package ru.lab11.queuingsystem.Partitioning;
+
+import ru.lab11.queuingsystem.Network.StoreClient;
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Маршрутизатор магазина, разнесенного по нескольким процессам (узлам StoreServer).
+ * Товар принадлежит узлу по согласованному хешу названия, и все операции с ним выполняются
+ * потоком обработки этого узла. Счет клиента хранится на домашнем узле (хеш логина).
+ *
+ * <p>Покупка товара с чужого для клиента узла — сага из шагов, каждый из которых атомарен
+ * на своем узле: цена товара (PRICE), списание со счета на домашнем узле (WITHDRAW),
+ * зачисление на счет клиента на узле товара (DEPOSIT), покупка там же, а при отказе — обратный
+ * перевод. Деньги при этом не создаются и не теряются: сумма балансов клиента по всем узлам
+ * и выручки узлов постоянна. Если цена изменилась между шагами, остаток перевода остается на
+ * счете клиента на узле товара и учитывается в getBalance. Оплата брони выполняется так же
+ * по каждому узлу, где у клиента есть бронь (RESERVED_TOTAL).
+ *
+ * <p>Протокол шагов саги:
+ * <ul>
+ *     <li>каждый изменяющий шаг (WITHDRAW, DEPOSIT, PURCHASE, BUY_RESERVED) получает свой
+ *     идентификатор запроса, и узел помнит его результат (защита от повторов в StoreAPI);</li>
+ *     <li>если узел не ответил за STEP_TIMEOUT_MILLIS или соединение оборвалось, шаг повторяется
+ *     с тем же идентификатором (до STEP_ATTEMPTS раз, с переподключением): повтор возвращает
+ *     результат первого выполнения и не списывает и не зачисляет деньги второй раз;</li>
+ *     <li>если зачисление на узел товара так и не подтверждено, деньги возвращаются на домашний
+ *     узел отдельным зачислением (компенсация); если покупка отклонена или не подтверждена,
+ *     сумма переводится обратно на домашний узел;</li>
+ *     <li>если не удалось и компенсирующее зачисление, выбрасывается IllegalStateException:
+ *     состояние саги нужно восстановить вручную по балансам узлов.</li>
+ * </ul>
+ * Компенсация зачислением предполагает, что неподтвержденное зачисление не было выполнено
+ * (узел недоступен на протяжении всех попыток). Запросы без изменения денег (чтения, создание
+ * клиентов и товаров, поставки) не повторяются, но тоже ждут ответ не дольше STEP_TIMEOUT_MILLIS.
+ *
+ * <p>addNode перераспределяет данные: на время переноса операции маршрутизатора приостанавливаются,
+ * товары, сменившие владельца, переносятся, а счета клиентов, сменивших домашний узел, переводятся
+ * сагой. Товар сначала добавляется на новый узел (ADD_PRODUCT с остатком и ценой), потом убирается
+ * со старого (REMOVE_PRODUCT); оба шага идут через повторы с идентификатором запроса и при повторе
+ * дают то же состояние (добавление заменяет товар, убранный товар убирается еще раз без изменений),
+ * поэтому сбой не теряет и не удваивает остаток. Если перенос прерван, уже перенесенные товары и счета
+ * запоминаются, и операции направляются к ним на новый узел, а остальные — по прежнему распределению;
+ * повторный вызов addNode с тем же узлом продолжает перенос, добавить другой узел до его завершения
+ * нельзя. Брони остаются на прежних узлах и оплачиваются там.
+ * Маршрутизатор знает только товары и клиентов, созданных через него.
+ */
+public class PartitionRouter implements Closeable {
+    private static final int VIRTUAL_NODES = 128; // Точек кольца на узел.
+    private static final int STEP_ATTEMPTS = 3; // Попыток одного шага саги.
+    private static final long STEP_TIMEOUT_MILLIS = 10_000; // Ожидание ответа узла на одну попытку.
+
+    private final Map<String, InetSocketAddress> addresses = new ConcurrentHashMap<>(); // Адреса узлов.
+    private final Map<String, StoreClient> clients = new ConcurrentHashMap<>(); // Соединения с узлами.
+    // Идентификаторы шагов саги: случайная старшая часть отделяет их от запросов других маршрутизаторов
+    private final AtomicLong nextRequestId = new AtomicLong(new SecureRandom().nextLong() & 0x7FFF_FFFF_0000_0000L);
+    private final ReentrantReadWriteLock rebalanceLock = new ReentrantReadWriteLock(); // Операции / перенос.
+    private final Set<String> products = ConcurrentHashMap.newKeySet(); // Известные товары.
+    private final Set<String> logins = ConcurrentHashMap.newKeySet(); // Известные клиенты.
+    private volatile HashRing ring = new HashRing(VIRTUAL_NODES);
+    private volatile Rebalance rebalance; // Незавершенный перенос данных на новый узел или null.
+
+    /**
+     * Подключается к узлам.
+     *
+     * @param nodes идентификатор узла -> адрес StoreServer.
+     * @throws IOException при ошибке подключения.
+     */
+    public PartitionRouter(Map<String, InetSocketAddress> nodes) throws IOException {
+        HashRing initial = ring;
+        for (Map.Entry<String, InetSocketAddress> node : nodes.entrySet()) {
+            addresses.put(node.getKey(), node.getValue());
+            clients.put(node.getKey(), new StoreClient(node.getValue()));
+            initial = initial.addNode(node.getKey());
+        }
+        ring = initial;
+    }
+
+    /**
+     * Создает клиента на его домашнем узле.
+     *
+     * @param login   логин клиента.
+     * @param balance начальный баланс.
+     */
+    public void createCustomer(String login, double balance) {
+        rebalanceLock.readLock().lock();
+        try {
+            logins.add(login);
+            call(homeOf(login), StoreCommand.createCustomer(login, balance));
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет товар на узел-владелец.
+     *
+     * @param name     название товара.
+     * @param quantity количество.
+     * @param price    цена.
+     */
+    public void addProduct(String name, int quantity, double price) {
+        rebalanceLock.readLock().lock();
+        try {
+            products.add(name);
+            call(ownerOfProduct(name), StoreCommand.addProduct(name, quantity, price));
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет поставку на узел-владелец товара.
+     *
+     * @param name     название товара.
+     * @param quantity количество.
+     */
+    public void addSupply(String name, int quantity) {
+        rebalanceLock.readLock().lock();
+        try {
+            call(ownerOfProduct(name), StoreCommand.supply(name, quantity));
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает остаток товара на узле-владельце.
+     *
+     * @param name название товара.
+     * @return количество товара.
+     */
+    public int getAvailability(String name) {
+        rebalanceLock.readLock().lock();
+        try {
+            return (int) call(ownerOfProduct(name), StoreCommand.availability(name));
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает баланс клиента: сумму его счетов на всех узлах.
+     *
+     * @param login логин клиента.
+     * @return баланс.
+     */
+    public double getBalance(String login) {
+        rebalanceLock.readLock().lock();
+        try {
+            double total = 0;
+            for (String node : nodes()) {
+                double balance = Double.longBitsToDouble(call(node, StoreCommand.balance(login)));
+                if (!Double.isNaN(balance)) {
+                    total += balance;
+                }
+            }
+            return total;
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает стоимость неоплаченных броней клиента на всех узлах.
+     *
+     * @param login логин клиента.
+     * @return стоимость броней.
+     */
+    public double getReservedTotal(String login) {
+        rebalanceLock.readLock().lock();
+        try {
+            double total = 0;
+            for (String node : nodes()) {
+                total += Double.longBitsToDouble(call(node, StoreCommand.reservedTotal(login)));
+            }
+            return total;
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Покупает товар; если товар на другом узле, деньги переводятся туда сагой.
+     *
+     * @param login    логин клиента.
+     * @param name     название товара.
+     * @param quantity количество.
+     * @return true, если покупка успешна.
+     */
+    public boolean purchase(String login, String name, int quantity) {
+        rebalanceLock.readLock().lock();
+        try {
+            String owner = ownerOfProduct(name);
+            String home = homeOf(login);
+            StoreCommand purchase = StoreCommand.purchase(login, name, quantity);
+            if (owner.equals(home)) {
+                return call(owner, purchase) != 0;
+            }
+            double price = Double.longBitsToDouble(call(owner, StoreCommand.price(name)));
+            if (Double.isNaN(price)) {
+                return false;
+            }
+            double cost = price * quantity;
+            if (!transfer(login, home, owner, cost)) {
+                return false;
+            }
+            return buyOrRefund(login, owner, home, purchase, cost);
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Бронирует товар на узле-владельце (счет клиента там создается при необходимости).
+     *
+     * @param login    логин клиента.
+     * @param name     название товара.
+     * @param quantity количество.
+     * @return true, если бронирование успешно.
+     */
+    public boolean reserve(String login, String name, int quantity) {
+        rebalanceLock.readLock().lock();
+        try {
+            String owner = ownerOfProduct(name);
+            if (!owner.equals(homeOf(login))) {
+                call(owner, StoreCommand.deposit(login, 0.0));
+            }
+            return call(owner, StoreCommand.reserve(login, name, quantity)) != 0;
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Оплачивает брони клиента на всех узлах; на чужие узлы деньги переводятся сагой.
+     *
+     * @param login логин клиента.
+     * @return true, если все брони оплачены.
+     */
+    public boolean purchaseReserved(String login) {
+        rebalanceLock.readLock().lock();
+        try {
+            String home = homeOf(login);
+            boolean success = true;
+            for (String node : nodes()) {
+                double total = Double.longBitsToDouble(call(node, StoreCommand.reservedTotal(login)));
+                if (total <= 0) {
+                    continue;
+                }
+                if (node.equals(home)) {
+                    success &= call(node, StoreCommand.buyReserved(login)) != 0;
+                } else if (transfer(login, home, node, total)) {
+                    success &= buyOrRefund(login, node, home, StoreCommand.buyReserved(login), total);
+                } else {
+                    success = false;
+                }
+            }
+            return success;
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет узел и переносит на него товары и счета, которые теперь ему принадлежат.
+     * Если перенос прерван, исключение пробрасывается, а перенесенные данные запоминаются:
+     * повторный вызов с тем же узлом продолжает перенос.
+     *
+     * @param node    идентификатор узла.
+     * @param address адрес StoreServer узла.
+     * @return количество перенесенных товаров и счетов (вместе с перенесенными до прерывания).
+     * @throws IOException           при ошибке подключения.
+     * @throws IllegalStateException если узел не ответил на шаг переноса или не завершен перенос
+     *                               на другой узел.
+     */
+    public int addNode(String node, InetSocketAddress address) throws IOException {
+        rebalanceLock.writeLock().lock();
+        try {
+            Rebalance pending = rebalance;
+            if (pending == null) {
+                clients.put(node, new StoreClient(address));
+                addresses.put(node, address);
+                pending = new Rebalance(node, ring.addNode(node));
+                rebalance = pending;
+            } else if (!pending.node.equals(node)) {
+                throw new IllegalStateException("Перенос данных на узел " + pending.node + " не завершен");
+            } else {
+                // Продолжение переноса: узел мог перезапуститься с другим адресом
+                StoreClient previous = clients.put(node, new StoreClient(address));
+                addresses.put(node, address);
+                previous.close();
+            }
+            HashRing oldRing = ring;
+            for (String name : products) {
+                String from = oldRing.ownerOf(name);
+                String to = pending.target.ownerOf(name);
+                if (!from.equals(to) && !pending.products.contains(name)) {
+                    moveProduct(name, from, to);
+                    pending.products.add(name);
+                }
+            }
+            for (String login : logins) {
+                String from = oldRing.ownerOf(login);
+                String to = pending.target.ownerOf(login);
+                if (!from.equals(to) && !pending.logins.contains(login)) {
+                    moveAccount(login, from, to);
+                    pending.logins.add(login);
+                }
+            }
+            ring = pending.target;
+            rebalance = null;
+            return pending.products.size() + pending.logins.size();
+        } finally {
+            rebalanceLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает узел, которому принадлежит ключ (товар или логин).
+     *
+     * @param key ключ.
+     * @return идентификатор узла.
+     */
+    public String ownerOf(String key) {
+        return ring.ownerOf(key);
+    }
+
+    // Узел товара с учетом незавершенного переноса
+    private String ownerOfProduct(String name) {
+        Rebalance pending = rebalance;
+        return pending != null && pending.products.contains(name) ? pending.target.ownerOf(name) : ring.ownerOf(name);
+    }
+
+    // Домашний узел клиента с учетом незавершенного переноса
+    private String homeOf(String login) {
+        Rebalance pending = rebalance;
+        return pending != null && pending.logins.contains(login) ? pending.target.ownerOf(login) : ring.ownerOf(login);
+    }
+
+    // Узлы, на которых могут быть счета и брони клиентов (вместе с узлом незавершенного переноса)
+    private Set<String> nodes() {
+        Rebalance pending = rebalance;
+        return pending != null ? pending.target.getNodes() : ring.getNodes();
+    }
+
+    // Переносит товар: добавляет его на новый узел, затем убирает со старого. Если товара на старом
+    // узле уже нет, он был убран после добавления, а подтверждение не дошло
+    private void moveProduct(String name, String from, String to) {
+        double price = Double.longBitsToDouble(call(from, StoreCommand.price(name)));
+        if (Double.isNaN(price)) {
+            return;
+        }
+        int quantity = (int) call(from, StoreCommand.availability(name));
+        step(to, StoreCommand.addProduct(name, quantity, price));
+        step(from, StoreCommand.removeProduct(name));
+    }
+
+    // Переводит счет клиента на новый домашний узел (пустой счет там создается)
+    private void moveAccount(String login, String from, String to) {
+        double balance = Double.longBitsToDouble(call(from, StoreCommand.balance(login)));
+        if (Double.isNaN(balance) || balance <= 0) {
+            step(to, StoreCommand.deposit(login, 0.0));
+        } else if (!transfer(login, from, to, balance)) {
+            throw new IllegalStateException("Не удалось перевести счет клиента " + login + " на узел " + to);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (StoreClient client : clients.values()) {
+            client.close();
+        }
+    }
+
+    // Переводит сумму со счета клиента на одном узле на счет на другом; false, если денег не хватило
+    // или зачисление не подтверждено (тогда деньги возвращены на счет, с которого списаны)
+    private boolean transfer(String login, String from, String to, double amount) {
+        if (step(from, StoreCommand.withdraw(login, amount)) == 0) {
+            return false;
+        }
+        try {
+            step(to, StoreCommand.deposit(login, amount));
+            return true;
+        } catch (IllegalStateException e) {
+            compensate(login, from, amount, e);
+            return false;
+        }
+    }
+
+    // Выполняет покупку или оплату на узле товара, куда уже переведена сумма; при отказе возвращает
+    // сумму на домашний узел. Если покупка не подтверждена, после возврата исключение пробрасывается:
+    // ее результат неизвестен
+    private boolean buyOrRefund(String login, String owner, String home, StoreCommand command, double amount) {
+        boolean success;
+        try {
+            success = step(owner, command) != 0;
+        } catch (IllegalStateException e) {
+            refund(login, owner, home, amount);
+            throw e;
+        }
+        if (!success) {
+            refund(login, owner, home, amount);
+        }
+        return success;
+    }
+
+    // Переводит сумму обратно на домашний узел; если узел товара недоступен, деньги остаются
+    // на счете клиента там и учитываются в getBalance
+    private void refund(String login, String owner, String home, double amount) {
+        try {
+            if (step(owner, StoreCommand.withdraw(login, amount)) == 0) {
+                return;
+            }
+        } catch (IllegalStateException e) {
+            return;
+        }
+        try {
+            step(home, StoreCommand.deposit(login, amount));
+        } catch (IllegalStateException e) {
+            compensate(login, owner, amount, e);
+        }
+    }
+
+    // Возвращает списанную сумму на счет, с которого она списана, после неподтвержденного зачисления
+    private void compensate(String login, String node, double amount, IllegalStateException cause) {
+        try {
+            step(node, StoreCommand.deposit(login, amount));
+        } catch (IllegalStateException e) {
+            e.addSuppressed(cause);
+            throw new IllegalStateException("Не удалось вернуть " + amount + " клиенту " + login
+                    + " на узел " + node, e);
+        }
+    }
+
+    // Выполняет изменяющий шаг саги с новым идентификатором запроса; повторяет его при обрыве
+    // соединения или таймауте, и узел выполняет его не больше одного раза
+    private long step(String node, StoreCommand command) {
+        StoreCommand tagged = command.withRequestId(nextRequestId.getAndIncrement());
+        IllegalStateException failure = null;
+        for (int attempt = 0; attempt < STEP_ATTEMPTS; attempt++) {
+            try {
+                return call(node, tagged);
+            } catch (IllegalStateException e) {
+                failure = e;
+                reconnect(node);
+            }
+        }
+        throw failure;
+    }
+
+    // Отправляет команду и ждет ответ не дольше STEP_TIMEOUT_MILLIS
+    private long call(String node, StoreCommand command) {
+        try {
+            return clients.get(node).send(command).get(STEP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание узла " + node + " прервано", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Узел " + node + " не выполнил запрос", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Узел " + node + " не ответил за " + STEP_TIMEOUT_MILLIS + " мс", e);
+        }
+    }
+
+    // Перенос данных на новый узел: распределение после переноса и уже перенесенные ключи
+    private static class Rebalance {
+        private final String node; // Новый узел.
+        private final HashRing target; // Распределение с новым узлом.
+        private final Set<String> products = ConcurrentHashMap.newKeySet(); // Перенесенные товары.
+        private final Set<String> logins = ConcurrentHashMap.newKeySet(); // Перенесенные счета.
+
+        Rebalance(String node, HashRing target) {
+            this.node = node;
+            this.target = target;
+        }
+    }
+
+    // Открывает новое соединение с узлом, если старое закрыто; при ошибке оставляет старое
+    private void reconnect(String node) {
+        clients.computeIfPresent(node, (id, client) -> {
+            if (client.isOpen()) {
+                return client;
+            }
+            try {
+                client.close();
+                return new StoreClient(addresses.get(id));
+            } catch (IOException e) {
+                return client;
+            }
+        });
+    }
+}
@@ -0,0 +1,254 @@
+package ru.lab11.queuingsystem.Protocol;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Запрос к магазину в виде данных: используется там, где запрос нужно передать
+ * по сети или сохранить, а не выполнить лямбдой в том же процессе.
+ * Клиент указывается логином. Двоичный вид: код операции (1 байт; старший бит означает
+ * наличие идентификатора запроса, который тогда идет следом, 8 байт), затем только
+ * поля этой операции; строки — длина (2 байта) и UTF-8.
+ *
+ * @param op          код операции.
+ * @param login       логин клиента (для операций клиента).
+ * @param productName название товара (для операций с товаром).
+ * @param quantity    количество товара.
+ * @param amount      баланс нового клиента, цена нового товара или сумма перевода.
+ * @param requestId   идентификатор запроса для защиты от повторов или NO_REQUEST_ID.
+ */
+public record StoreCommand(byte op, String login, String productName, int quantity, double amount, long requestId) {
+    public static final long NO_REQUEST_ID = Long.MIN_VALUE; // Запрос без идентификатора.
+    private static final int REQUEST_ID_FLAG = 0x80; // Бит кода операции: за ним следует идентификатор.
+    // Наибольшая длина логина и названия товара в символах: UTF-8 любой такой строки помещается в 2-байтовую длину
+    public static final int MAX_STRING_LENGTH = Short.MAX_VALUE / 3;
+    // Наибольший размер команды в двоичном виде (maxEncodedSize команды со строками предельной длины)
+    public static final int MAX_ENCODED_SIZE = 1 + Long.BYTES + 2 * (2 + MAX_STRING_LENGTH * 3) + Integer.BYTES + Double.BYTES;
+
+    public static final byte CREATE_CUSTOMER = 1; // login, amount = баланс
+    public static final byte ADD_PRODUCT = 2;     // productName, quantity, amount = цена
+    public static final byte PURCHASE = 3;        // login, productName, quantity
+    public static final byte RESERVE = 4;         // login, productName, quantity
+    public static final byte BUY_RESERVED = 5;    // login
+    public static final byte SUPPLY = 6;          // productName, quantity
+    public static final byte AVAILABILITY = 7;    // productName
+
+    // Операции для разнесения магазина по нескольким процессам (см. Partitioning)
+    public static final byte WITHDRAW = 8;        // login, amount: списать со счета, 1/0
+    public static final byte DEPOSIT = 9;         // login, amount: зачислить (счет создается), 1
+    public static final byte PRICE = 10;          // productName: цена (биты double, NaN если товара нет)
+    public static final byte BALANCE = 11;        // login: баланс (биты double, NaN если клиента нет)
+    public static final byte RESERVED_TOTAL = 12; // login: стоимость брони (биты double)
+    public static final byte REMOVE_PRODUCT = 13; // productName: убрать товар, остаток или -1
+
+    // Внутренняя метка копии состояния для ReplicationLeader: не кодируется и не передается по сети
+    public static final byte SNAPSHOT = 14;       // requestId = номер копии
+
+    public static StoreCommand createCustomer(String login, double balance) {
+        return new StoreCommand(CREATE_CUSTOMER, login, null, 0, balance, NO_REQUEST_ID);
+    }
+
+    public static StoreCommand addProduct(String productName, int quantity, double price) {
+        return new StoreCommand(ADD_PRODUCT, null, productName, quantity, price, NO_REQUEST_ID);
+    }
+
+    public static StoreCommand purchase(String login, String productName, int quantity) {
+        return new StoreCommand(PURCHASE, login, productName, quantity, 0, NO_REQUEST_ID);
+    }
+
+    public static StoreCommand reserve(String login, String productName, int quantity) {
+        return new StoreCommand(RESERVE, login, productName, quantity, 0, NO_REQUEST_ID);
+    }
+
+    public static StoreCommand buyReserved(String login) {
+        return new StoreCommand(BUY_RESERVED, login, null, 0, 0, NO_REQUEST_ID);
+    }
+
+    public static StoreCommand supply(String productName, int quantity) {
+        return new StoreCommand(SUPPLY, null, productName, quantity, 0, NO_REQUEST_ID);
+    }
+
+    public static StoreCommand availability(String productName) {
+        return new StoreCommand(AVAILABILITY, null, productName, 0, 0, NO_REQUEST_ID);
+    }
+
+    public static StoreCommand withdraw(String login, double amount) {
+        return new StoreCommand(WITHDRAW, login, null, 0, amount, NO_REQUEST_ID);
+    }
+
+    public static StoreCommand deposit(String login, double amount) {
+        return new StoreCommand(DEPOSIT, login, null, 0, amount, NO_REQUEST_ID);
+    }
+
+    public static StoreCommand price(String productName) {
+        return new StoreCommand(PRICE, null, productName, 0, 0, NO_REQUEST_ID);
+    }
+
+    public static StoreCommand balance(String login) {
+        return new StoreCommand(BALANCE, login, null, 0, 0, NO_REQUEST_ID);
+    }
+
+    public static StoreCommand reservedTotal(String login) {
+        return new StoreCommand(RESERVED_TOTAL, login, null, 0, 0, NO_REQUEST_ID);
+    }
+
+    public static StoreCommand removeProduct(String productName) {
+        return new StoreCommand(REMOVE_PRODUCT, null, productName, 0, 0, NO_REQUEST_ID);
+    }
+
+    public static StoreCommand snapshot(long snapshotId) {
+        return new StoreCommand(SNAPSHOT, null, null, 0, 0, snapshotId);
+    }
+
+    /**
+     * Возвращает ту же команду с идентификатором запроса (для покупки, бронирования и оплаты).
+     *
+     * @param id идентификатор запроса, назначенный клиентом.
+     * @return команда с идентификатором.
+     */
+    public StoreCommand withRequestId(long id) {
+        return new StoreCommand(op, login, productName, quantity, amount, id);
+    }
+
+    /**
+     * Проверяет, есть ли у команды идентификатор запроса.
+     *
+     * @return true, если идентификатор задан.
+     */
+    public boolean hasRequestId() {
+        return requestId != NO_REQUEST_ID;
+    }
+
+    /**
+     * Проверяет, что команду можно записать в двоичном виде: строки не длиннее MAX_STRING_LENGTH.
+     * Вызывается до публикации, чтобы потребители (репликация, журнал) не получали команду,
+     * которую не смогут записать.
+     *
+     * @return эта команда.
+     * @throws IllegalArgumentException если логин или название товара слишком длинные.
+     */
+    public StoreCommand requireEncodable() {
+        if ((login != null && login.length() > MAX_STRING_LENGTH)
+                || (productName != null && productName.length() > MAX_STRING_LENGTH)) {
+            throw new IllegalArgumentException("Логин и название товара должны быть не длиннее "
+                    + MAX_STRING_LENGTH + " символов");
+        }
+        return this;
+    }
+
+    /**
+     * Проверяет, изменяет ли команда состояние магазина.
+     *
+     * @return false для чтения остатка, цены, баланса, стоимости брони и копии состояния.
+     */
+    public boolean isWrite() {
+        return op != AVAILABILITY && op != PRICE && op != BALANCE && op != RESERVED_TOTAL && op != SNAPSHOT;
+    }
+
+    /**
+     * Записывает команду в буфер.
+     *
+     * @param buffer буфер с достаточным местом (не более maxEncodedSize()).
+     */
+    public void writeTo(ByteBuffer buffer) {
+        if (hasRequestId()) {
+            buffer.put((byte) (op | REQUEST_ID_FLAG));
+            buffer.putLong(requestId);
+        } else {
+            buffer.put(op);
+        }
+        switch (op) {
+            case CREATE_CUSTOMER, WITHDRAW, DEPOSIT -> {
+                putString(buffer, login);
+                buffer.putDouble(amount);
+            }
+            case ADD_PRODUCT -> {
+                putString(buffer, productName);
+                buffer.putInt(quantity);
+                buffer.putDouble(amount);
+            }
+            case PURCHASE, RESERVE -> {
+                putString(buffer, login);
+                putString(buffer, productName);
+                buffer.putInt(quantity);
+            }
+            case BUY_RESERVED, BALANCE, RESERVED_TOTAL -> putString(buffer, login);
+            case SUPPLY -> {
+                putString(buffer, productName);
+                buffer.putInt(quantity);
+            }
+            case AVAILABILITY, PRICE, REMOVE_PRODUCT -> putString(buffer, productName);
+            default -> throw new IllegalArgumentException("Неизвестная операция " + op);
+        }
+    }
+
+    /**
+     * Читает команду из буфера.
+     *
+     * @param buffer буфер, позиция которого стоит на коде операции.
+     * @return команда.
+     * @throws IllegalArgumentException если данные некорректны.
+     */
+    public static StoreCommand readFrom(ByteBuffer buffer) {
+        try {
+            byte op = buffer.get();
+            long requestId = NO_REQUEST_ID;
+            if ((op & REQUEST_ID_FLAG) != 0) {
+                op = (byte) (op & ~REQUEST_ID_FLAG);
+                requestId = buffer.getLong();
+            }
+            StoreCommand command = switch (op) {
+                case CREATE_CUSTOMER -> createCustomer(getString(buffer), buffer.getDouble());
+                case ADD_PRODUCT -> addProduct(getString(buffer), buffer.getInt(), buffer.getDouble());
+                case PURCHASE -> purchase(getString(buffer), getString(buffer), buffer.getInt());
+                case RESERVE -> reserve(getString(buffer), getString(buffer), buffer.getInt());
+                case BUY_RESERVED -> buyReserved(getString(buffer));
+                case SUPPLY -> supply(getString(buffer), buffer.getInt());
+                case AVAILABILITY -> availability(getString(buffer));
+                case WITHDRAW -> withdraw(getString(buffer), buffer.getDouble());
+                case DEPOSIT -> deposit(getString(buffer), buffer.getDouble());
+                case PRICE -> price(getString(buffer));
+                case BALANCE -> balance(getString(buffer));
+                case RESERVED_TOTAL -> reservedTotal(getString(buffer));
+                case REMOVE_PRODUCT -> removeProduct(getString(buffer));
+                default -> throw new IllegalArgumentException("Неизвестная операция " + op);
+            };
+            return requestId == NO_REQUEST_ID ? command : command.withRequestId(requestId);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Команда обрезана", e);
+        }
+    }
+
+    /**
+     * Возвращает верхнюю оценку размера команды в двоичном виде.
+     *
+     * @return размер в байтах.
+     */
+    public int maxEncodedSize() {
+        return 1 + Long.BYTES + stringSize(login) + stringSize(productName) + Integer.BYTES + Double.BYTES;
+    }
+
+    private static int stringSize(String value) {
+        return value == null ? 0 : 2 + value.length() * 3;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Строка слишком длинная");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Некорректная длина строки " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
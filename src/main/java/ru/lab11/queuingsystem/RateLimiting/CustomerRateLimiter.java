@@ -0,0 +1,122 @@
+package ru.lab11.queuingsystem.RateLimiting;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограничение частоты запросов клиента без блокировок (GCRA — вариант «ведра токенов»).
+ * Для каждой полосы хранится одно число — теоретическое время прихода следующего запроса (TAT).
+ * Запрос пропускается, если после сдвига TAT на интервал между запросами он опережает текущее
+ * время не больше чем на burst интервалов; сдвиг публикуется через CAS.
+ *
+ * <p>Клиенты распределяются по полосам по хэшу логина. Клиенты, попавшие в одну полосу,
+ * делят ее лимит, поэтому полос должно быть заметно больше, чем активных клиентов.
+ */
+public class CustomerRateLimiter {
+    private final AtomicLongArray theoreticalArrival; // TAT полосы, нс по System.nanoTime.
+    private final int mask; // Маска индекса полосы (количество — степень двойки).
+    private final long intervalNanos; // Интервал между запросами при постоянной частоте.
+    private final long toleranceNanos; // Насколько TAT может опережать текущее время.
+    private final LongAdder allowed = new LongAdder(); // Пропущенные запросы.
+    private final LongAdder throttled = new LongAdder(); // Отклоненные запросы.
+
+    /**
+     * Конструктор ограничителя с 4096 полосами.
+     *
+     * @param ratePerSecond допустимая постоянная частота запросов одного клиента в секунду.
+     * @param burst         сколько запросов подряд клиент может сделать после простоя.
+     */
+    public CustomerRateLimiter(double ratePerSecond, int burst) {
+        this(ratePerSecond, burst, 4096);
+    }
+
+    /**
+     * Конструктор ограничителя.
+     *
+     * @param ratePerSecond допустимая постоянная частота запросов одного клиента в секунду.
+     * @param burst         сколько запросов подряд клиент может сделать после простоя.
+     * @param stripes       количество полос, степень двойки.
+     */
+    public CustomerRateLimiter(double ratePerSecond, int burst, int stripes) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Частота и размер всплеска должны быть положительными");
+        }
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Количество полос должно быть степенью двойки");
+        }
+        this.theoreticalArrival = new AtomicLongArray(stripes);
+        for (int i = 0; i < stripes; i++) {
+            theoreticalArrival.set(i, Long.MIN_VALUE);
+        }
+        this.mask = stripes - 1;
+        this.intervalNanos = Math.max(1, (long) (1e9 / ratePerSecond));
+        this.toleranceNanos = intervalNanos * burst;
+    }
+
+    /**
+     * Пытается пропустить запрос клиента.
+     *
+     * @param login логин клиента.
+     * @return true, если запрос укладывается в лимит; false, если его нужно отклонить.
+     */
+    public boolean tryAcquire(String login) {
+        int stripe = stripe(login);
+        long now = System.nanoTime();
+        while (true) {
+            long current = theoreticalArrival.get(stripe);
+            long start = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+            long next = start + intervalNanos;
+            if (next - now > toleranceNanos) {
+                throttled.increment();
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(stripe, current, next)) {
+                allowed.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Возвращает клиенту место, занятое tryAcquire для запроса, который не выполнялся
+     * (повтор уже выполненного запроса с тем же идентификатором).
+     *
+     * @param login логин клиента.
+     */
+    public void release(String login) {
+        int stripe = stripe(login);
+        while (true) {
+            long current = theoreticalArrival.get(stripe);
+            if (current == Long.MIN_VALUE) {
+                return;
+            }
+            if (theoreticalArrival.compareAndSet(stripe, current, current - intervalNanos)) {
+                allowed.decrement();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Возвращает количество пропущенных запросов.
+     *
+     * @return количество запросов.
+     */
+    public long getAllowedCount() {
+        return allowed.sum();
+    }
+
+    /**
+     * Возвращает количество отклоненных запросов.
+     *
+     * @return количество запросов.
+     */
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    private int stripe(String login) {
+        int hash = login.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
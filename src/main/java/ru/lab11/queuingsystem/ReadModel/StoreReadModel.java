@@ -0,0 +1,118 @@
+package ru.lab11.queuingsystem.ReadModel;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.Sequence;
+import ru.lab11.queuingsystem.MyStore.CustomerSnapshot;
+import ru.lab11.queuingsystem.MyStore.ProductSnapshot;
+import ru.lab11.queuingsystem.MyStore.StoreChanges;
+import ru.lab11.queuingsystem.RequestProcessing.RequestEvent;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Модель чтения магазина: денормализованные снимки товаров и клиентов.
+ * Обновляется отдельным потребителем, который идет после потока обработки и применяет
+ * изменения StoreChanges, поэтому чтение не обращается к изменяемому Store и
+ * масштабируется на любое число потоков.
+ *
+ * <p>Подключение:
+ * <pre>
+ * Store store = new Store(100000.0);
+ * store.enableChangeTracking();
+ * StoreReadModel readModel = new StoreReadModel();
+ * DisruptorProcessor processor = new DisruptorProcessor(store::drainChanges, readModel);
+ * </pre>
+ */
+public class StoreReadModel implements EventHandler<RequestEvent> {
+    private final Map<String, ProductSnapshot> products = new ConcurrentHashMap<>(); // Остатки и цены по названию товара.
+    private final Map<String, CustomerSnapshot> customers = new ConcurrentHashMap<>(); // Балансы, траты и сообщения по логину.
+    private volatile double storeBalance; // Баланс магазина.
+    private final Sequence appliedSequence = new Sequence(-1); // Номер последнего запроса, отраженного в модели.
+
+    @Override
+    public void onEvent(RequestEvent event, long sequence, boolean endOfBatch) {
+        StoreChanges storeChanges = event.getChanges();
+        if (storeChanges != null) {
+            for (ProductSnapshot product : storeChanges.products()) {
+                products.put(product.name(), product);
+            }
+            for (CustomerSnapshot customer : storeChanges.customers()) {
+                customers.put(customer.login(), customer);
+            }
+            storeBalance = storeChanges.storeBalance();
+        }
+        appliedSequence.set(event.getCompletedSequence());
+    }
+
+    /**
+     * Ожидает, пока модель отразит запрос с указанным токеном.
+     *
+     * @param token токен, полученный от записывающего метода StoreAPI.
+     */
+    public void waitFor(long token) {
+        while (appliedSequence.get() < token) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Возвращает снимок продукта.
+     *
+     * @param productName название продукта.
+     * @return снимок продукта или null, если продукт отсутствует.
+     */
+    public ProductSnapshot getProduct(String productName) {
+        return products.get(productName);
+    }
+
+    /**
+     * Возвращает количество доступного продукта.
+     *
+     * @param productName название продукта.
+     * @return количество продукта на складе.
+     */
+    public int getProductAvailability(String productName) {
+        ProductSnapshot product = products.get(productName);
+        return product != null ? product.quantity() : 0;
+    }
+
+    /**
+     * Возвращает снимок клиента.
+     *
+     * @param login логин клиента.
+     * @return снимок клиента или null, если клиент отсутствует.
+     */
+    public CustomerSnapshot getCustomer(String login) {
+        return customers.get(login);
+    }
+
+    /**
+     * Возвращает снимки всех клиентов.
+     *
+     * @return неизменяемое представление снимков клиентов.
+     */
+    public Collection<CustomerSnapshot> getAllCustomers() {
+        return Collections.unmodifiableCollection(customers.values());
+    }
+
+    /**
+     * Возвращает баланс магазина.
+     *
+     * @return баланс магазина.
+     */
+    public double getStoreBalance() {
+        return storeBalance;
+    }
+
+    /**
+     * Возвращает номер последнего запроса, отраженного в модели.
+     *
+     * @return номер запроса.
+     */
+    public long getAppliedSequence() {
+        return appliedSequence.get();
+    }
+}
@@ -0,0 +1,228 @@
+package ru.lab11.queuingsystem.Replication;
+
+import ru.lab11.queuingsystem.MyStore.Store;
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+import ru.lab11.queuingsystem.RequestProcessing.DisruptorProcessor;
+import ru.lab11.queuingsystem.StoreAPI;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Ведомый узел репликации (горячий резерв). Получает журнал команд ведущего и выполняет
+ * их через свой StoreAPI и DisruptorProcessor в том же порядке. Начальное состояние
+ * магазина должно совпадать с начальным состоянием ведущего, если ведущий еще хранит журнал
+ * с первой команды; иначе ведущий присылает копию состояния, которая заменяет состояние ведомого
+ * (StoreAPI.restoreSnapshot). Разрыв соединения виден по isConnected() и getDisconnects().
+ * До promote() через StoreAPI ведомого нельзя выполнять изменяющие запросы.
+ */
+public class ReplicationFollower implements Closeable {
+    private final StoreAPI api; // API магазина ведомого.
+    private final DisruptorProcessor disruptorProcessor; // Процессор ведомого.
+    private final InetSocketAddress leaderAddress; // Адрес ведущего.
+    private SocketChannel channel; // Соединение с ведущим.
+    private Thread reader; // Поток получения журнала.
+
+    private volatile long leaderIndex = -1; // Последняя известная команда ведущего.
+    private volatile long receivedIndex = -1; // Последняя команда, переданная в процессор ведомого.
+    private volatile long appliedIndex = -1; // Последняя команда, выполненная магазином ведомого.
+    private volatile boolean promoted;
+    private volatile boolean connected;
+    private volatile long disconnects; // Разрывы соединения не по promote() и close() (пишет только поток чтения).
+    private volatile long snapshotsApplied; // Полученные копии состояния (пишет только поток чтения).
+    private volatile boolean closing;
+
+    /**
+     * Конструктор ведомого узла.
+     *
+     * @param api                API магазина ведомого.
+     * @param disruptorProcessor процессор ведомого.
+     * @param leaderAddress      адрес ведущего для репликации.
+     */
+    public ReplicationFollower(StoreAPI api, DisruptorProcessor disruptorProcessor, InetSocketAddress leaderAddress) {
+        this.api = api;
+        this.disruptorProcessor = disruptorProcessor;
+        this.leaderAddress = leaderAddress;
+    }
+
+    /**
+     * Подключается к ведущему и начинает применять журнал со следующей непринятой команды.
+     *
+     * @throws IOException при ошибке подключения.
+     */
+    public void start() throws IOException {
+        channel = SocketChannel.open(leaderAddress);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        ByteBuffer request = ByteBuffer.allocate(Long.BYTES).putLong(receivedIndex + 1).flip();
+        while (request.hasRemaining()) {
+            channel.write(request);
+        }
+        connected = true;
+        reader = new Thread(this::replicate, "replication-follower");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Делает ведомый узел самостоятельным: отключается от ведущего и дожидается
+     * выполнения всех полученных команд. После этого StoreAPI ведомого можно использовать
+     * для любых запросов.
+     *
+     * @throws InterruptedException если ожидание прервано.
+     */
+    public void promote() throws InterruptedException, IOException {
+        promoted = true;
+        closing = true;
+        channel.close();
+        reader.join();
+        disruptorProcessor.waitFor(disruptorProcessor.submitRequest(() -> appliedIndex = receivedIndex));
+    }
+
+    /**
+     * Возвращает отставание от ведущего в командах.
+     *
+     * @return количество команд ведущего, еще не выполненных ведомым.
+     */
+    public long getLag() {
+        return Math.max(0, leaderIndex - appliedIndex);
+    }
+
+    /**
+     * Возвращает номер последней выполненной команды ведущего.
+     *
+     * @return номер команды или -1.
+     */
+    public long getAppliedIndex() {
+        return appliedIndex;
+    }
+
+    /**
+     * Возвращает номер последней известной команды ведущего.
+     *
+     * @return номер команды или -1.
+     */
+    public long getLeaderIndex() {
+        return leaderIndex;
+    }
+
+    /**
+     * Проверяет, получает ли ведомый журнал ведущего.
+     *
+     * @return false после разрыва соединения, promote() или close().
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Возвращает количество разрывов соединения со стороны ведущего или сети
+     * (например, ведущий остановлен или отключил ведомого). После разрыва можно снова вызвать start().
+     *
+     * @return количество разрывов.
+     */
+    public long getDisconnects() {
+        return disconnects;
+    }
+
+    /**
+     * Возвращает количество копий состояния, полученных от ведущего вместо вытесненной части журнала.
+     *
+     * @return количество копий.
+     */
+    public long getSnapshotsApplied() {
+        return snapshotsApplied;
+    }
+
+    /**
+     * Проверяет, был ли узел сделан самостоятельным.
+     *
+     * @return true после promote().
+     */
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void replicate() {
+        ByteBuffer ack = ByteBuffer.allocate(Long.BYTES);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))) {
+            byte[] body = new byte[256];
+            long marked = receivedIndex; // Последняя команда, для которой отправлена отметка выполнения.
+            while (true) {
+                int length = in.readInt();
+                long index = in.readLong();
+                leaderIndex = Math.max(leaderIndex, index);
+                if (length == ReplicationLeader.SNAPSHOT_FRAME) {
+                    // Копия состояния вместо вытесненной части журнала: заменяет все, что применено до нее
+                    byte[] state = new byte[in.readInt()];
+                    in.readFully(state);
+                    api.restoreSnapshot(state);
+                    snapshotsApplied = snapshotsApplied + 1;
+                    receivedIndex = index;
+                } else if (length == Long.BYTES) {
+                    // Сигнал ведущего: сообщаем, сколько уже применено
+                    ack.clear().putLong(appliedIndex).flip();
+                    while (ack.hasRemaining()) {
+                        channel.write(ack);
+                    }
+                } else {
+                    int commandLength = length - Long.BYTES;
+                    if (body.length < commandLength) {
+                        body = new byte[commandLength];
+                    }
+                    in.readFully(body, 0, commandLength);
+                    api.execute(StoreCommand.readFrom(ByteBuffer.wrap(body, 0, commandLength)));
+                    receivedIndex = index;
+                }
+                // Когда пакет кадров прочитан, отмечаем его выполнение одной задачей после команд пакета
+                // (в том числе если пакет закончился сигналом)
+                if (receivedIndex > marked && in.available() == 0) {
+                    long applied = receivedIndex;
+                    disruptorProcessor.submitRequest(() -> appliedIndex = applied);
+                    marked = applied;
+                }
+            }
+        } catch (EOFException e) {
+            // Ведущий закрыл соединение
+        } catch (IOException e) {
+            // Соединение закрыто при promote() или close() или разорвано
+        } finally {
+            connected = false;
+            if (!closing) {
+                disconnects = disconnects + 1;
+            }
+        }
+    }
+
+    /**
+     * Запускает ведомый узел отдельным процессом.
+     * Аргументы: хост порт начальный_баланс_магазина.
+     */
+    public static void main(String[] args) throws Exception {
+        DisruptorProcessor processor = new DisruptorProcessor();
+        StoreAPI api = new StoreAPI(processor, new Store(Double.parseDouble(args[2])));
+        ReplicationFollower follower = new ReplicationFollower(api, processor,
+                new InetSocketAddress(args[0], Integer.parseInt(args[1])));
+        follower.start();
+        while (follower.reader.isAlive()) {
+            System.out.printf("Применено: %d, отставание: %d команд%n", follower.getAppliedIndex(), follower.getLag());
+            Thread.sleep(1000);
+        }
+        processor.shutdown();
+    }
+}
@@ -0,0 +1,372 @@
+package ru.lab11.queuingsystem.Replication;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.Sequence;
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+import ru.lab11.queuingsystem.RequestProcessing.RequestEvent;
+import ru.lab11.queuingsystem.StoreAPI;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ведущий узел репликации. Работает как потребитель после потока обработки и
+ * записывает изменяющие команды (StoreCommand) в журнал в порядке их выполнения.
+ * Поток обработки магазина однопоточный и детерминированный, поэтому ведомый узел,
+ * выполнивший те же команды в том же порядке над тем же начальным состоянием,
+ * получает то же состояние.
+ *
+ * <p>Журнал хранит последние backlogCapacity команд в памяти. Каждый ведомый обслуживается
+ * своим потоком, который читает журнал и пишет кадры в сокет, поэтому медленный ведомый
+ * не задерживает обработку. Если нужные ведомому команды уже вытеснены из журнала, ведущий
+ * с источником копий (setSnapshotSource) снимает копию состояния (StoreAPI.snapshot) и передает ее ведомому
+ * вместе с номером последней вошедшей в нее команды, после чего продолжает журнал с
+ * следующей команды. Ведущий без источника копий отключает такого ведомого. Оба случая считаются
+ * (getSnapshotResyncs, getDroppedFollowers).
+ *
+ * <p>Команда, которую не удалось закодировать (StoreAPI отклоняет такие до публикации, но команда
+ * могла прийти в процессор в обход него), занимает место в журнале без данных: ведомый, дошедший
+ * до нее, восстанавливается по копии состояния, в которую она уже вошла, а потребитель продолжает
+ * работу (getUnreplicableCommands).
+ *
+ * <p>Кадры: [int длина][long номер команды][StoreCommand]; кадр без команды (длина 8) —
+ * сигнал с номером последней команды ведущего; кадр с длиной SNAPSHOT_FRAME —
+ * [int SNAPSHOT_FRAME][long номер последней команды в копии][int длина копии][копия].
+ * Ведомый отвечает номерами примененных команд (long).
+ */
+public class ReplicationLeader implements EventHandler<RequestEvent>, Closeable {
+    private static final long HEARTBEAT_NANOS = 100_000_000L; // Период сигнала с номером последней команды.
+    private static final long IDLE_PARK_NANOS = 100_000L; // Пауза потока ведомого, когда новых команд нет.
+    static final int SNAPSHOT_FRAME = -1; // Длина в заголовке кадра с копией состояния.
+    private static final long NO_INDEX = Long.MIN_VALUE; // Место копии в журнале еще не известно.
+    private static final byte[] UNREPLICABLE = new byte[0]; // Запись журнала для команды, которую не удалось закодировать.
+
+    private final ServerSocketChannel serverChannel; // Сокет для подключения ведомых.
+    private final byte[][] backlog; // Кольцевой журнал закодированных команд.
+    private final int mask;
+    private final Sequence publishedIndex = new Sequence(-1); // Номер последней команды в журнале.
+    private long nextIndex; // Номер следующей команды (только поток потребителя).
+    private final List<FollowerSession> sessions = new CopyOnWriteArrayList<>(); // Подключенные ведомые.
+    private final Thread acceptor; // Поток приема ведомых.
+    private volatile StoreAPI api; // Источник копий состояния для отставших ведомых; может быть null.
+    private final List<PendingSnapshot> pendingSnapshots = new CopyOnWriteArrayList<>(); // Копии, ждущие номера.
+    private final AtomicLong snapshotIds = new AtomicLong();
+    private final AtomicLong snapshotResyncs = new AtomicLong(); // Ведомые, восстановленные по копии.
+    private final AtomicLong droppedFollowers = new AtomicLong(); // Ведомые, отключенные из-за отставания.
+    private final AtomicLong unreplicableCommands = new AtomicLong(); // Команды, которые не удалось закодировать.
+    private volatile boolean running = true;
+
+    /**
+     * Создает ведущий узел и занимает адрес. Прием ведомых начинается после start().
+     *
+     * @param address         адрес для ведомых (порт 0 — любой свободный).
+     * @param backlogCapacity сколько последних команд хранить (степень двойки).
+     * @throws IOException при ошибке открытия сокета.
+     */
+    public ReplicationLeader(InetSocketAddress address, int backlogCapacity) throws IOException {
+        if (Integer.bitCount(backlogCapacity) != 1) {
+            throw new IllegalArgumentException("backlogCapacity должен быть степенью двойки");
+        }
+        this.backlog = new byte[backlogCapacity][];
+        this.mask = backlogCapacity - 1;
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        this.acceptor = new Thread(this::acceptFollowers, "replication-acceptor");
+        acceptor.setDaemon(true);
+    }
+
+    /**
+     * Включает восстановление отставших ведомых по копии состояния. api должен работать через
+     * тот же процессор, к которому ведущий подключен потребителем.
+     *
+     * @param api API магазина ведущего или null, чтобы отключать отставших ведомых.
+     */
+    public void setSnapshotSource(StoreAPI api) {
+        this.api = api;
+    }
+
+    /**
+     * Начинает принимать ведомых.
+     */
+    public void start() {
+        acceptor.start();
+    }
+
+    @Override
+    public void onEvent(RequestEvent event, long sequence, boolean endOfBatch) {
+        StoreCommand command = event.getCommand();
+        if (command != null && command.isWrite()) {
+            byte[] encoded;
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(command.maxEncodedSize());
+                command.writeTo(buffer);
+                encoded = Arrays.copyOf(buffer.array(), buffer.position());
+            } catch (RuntimeException e) {
+                // Исключение остановило бы потребителя и репликацию для всех ведомых
+                encoded = UNREPLICABLE;
+                unreplicableCommands.incrementAndGet();
+            }
+            backlog[(int) (nextIndex & mask)] = encoded;
+            publishedIndex.set(nextIndex);
+            nextIndex++;
+        } else if (command != null && command.op() == StoreCommand.SNAPSHOT) {
+            // Копия снята после всех команд, уже попавших в журнал
+            for (PendingSnapshot pending : pendingSnapshots) {
+                if (pending.id == command.requestId()) {
+                    pending.index = nextIndex - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Возвращает номер последней команды в журнале.
+     *
+     * @return номер команды или -1, если команд не было.
+     */
+    public long getLogIndex() {
+        return publishedIndex.get();
+    }
+
+    /**
+     * Возвращает отставание каждого подключенного ведомого в командах
+     * (по последнему подтверждению ведомого).
+     *
+     * @return отставания ведомых.
+     */
+    public List<Long> getFollowerLags() {
+        List<Long> lags = new ArrayList<>();
+        long head = publishedIndex.get();
+        for (FollowerSession session : sessions) {
+            lags.add(head - session.appliedIndex);
+        }
+        return lags;
+    }
+
+    /**
+     * Возвращает количество ведомых, отставших дальше журнала и восстановленных по копии состояния.
+     *
+     * @return количество передач копии.
+     */
+    public long getSnapshotResyncs() {
+        return snapshotResyncs.get();
+    }
+
+    /**
+     * Возвращает количество ведомых, отключенных из-за отставания дальше журнала
+     * (только у ведущего без источника копий).
+     *
+     * @return количество отключений.
+     */
+    public long getDroppedFollowers() {
+        return droppedFollowers.get();
+    }
+
+    /**
+     * Возвращает количество команд, которые не удалось закодировать для ведомых
+     * (ведомые, дошедшие до них, восстанавливаются по копии состояния).
+     *
+     * @return количество команд.
+     */
+    public long getUnreplicableCommands() {
+        return unreplicableCommands.get();
+    }
+
+    /**
+     * Возвращает порт для подключения ведомых.
+     *
+     * @return номер порта.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverChannel.close();
+        for (FollowerSession session : sessions) {
+            session.channel.close();
+        }
+    }
+
+    private void acceptFollowers() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                FollowerSession session = new FollowerSession(channel);
+                sessions.add(session);
+                Thread sender = new Thread(session::send, "replication-sender");
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                // Сокет закрыт при остановке или ошибка подключения одного ведомого
+            }
+        }
+    }
+
+    // Копия состояния, место которой в журнале назначает поток потребителя
+    private static class PendingSnapshot {
+        private final long id;
+        private volatile long index = NO_INDEX; // Последняя команда журнала, вошедшая в копию.
+
+        PendingSnapshot(long id) {
+            this.id = id;
+        }
+    }
+
+    // Соединение с одним ведомым
+    private class FollowerSession {
+        private final SocketChannel channel;
+        private volatile long appliedIndex = -1; // Последняя команда, подтвержденная ведомым.
+
+        FollowerSession(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        // Отправляет команды журнала, начиная с номера, который запросил ведомый
+        void send() {
+            // Вмещает самую длинную команду (две строки по 32 КБ) и сигнал
+            ByteBuffer out = ByteBuffer.allocate(128 * 1024);
+            try {
+                ByteBuffer request = ByteBuffer.allocate(Long.BYTES);
+                while (request.hasRemaining()) {
+                    if (channel.read(request) < 0) {
+                        return;
+                    }
+                }
+                long next = request.flip().getLong();
+                appliedIndex = next - 1;
+                Thread acks = new Thread(this::readAcks, "replication-acks");
+                acks.setDaemon(true);
+                acks.start();
+
+                long lastHeartbeat = 0;
+                while (running) {
+                    long head = publishedIndex.get();
+                    if (head - next >= backlog.length) {
+                        // Нужные команды уже вытеснены из журнала: ведомый начинает с копии состояния
+                        next = resync();
+                        continue;
+                    }
+                    out.clear();
+                    boolean unreplicable = false;
+                    while (next <= head) {
+                        byte[] command = backlog[(int) (next & mask)];
+                        // Проверяем, что запись не перезаписали, пока мы ее читали
+                        if (publishedIndex.get() - next >= backlog.length) {
+                            // Собранные кадры не нужны: копия включает их команды
+                            out.clear();
+                            break;
+                        }
+                        if (command == UNREPLICABLE) {
+                            // Сначала отправляем собранные кадры, затем восстанавливаем ведомого по копии
+                            unreplicable = out.position() == 0;
+                            break;
+                        }
+                        // Оставляем место для сигнала
+                        if (out.remaining() < 2 * (Integer.BYTES + Long.BYTES) + command.length) {
+                            break;
+                        }
+                        out.putInt(Long.BYTES + command.length).putLong(next).put(command);
+                        next++;
+                    }
+                    if (unreplicable) {
+                        next = resync();
+                        continue;
+                    }
+                    long now = System.nanoTime();
+                    if (now - lastHeartbeat >= HEARTBEAT_NANOS) {
+                        out.putInt(Long.BYTES).putLong(head);
+                        lastHeartbeat = now;
+                    }
+                    out.flip();
+                    if (!out.hasRemaining() && publishedIndex.get() - next >= backlog.length) {
+                        continue;
+                    }
+                    if (!out.hasRemaining()) {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                        continue;
+                    }
+                    while (out.hasRemaining()) {
+                        channel.write(out);
+                    }
+                }
+            } catch (IOException e) {
+                // Ведомый отключился
+            } finally {
+                sessions.remove(this);
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Соединение уже закрыто
+                }
+            }
+        }
+
+        // Передает ведомому копию состояния и возвращает номер следующей команды журнала после нее.
+        // Без источника копий ведомого нельзя восстановить, и он отключается
+        private long resync() throws IOException {
+            StoreAPI api = ReplicationLeader.this.api;
+            if (api == null) {
+                droppedFollowers.incrementAndGet();
+                throw new IOException("Ведомый отстал дальше журнала");
+            }
+            PendingSnapshot pending = new PendingSnapshot(snapshotIds.incrementAndGet());
+            pendingSnapshots.add(pending);
+            byte[] state;
+            try {
+                CompletableFuture<byte[]> snapshot = api.snapshot(pending.id);
+                // Копию снимает поток обработки, а номер появляется, когда потребитель дойдет до ее события
+                while (!snapshot.isDone() || pending.index == NO_INDEX) {
+                    if (!running) {
+                        throw new IOException("Ведущий остановлен");
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                state = snapshot.join();
+            } catch (CompletionException e) {
+                throw new IOException("Не удалось снять копию состояния", e.getCause());
+            } finally {
+                pendingSnapshots.remove(pending);
+            }
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + Integer.BYTES)
+                    .putInt(SNAPSHOT_FRAME).putLong(pending.index).putInt(state.length).flip();
+            ByteBuffer body = ByteBuffer.wrap(state);
+            while (header.hasRemaining() || body.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, body});
+            }
+            snapshotResyncs.incrementAndGet();
+            return pending.index + 1;
+        }
+
+        // Читает подтверждения примененных команд
+        private void readAcks() {
+            ByteBuffer ack = ByteBuffer.allocate(Long.BYTES);
+            try {
+                while (channel.read(ack) >= 0) {
+                    if (!ack.hasRemaining()) {
+                        appliedIndex = ack.flip().getLong();
+                        ack.clear();
+                    }
+                }
+            } catch (IOException e) {
+                // Ведомый отключился
+            }
+        }
+    }
+}
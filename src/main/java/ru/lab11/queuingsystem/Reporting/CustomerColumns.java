@@ -0,0 +1,112 @@
+package ru.lab11.queuingsystem.Reporting;
+
+import ru.lab11.queuingsystem.MyStore.CustomerTable;
+
+/**
+ * Согласованный снимок клиентов в столбцовом виде: по массиву на каждое поле.
+ * Копируется потоком обработки частями между другими запросами (см. StoreReports.snapshot),
+ * после чего отчеты строятся по нему в других потоках без доступа к магазину.
+ */
+public class CustomerColumns {
+    private final int size; // Количество клиентов.
+    private final String[] logins; // Логины клиентов.
+    private final double[] balances; // Балансы клиентов.
+    private final double[] spentAmounts; // Суммы, потраченные клиентами.
+    private final int[] reservedUnits; // Количество забронированных, но не оплаченных единиц товара.
+    private final double storeBalance; // Баланс магазина в момент снимка.
+    private CustomerTable.ColumnCopy copy; // Незавершенное копирование (null после завершения).
+
+    private CustomerColumns(int size, double storeBalance) {
+        this.size = size;
+        this.logins = new String[size];
+        this.balances = new double[size];
+        this.spentAmounts = new double[size];
+        this.reservedUnits = new int[size];
+        this.storeBalance = storeBalance;
+    }
+
+    /**
+     * Начинает копирование таблицы клиентов в столбцы. Вызывается в потоке обработки;
+     * значения фиксируются на момент вызова, а копируются в copyNext.
+     *
+     * @param table        таблица клиентов магазина.
+     * @param storeBalance баланс магазина.
+     * @return незаполненный снимок клиентов.
+     */
+    static CustomerColumns startCopy(CustomerTable table, double storeBalance) {
+        CustomerColumns columns = new CustomerColumns(table.size(), storeBalance);
+        columns.copy = table.startCopy(columns.logins, columns.balances, columns.spentAmounts, columns.reservedUnits);
+        return columns;
+    }
+
+    /**
+     * Копирует следующие строки снимка. Вызывается в потоке обработки.
+     *
+     * @param rows сколько строк скопировать.
+     * @return true, если снимок заполнен.
+     */
+    boolean copyNext(int rows) {
+        if (copy != null && copy.copyNext(rows)) {
+            copy = null;
+        }
+        return copy == null;
+    }
+
+    /**
+     * Возвращает количество клиентов в снимке.
+     *
+     * @return количество клиентов.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Возвращает логин клиента.
+     *
+     * @param index номер клиента в снимке.
+     * @return логин.
+     */
+    public String login(int index) {
+        return logins[index];
+    }
+
+    /**
+     * Возвращает баланс клиента.
+     *
+     * @param index номер клиента в снимке.
+     * @return баланс.
+     */
+    public double balance(int index) {
+        return balances[index];
+    }
+
+    /**
+     * Возвращает сумму, потраченную клиентом.
+     *
+     * @param index номер клиента в снимке.
+     * @return потраченная сумма.
+     */
+    public double spentAmount(int index) {
+        return spentAmounts[index];
+    }
+
+    /**
+     * Возвращает количество забронированных, но не оплаченных единиц товара.
+     *
+     * @param index номер клиента в снимке.
+     * @return количество единиц.
+     */
+    public int reservedUnits(int index) {
+        return reservedUnits[index];
+    }
+
+    /**
+     * Возвращает баланс магазина в момент снимка.
+     *
+     * @return баланс магазина.
+     */
+    public double storeBalance() {
+        return storeBalance;
+    }
+}
@@ -0,0 +1,192 @@
+package ru.lab11.queuingsystem.Reporting;
+
+import ru.lab11.queuingsystem.MyStore.Store;
+import ru.lab11.queuingsystem.RequestProcessing.DisruptorProcessor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Отчеты по клиентам магазина для финансового отдела.
+ * Снимок копируется потоком обработки частями по SNAPSHOT_CHUNK клиентов между другими
+ * запросами, а агрегаты считаются параллельно по столбцам в пуле fork/join.
+ * Выгрузка в файл пишется построчно, без построения всего отчета в памяти.
+ */
+public class StoreReports {
+    private static final int HISTOGRAM_THRESHOLD = 16384; // Размер части, которую гистограмма считает без деления.
+    private static final int SNAPSHOT_CHUNK = 16384; // Клиентов, копируемых одним событием процессора.
+
+    private final DisruptorProcessor disruptorProcessor; // Процессор, через который берется снимок.
+    private final Store store; // Магазин.
+    private final ForkJoinPool pool; // Пул для параллельных вычислений.
+
+    /**
+     * Конструктор отчетов с общим пулом fork/join.
+     *
+     * @param disruptorProcessor процессор запросов магазина.
+     * @param store              магазин.
+     */
+    public StoreReports(DisruptorProcessor disruptorProcessor, Store store) {
+        this(disruptorProcessor, store, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Конструктор отчетов.
+     *
+     * @param disruptorProcessor процессор запросов магазина.
+     * @param store              магазин.
+     * @param pool               пул для параллельных вычислений.
+     */
+    public StoreReports(DisruptorProcessor disruptorProcessor, Store store, ForkJoinPool pool) {
+        this.disruptorProcessor = disruptorProcessor;
+        this.store = store;
+        this.pool = pool;
+    }
+
+    /**
+     * Берет согласованный снимок клиентов: все запросы до снимка учтены, после — нет.
+     * Первое событие только фиксирует момент снимка, затем каждое событие копирует
+     * SNAPSHOT_CHUNK клиентов; следующее отправляется после выполнения предыдущего,
+     * чтобы запросы других потоков выполнялись между ними.
+     *
+     * @return снимок клиентов.
+     */
+    public CustomerColumns snapshot() {
+        CompletableFuture<CustomerColumns> started = new CompletableFuture<>();
+        disruptorProcessor.submitRequest(() ->
+                started.complete(CustomerColumns.startCopy(store.getCustomerTable(), store.getStoreBalance())));
+        CustomerColumns columns = started.join();
+        AtomicBoolean complete = new AtomicBoolean();
+        while (!complete.get()) {
+            disruptorProcessor.waitFor(disruptorProcessor.submitRequest(() ->
+                    complete.set(columns.copyNext(SNAPSHOT_CHUNK))));
+        }
+        return columns;
+    }
+
+    /**
+     * Считает общую сумму, потраченную клиентами.
+     *
+     * @param columns снимок клиентов.
+     * @return сумма трат.
+     */
+    public double totalSpent(CustomerColumns columns) {
+        return pool.submit(() -> IntStream.range(0, columns.size()).parallel()
+                .mapToDouble(columns::spentAmount)
+                .sum()).join();
+    }
+
+    /**
+     * Считает распределение балансов клиентов по корзинам равной ширины.
+     * Корзина i содержит балансы из [i * bucketWidth, (i + 1) * bucketWidth);
+     * отрицательные балансы попадают в первую корзину, слишком большие — в последнюю.
+     *
+     * @param columns     снимок клиентов.
+     * @param bucketWidth ширина корзины.
+     * @param buckets     количество корзин.
+     * @return количество клиентов в каждой корзине.
+     */
+    public long[] balanceHistogram(CustomerColumns columns, double bucketWidth, int buckets) {
+        return pool.invoke(new HistogramTask(columns, bucketWidth, buckets, 0, columns.size()));
+    }
+
+    /**
+     * Считает клиентов с неоплаченными бронированиями.
+     *
+     * @param columns снимок клиентов.
+     * @return количество клиентов.
+     */
+    public long countWithPendingReservations(CustomerColumns columns) {
+        return pool.submit(() -> IntStream.range(0, columns.size()).parallel()
+                .filter(i -> columns.reservedUnits(i) > 0)
+                .count()).join();
+    }
+
+    /**
+     * Выгружает траты каждого клиента в CSV: "логин,баланс,потрачено,забронировано".
+     *
+     * @param columns снимок клиентов.
+     * @param file    файл отчета.
+     * @throws IOException при ошибке записи.
+     */
+    public void exportSpending(CustomerColumns columns, Path file) throws IOException {
+        export(columns, file, i -> true);
+    }
+
+    /**
+     * Выгружает в CSV только клиентов с неоплаченными бронированиями.
+     *
+     * @param columns снимок клиентов.
+     * @param file    файл отчета.
+     * @throws IOException при ошибке записи.
+     */
+    public void exportPendingReservations(CustomerColumns columns, Path file) throws IOException {
+        export(columns, file, i -> columns.reservedUnits(i) > 0);
+    }
+
+    private void export(CustomerColumns columns, Path file, IntPredicate filter) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("login,balance,spent,reserved_units");
+            writer.newLine();
+            StringBuilder row = new StringBuilder(64);
+            for (int i = 0; i < columns.size(); i++) {
+                if (!filter.test(i)) {
+                    continue;
+                }
+                row.setLength(0);
+                row.append(columns.login(i)).append(',')
+                        .append(columns.balance(i)).append(',')
+                        .append(columns.spentAmount(i)).append(',')
+                        .append(columns.reservedUnits(i));
+                writer.append(row);
+                writer.newLine();
+            }
+        }
+    }
+
+    // Подсчет гистограммы делением диапазона клиентов пополам
+    private static class HistogramTask extends RecursiveTask<long[]> {
+        private final CustomerColumns columns;
+        private final double bucketWidth;
+        private final int buckets;
+        private final int from;
+        private final int to;
+
+        HistogramTask(CustomerColumns columns, double bucketWidth, int buckets, int from, int to) {
+            this.columns = columns;
+            this.bucketWidth = bucketWidth;
+            this.buckets = buckets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= HISTOGRAM_THRESHOLD) {
+                long[] counts = new long[buckets];
+                for (int i = from; i < to; i++) {
+                    int bucket = (int) (columns.balance(i) / bucketWidth);
+                    counts[Math.max(0, Math.min(bucket, buckets - 1))]++;
+                }
+                return counts;
+            }
+            int middle = (from + to) >>> 1;
+            HistogramTask left = new HistogramTask(columns, bucketWidth, buckets, from, middle);
+            left.fork();
+            long[] counts = new HistogramTask(columns, bucketWidth, buckets, middle, to).compute();
+            long[] leftCounts = left.join();
+            for (int i = 0; i < buckets; i++) {
+                counts[i] += leftCounts[i];
+            }
+            return counts;
+        }
+    }
+}
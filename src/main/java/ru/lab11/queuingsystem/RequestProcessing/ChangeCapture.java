@@ -0,0 +1,12 @@
+package ru.lab11.queuingsystem.RequestProcessing;
+
+import ru.lab11.queuingsystem.MyStore.StoreChanges;
+
+//Снятие изменений, сделанных обработанными запросами.
+//Вызывается потоком обработки после каждого события; результат сохраняется в событии
+//и читается потребителями, которые работают после обработчика (например, моделью чтения).
+@FunctionalInterface
+public interface ChangeCapture {
+    // Возвращает изменения с прошлого вызова или null, если их нет
+    StoreChanges capture();
+}
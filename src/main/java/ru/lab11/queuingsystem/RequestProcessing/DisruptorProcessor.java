@@ -2,109 +2,338 @@ package ru.lab11.queuingsystem.RequestProcessing;
 
 import com.lmax.disruptor.*;
 import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.EventHandlerGroup;
 import com.lmax.disruptor.dsl.ProducerType;
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+import ru.lab11.queuingsystem.Tracing.RequestTracer;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 //Этот класс управляет двумя очередями обработки запросов (двумя Disruptor):
-public class DisruptorProcessor {
-    // Два Disruptor: первый для входящих запросов, второй для обработки
-    private final Disruptor<RequestEvent> inputDisruptor;
-    private final Disruptor<RequestEvent> processingDisruptor;
+//входной буфер принимает запросы от многих потоков, буфер обработки выполняет их в одном потоке.
+//Пару буферов можно заменить на пару другого размера без остановки (resize, также через JMX):
+//новые запросы сразу идут в новую пару, а ее обработка начинается после того, как старая пара
+//выполнит все свои запросы. Номера запросов продолжают возрастать через смещение пары.
+public class DisruptorProcessor implements RequestSubmitter, DisruptorProcessorMXBean {
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
 
-    // Кольцевые буферы для входящих запросов и обработки
-    private final RingBuffer<RequestEvent> inputRingBuffer;
-    private final RingBuffer<RequestEvent> processingRingBuffer;
+    // Текущая пара буферов; заменяется в resize
+    private volatile RingPair rings;
+    // Снятие изменений и потребители после обработки (подключаются к каждой новой паре)
+    private final ChangeCapture changeCapture;
+    private final EventHandler<RequestEvent>[] processedHandlers;
+    // Замена пары и остановка не выполняются одновременно
+    private final Object resizeLock = new Object();
 
     // Счетчик необработанных запросов
     private final AtomicLong pendingRequests = new AtomicLong(0);
+    // Номер последнего обработанного запроса (общий для всех пар)
+    private final Sequence processedSequence = new Sequence(-1);
+    // Трассировщик запросов (null — трассировка выключена)
+    private volatile RequestTracer tracer;
 
     public DisruptorProcessor() {
+        this(null);
+    }
 
-        int bufferSize = 1024;
-
-        // Фабрика потоков для обработки
-        ThreadFactory threadFactory = Executors.defaultThreadFactory();
-
-        // Создание первого Disruptor для получения входящих заявок
-        inputDisruptor = new Disruptor<>(
-                RequestEvent.EVENT_FACTORY,        // Фабрика событий (создает объекты RequestEvent)
-                bufferSize,                        // Размер буфера
-                threadFactory,                     // Фабрика потоков
-                ProducerType.MULTI,                // Несколько потоков могут публиковать заявки
-                new BlockingWaitStrategy()         // Стратегия ожидания при нехватке данных
-        );
-
-        // Создание второго Disruptor для обработки заявок
-        processingDisruptor = new Disruptor<>(
-                RequestEvent.EVENT_FACTORY,        // Фабрика событий
-                bufferSize,                        // Размер буфера
-                threadFactory,                     // Фабрика потоков
-                ProducerType.SINGLE,               // Обработка выполняется одним потоком
-                new BusySpinWaitStrategy()         // Стратегия ожидания при нехватке данных
-        );
-
-        // Получение ссылок на кольцевые буферы
-        inputRingBuffer = inputDisruptor.getRingBuffer();
-        processingRingBuffer = processingDisruptor.getRingBuffer();
-
-        // Обработка событий из первого буфера и передача их во второй
-        inputDisruptor.handleEventsWith((event, sequence, endOfBatch) -> {
-            try {
-                // Получаем следующий свободный индекс во втором буфере
-                long processingSequence = processingRingBuffer.next();
+    // Конструктор с потребителями, которые получают каждое событие после потока обработки.
+    // changeCapture вызывается потоком обработки после каждого события, а его результат
+    // доступен потребителям через RequestEvent.getChanges()
+    @SafeVarargs
+    public DisruptorProcessor(ChangeCapture changeCapture, EventHandler<RequestEvent>... processedHandlers) {
+        this(DEFAULT_BUFFER_SIZE, changeCapture, processedHandlers);
+    }
+
+    // Конструктор с начальным размером буферов (степень двойки)
+    @SafeVarargs
+    public DisruptorProcessor(int bufferSize, ChangeCapture changeCapture, EventHandler<RequestEvent>... processedHandlers) {
+        this.changeCapture = changeCapture;
+        this.processedHandlers = processedHandlers;
+        rings = new RingPair(bufferSize, 0, true);
+    }
+
+    //Пара буферов одного размера. Номер запроса — base + номер во входном буфере
+    private final class RingPair {
+        // Два Disruptor: первый для входящих запросов, второй для обработки
+        final Disruptor<RequestEvent> inputDisruptor;
+        final Disruptor<RequestEvent> processingDisruptor;
+
+        // Кольцевые буферы для входящих запросов и обработки
+        final RingBuffer<RequestEvent> inputRingBuffer;
+        final RingBuffer<RequestEvent> processingRingBuffer;
+
+        // Размер каждого кольцевого буфера
+        final int bufferSize;
+        // Номер запроса, соответствующий первой ячейке входного буфера
+        final long base;
+
+        // Потоки, которые сейчас публикуют в эту пару
+        final AtomicInteger activeSubmitters = new AtomicInteger();
+        // Пара заменена: новые запросы в нее не публикуются
+        volatile boolean retired;
+        // Предыдущая пара выполнила все запросы: можно передавать запросы на обработку
+        volatile boolean ready;
+
+        RingPair(int bufferSize, long base, boolean first) {
+            this.bufferSize = bufferSize;
+            this.base = base;
+            this.ready = first;
+
+            // Фабрика потоков для обработки
+            ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+            // Создание первого Disruptor для получения входящих заявок
+            inputDisruptor = new Disruptor<>(
+                    RequestEvent.EVENT_FACTORY,        // Фабрика событий (создает объекты RequestEvent)
+                    bufferSize,                        // Размер буфера
+                    threadFactory,                     // Фабрика потоков
+                    ProducerType.MULTI,                // Несколько потоков могут публиковать заявки
+                    new BlockingWaitStrategy()         // Стратегия ожидания при нехватке данных
+            );
+
+            // Создание второго Disruptor для обработки заявок
+            processingDisruptor = new Disruptor<>(
+                    RequestEvent.EVENT_FACTORY,        // Фабрика событий
+                    bufferSize,                        // Размер буфера
+                    threadFactory,                     // Фабрика потоков
+                    ProducerType.SINGLE,               // Обработка выполняется одним потоком
+                    new BusySpinWaitStrategy()         // Стратегия ожидания при нехватке данных
+            );
+
+            // Получение ссылок на кольцевые буферы
+            inputRingBuffer = inputDisruptor.getRingBuffer();
+            processingRingBuffer = processingDisruptor.getRingBuffer();
+
+            // Обработка событий из первого буфера и передача их во второй
+            inputDisruptor.handleEventsWith((event, sequence, endOfBatch) -> {
+                // Запросы новой пары ждут, пока старая пара выполнит свои
+                while (!ready) {
+                    Thread.onSpinWait();
+                }
+                if (event.isTraced()) {
+                    event.tracePickup();
+                }
                 try {
-                    // Переносим задачу из первого буфера во второй
-                    RequestEvent processingEvent = processingRingBuffer.get(processingSequence);
-                    processingEvent.setTask(event.getTask());
+                    // Получаем следующий свободный индекс во втором буфере
+                    long processingSequence = processingRingBuffer.next();
+                    try {
+                        // Переносим задачу из первого буфера во второй
+                        RequestEvent processingEvent = processingRingBuffer.get(processingSequence);
+                        if (event.isTraced()) {
+                            event.tracePublish();
+                        }
+                        processingEvent.copyFrom(event);
+                    } finally {
+                        // Публикуем событие во втором буфере
+                        processingRingBuffer.publish(processingSequence);
+                    }
                 } finally {
-                    // Публикуем событие во втором буфере
-                    processingRingBuffer.publish(processingSequence);
+                    // Очищаем событие в первом буфере
+                    event.clear();
                 }
-            } finally {
-                // Очищаем событие в первом буфере
-                event.clear();
+            });
+
+            // Обработка событий во втором буфере (с объединением поставок внутри пакета)
+            EventHandlerGroup<RequestEvent> processing = processingDisruptor.handleEventsWith(
+                    new RequestEventHandler(pendingRequests, processedSequence, changeCapture));
+
+            // Потребители результатов обработки читают событие только после обработчика
+            if (processedHandlers.length > 0) {
+                processing.then(processedHandlers);
             }
-        });
 
-        // Обработка событий во втором буфере
-        processingDisruptor.handleEventsWith((event, sequence, endOfBatch) -> {
+            // Запускаем оба Disruptor
+            inputDisruptor.start();
+            processingDisruptor.start();
+        }
+
+        // Дожидается выполнения всех запросов пары всеми потребителями и останавливает ее потоки
+        void drain() {
+            inputDisruptor.shutdown();
+            processingDisruptor.shutdown();
+        }
+    }
+
+    // Возвращает пару, в которую можно публиковать; после публикации вызывается leave
+    private RingPair enter() {
+        while (true) {
+            RingPair pair = rings;
+            pair.activeSubmitters.incrementAndGet();
+            if (!pair.retired) {
+                return pair;
+            }
+            // Пара заменяется прямо сейчас — ждем публикации новой
+            pair.activeSubmitters.decrementAndGet();
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void leave(RingPair pair) {
+        pair.activeSubmitters.decrementAndGet();
+    }
+
+    // Заменяет пару буферов на пару указанного размера (степень двойки) без остановки обработки.
+    // Новые запросы публикуются в новую пару сразу после того, как закончат публикацию потоки,
+    // уже начавшие ее в старую; старая пара выполняет свои запросы до конца, и только затем
+    // новая пара начинает передавать запросы на обработку. Порядок и номера запросов сохраняются.
+    // Возвращает после остановки старой пары. Потребители после обработки получают onStart
+    // и onShutdown при каждой замене
+    @Override
+    public void resize(int bufferSize) {
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("Размер буфера должен быть степенью двойки");
+        }
+        synchronized (resizeLock) {
+            RingPair old = rings;
+            if (old.bufferSize == bufferSize) {
+                return;
+            }
+            old.retired = true;
+            while (old.activeSubmitters.get() != 0) {
+                Thread.onSpinWait();
+            }
+            // Запросов в старую пару больше не будет: следующий номер известен
+            RingPair next = new RingPair(bufferSize, old.base + old.inputRingBuffer.getCursor() + 1, false);
+            rings = next;
+            old.drain();
+            next.ready = true;
+        }
+    }
+
+    // Регистрирует процессор в платформенном MBeanServer (размер буферов, очередь, resize)
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("ru.lab11.queuingsystem:type=DisruptorProcessor,name="
+                + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    // Текущий размер каждого кольцевого буфера
+    @Override
+    public int getBufferSize() {
+        return rings.bufferSize;
+    }
+
+    // Метод для публикации нового запроса.
+    // Возвращает номер запроса, который можно передать в waitFor, чтобы дождаться его выполнения
+    @Override
+    public long submitRequest(Runnable task) {
+        return submitRequest(task, null);
+    }
+
+    // Метод для публикации запроса вместе с его описанием в виде данных.
+    // Описание доступно потребителям после потока обработки (репликация, журналы)
+    @Override
+    public long submitRequest(Runnable task, StoreCommand command) {
+        return submit(task, null, null, 0, command, true);
+    }
+
+    // Метод публикации поставки товара. В отличие от submitRequest, поставки одному получателю
+    // объединяются обработчиком в пределах пакета и применяются одним обновлением на товар
+    @Override
+    public long submitSupply(SupplyTarget target, String productName, int quantity, StoreCommand command) {
+        return submit(null, target, productName, quantity, command, true);
+    }
+
+    // Публикация запроса без ожидания места: если входной буфер заполнен, возвращает -1
+    @Override
+    public long trySubmitRequest(Runnable task, StoreCommand command) {
+        return submit(task, null, null, 0, command, false);
+    }
+
+    // Публикация поставки без ожидания места: если входной буфер заполнен, возвращает -1
+    @Override
+    public long trySubmitSupply(SupplyTarget target, String productName, int quantity, StoreCommand command) {
+        return submit(null, target, productName, quantity, command, false);
+    }
+
+    // Публикует задачу или поставку (target != null) во входной буфер текущей пары.
+    // Если wait == false и места нет, ничего не публикует и возвращает -1
+    private long submit(Runnable task, SupplyTarget target, String productName, int quantity, StoreCommand command,
+                        boolean wait) {
+        // Время отправки берется до next(), чтобы учесть ожидание места в буфере
+        RequestTracer tracer = sampleTracer();
+        long submitNanos = tracer != null ? System.nanoTime() : 0;
+        RingPair pair = enter();
+        try {
+            // Получаем следующий индекс в первом буфере
+            long sequence;
+            if (wait) {
+                sequence = pair.inputRingBuffer.next();
+            } else {
+                try {
+                    sequence = pair.inputRingBuffer.tryNext();
+                } catch (InsufficientCapacityException e) {
+                    return -1;
+                }
+            }
+            long token = pair.base + sequence;
             try {
-                // Выполняем задачу, если она существует
-                if (event.getTask() != null) {
-                    event.getTask().run();
+                // Добавляем задачу или поставку в буфер
+                RequestEvent event = pair.inputRingBuffer.get(sequence);
+                if (target != null) {
+                    event.setSupply(target, productName, quantity);
+                } else {
+                    event.setTask(task);
                 }
+                event.setSequence(token);
+                event.setCommand(command);
+                event.setTrace(tracer, submitNanos);
+                // Увеличиваем счетчик необработанных запросов
+                pendingRequests.incrementAndGet();
             } finally {
-                // Очищаем событие после обработки
-                event.clear();
-                // Уменьшаем счетчик необработанных запросов
-                pendingRequests.decrementAndGet();
+                // Публикуем событие в первом буфере
+                pair.inputRingBuffer.publish(sequence);
             }
-        });
+            return token;
+        } finally {
+            leave(pair);
+        }
+    }
 
-        // Запускаем оба Disruptor
-        inputDisruptor.start();
-        processingDisruptor.start();
+    // Прогоняет пустые события через все ячейки обоих буферов (дважды), чтобы память буферов
+    // и код обработчиков были затронуты до первых настоящих запросов. Блокирует до выполнения
+    public void preTouch() {
+        long last = -1;
+        for (int i = 0, size = rings.bufferSize * 2; i < size; i++) {
+            last = submitRequest(null);
+        }
+        waitFor(last);
     }
 
-    // Метод для публикации нового запроса
-    public void submitRequest(Runnable task) {
-        // Получаем следующий индекс в первом буфере
-        long sequence = inputRingBuffer.next();
-        try {
-            // Добавляем задачу в буфер
-            RequestEvent event = inputRingBuffer.get(sequence);
-            event.setTask(task);
-            // Увеличиваем счетчик необработанных запросов
-            pendingRequests.incrementAndGet();
-        } finally {
-            // Публикуем событие в первом буфере
-            inputRingBuffer.publish(sequence);
+    // Включает выборочную трассировку запросов; null выключает ее.
+    // Запросы, отправленные до переключения, трассируются по прежнему решению
+    public void setTracer(RequestTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    // Возвращает трассировщик, если очередной запрос отобран для трассировки, иначе null
+    private RequestTracer sampleTracer() {
+        RequestTracer current = tracer;
+        return current != null && current.sample() ? current : null;
+    }
+
+    // Метод ожидания выполнения запроса с указанным номером (и всех запросов до него).
+    // В отличие от waitProcessor, не зависит от запросов, опубликованных позже
+    @Override
+    public void waitFor(long sequence) {
+        while (processedSequence.get() < sequence) {
+            Thread.onSpinWait();
         }
     }
 
+    // Номер последнего выполненного запроса
+    @Override
+    public long getProcessedSequence() {
+        return processedSequence.get();
+    }
+
     // Метод ожидания обработки всех запросов
     public void waitProcessor() {
         // Ожидаем, пока счетчик необработанных запросов не станет равным 0
@@ -116,13 +345,15 @@ public class DisruptorProcessor {
     }
 
     // Получение текущего количества необработанных запросов
+    @Override
     public long getPendingRequests() {
         return pendingRequests.get();
     }
 
     // Метод завершения работы обоих Disruptor
     public void shutdown() {
-        inputDisruptor.shutdown();
-        processingDisruptor.shutdown();
+        synchronized (resizeLock) {
+            rings.drain();
+        }
     }
 }
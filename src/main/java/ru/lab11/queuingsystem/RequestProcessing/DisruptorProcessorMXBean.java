@@ -0,0 +1,16 @@
+package ru.lab11.queuingsystem.RequestProcessing;
+
+//Управление DisruptorProcessor через JMX (см. DisruptorProcessor.registerMBean)
+public interface DisruptorProcessorMXBean {
+    // Текущий размер каждого кольцевого буфера
+    int getBufferSize();
+
+    // Количество необработанных запросов
+    long getPendingRequests();
+
+    // Номер последнего выполненного запроса
+    long getProcessedSequence();
+
+    // Замена буферов на буферы другого размера без остановки обработки
+    void resize(int bufferSize);
+}
@@ -0,0 +1,147 @@
+package ru.lab11.queuingsystem.RequestProcessing;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+//Ограниченный кэш результатов запросов по идентификатору, переданному клиентом.
+//Используется только потоком обработки, поэтому не синхронизирован.
+//Хранится в двух массивах с открытой адресацией (линейное пробирование) и вытесняет
+//самые старые записи, когда заполнено capacity идентификаторов.
+public class RequestDeduplicator {
+    // Результат не найден в кэше
+    public static final byte UNKNOWN = 0;
+    // Запрос был выполнен неуспешно
+    public static final byte FAILED = 1;
+    // Запрос был выполнен успешно
+    public static final byte SUCCEEDED = 2;
+
+    // Таблица: идентификаторы и результаты (UNKNOWN означает пустую ячейку)
+    private final long[] keys;
+    private final byte[] results;
+    private final int mask;
+
+    // Идентификаторы в порядке добавления для вытеснения самых старых
+    private final long[] insertionOrder;
+    private int oldest;
+    private int size;
+
+    public RequestDeduplicator(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity должен быть положительным");
+        }
+        // Таблица заполнена не более чем наполовину, чтобы цепочки пробирования были короткими
+        int tableSize = Integer.highestOneBit(capacity) << 2;
+        keys = new long[tableSize];
+        results = new byte[tableSize];
+        mask = tableSize - 1;
+        insertionOrder = new long[capacity];
+    }
+
+    // Возвращает сохраненный результат запроса или UNKNOWN
+    public byte get(long requestId) {
+        int slot = find(requestId);
+        return slot < 0 ? UNKNOWN : results[slot];
+    }
+
+    // Запоминает результат запроса, вытесняя самый старый при переполнении
+    public void put(long requestId, boolean success) {
+        int slot = find(requestId);
+        if (slot >= 0) {
+            results[slot] = success ? SUCCEEDED : FAILED;
+            return;
+        }
+        if (size == insertionOrder.length) {
+            remove(insertionOrder[oldest]);
+            oldest = (oldest + 1) % insertionOrder.length;
+            size--;
+        }
+        insertionOrder[(oldest + size) % insertionOrder.length] = requestId;
+        size++;
+
+        slot = index(requestId);
+        while (results[slot] != UNKNOWN) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = requestId;
+        results[slot] = success ? SUCCEEDED : FAILED;
+    }
+
+    // Количество запомненных запросов
+    public int size() {
+        return size;
+    }
+
+    // Сколько запросов помнит кэш
+    public int capacity() {
+        return insertionOrder.length;
+    }
+
+    // Записывает запомненные запросы от самого старого к самому новому (для копии состояния)
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            long requestId = insertionOrder[(oldest + i) % insertionOrder.length];
+            out.writeLong(requestId);
+            out.writeBoolean(get(requestId) == SUCCEEDED);
+        }
+    }
+
+    // Читает запросы, записанные writeTo, в новый кэш; при меньшей емкости остаются самые новые
+    public static RequestDeduplicator readFrom(DataInputStream in, int capacity) throws IOException {
+        RequestDeduplicator deduplicator = new RequestDeduplicator(capacity);
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            deduplicator.put(in.readLong(), in.readBoolean());
+        }
+        return deduplicator;
+    }
+
+    // Заменяет содержимое копией другого кэша той же емкости
+    public void copyFrom(RequestDeduplicator other) {
+        if (other.insertionOrder.length != insertionOrder.length) {
+            throw new IllegalArgumentException("Емкости кэшей различаются");
+        }
+        System.arraycopy(other.keys, 0, keys, 0, keys.length);
+        System.arraycopy(other.results, 0, results, 0, results.length);
+        System.arraycopy(other.insertionOrder, 0, insertionOrder, 0, insertionOrder.length);
+        oldest = other.oldest;
+        size = other.size;
+    }
+
+    private int find(long requestId) {
+        int slot = index(requestId);
+        while (results[slot] != UNKNOWN) {
+            if (keys[slot] == requestId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Удаление со сдвигом следующих элементов цепочки, чтобы не оставлять "надгробий"
+    private void remove(long requestId) {
+        int slot = find(requestId);
+        if (slot < 0) {
+            return;
+        }
+        int next = (slot + 1) & mask;
+        while (results[next] != UNKNOWN) {
+            int home = index(keys[next]);
+            // Элемент можно перенести в освободившуюся ячейку, если она лежит на его пути пробирования
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                keys[slot] = keys[next];
+                results[slot] = results[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        results[slot] = UNKNOWN;
+    }
+
+    private int index(long requestId) {
+        long h = requestId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -1,10 +1,33 @@
 package ru.lab11.queuingsystem.RequestProcessing;
 
 import com.lmax.disruptor.EventFactory;
+import ru.lab11.queuingsystem.MyStore.StoreChanges;
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+import ru.lab11.queuingsystem.Tracing.RequestTracer;
+
 //Событие, которое используется для передачи задачи между очередями.
 //хранит запрос на выполнение
 public class RequestEvent {
     private Runnable task; // Задача, связанная с этим событием
+    private long sequence; // Номер запроса во входном буфере (токен, возвращаемый клиенту)
+    private StoreCommand command; // Описание запроса в виде данных (для репликации и журналов); может быть null
+
+    // Заполняются потоком обработки для потребителей, работающих после него
+    private StoreChanges changes; // Изменения, снятые после обработки события
+    private long completedSequence; // Номер последнего полностью примененного запроса
+
+    // Поставка товара (вместо задачи), которую можно объединить с соседними поставками
+    private SupplyTarget supplyTarget;
+    private String supplyProductName;
+    private int supplyQuantity;
+
+    // Трассировка: трассировщик (null, если запрос не отобран) и отметки времени этапов
+    private RequestTracer tracer;
+    private long submitNanos;
+    private long pickupNanos;
+    private long publishNanos;
+    private long startNanos;
+    private long endNanos;
 
     // Возвращает задачу
     public Runnable getTask() {
@@ -16,9 +39,127 @@ public class RequestEvent {
         this.task = task;
     }
 
-    // Очищает задачу после выполнения
+    // Возвращает номер запроса во входном буфере
+    public long getSequence() {
+        return sequence;
+    }
+
+    // Устанавливает номер запроса во входном буфере
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    // Возвращает описание запроса в виде данных
+    public StoreCommand getCommand() {
+        return command;
+    }
+
+    // Устанавливает описание запроса в виде данных
+    public void setCommand(StoreCommand command) {
+        this.command = command;
+    }
+
+    // Возвращает изменения, снятые после обработки события
+    public StoreChanges getChanges() {
+        return changes;
+    }
+
+    // Возвращает номер последнего запроса, полностью примененного к моменту этого события
+    public long getCompletedSequence() {
+        return completedSequence;
+    }
+
+    // Сохраняет результат обработки для следующих потребителей
+    public void setProcessed(StoreChanges changes, long completedSequence) {
+        this.changes = changes;
+        this.completedSequence = completedSequence;
+    }
+
+    // Устанавливает поставку товара вместо задачи
+    public void setSupply(SupplyTarget target, String productName, int quantity) {
+        this.supplyTarget = target;
+        this.supplyProductName = productName;
+        this.supplyQuantity = quantity;
+    }
+
+    // Проверяет, является ли событие поставкой товара
+    public boolean isSupply() {
+        return supplyTarget != null;
+    }
+
+    // Возвращает получателя поставки
+    public SupplyTarget getSupplyTarget() {
+        return supplyTarget;
+    }
+
+    // Возвращает название поставляемого товара
+    public String getSupplyProductName() {
+        return supplyProductName;
+    }
+
+    // Возвращает количество поставляемого товара
+    public int getSupplyQuantity() {
+        return supplyQuantity;
+    }
+
+    // Включает трассировку запроса (tracer == null — запрос не трассируется)
+    public void setTrace(RequestTracer tracer, long submitNanos) {
+        this.tracer = tracer;
+        this.submitNanos = submitNanos;
+    }
+
+    // Проверяет, трассируется ли запрос
+    public boolean isTraced() {
+        return tracer != null;
+    }
+
+    // Отмечает, что входной обработчик взял событие
+    public void tracePickup() {
+        pickupNanos = System.nanoTime();
+    }
+
+    // Отмечает публикацию события в буфере обработки
+    public void tracePublish() {
+        publishNanos = System.nanoTime();
+    }
+
+    // Отмечает начало выполнения
+    public void traceStart() {
+        startNanos = System.nanoTime();
+    }
+
+    // Отмечает конец выполнения
+    public void traceEnd() {
+        endNanos = System.nanoTime();
+    }
+
+    // Отмечает доставку результата и передает отметки трассировщику
+    public void traceComplete() {
+        tracer.record(sequence, submitNanos, pickupNanos, publishNanos, startNanos, endNanos, System.nanoTime());
+        tracer = null;
+    }
+
+    // Копирует содержимое другого события (при переносе из одного буфера в другой)
+    public void copyFrom(RequestEvent other) {
+        this.task = other.task;
+        this.sequence = other.sequence;
+        this.command = other.command;
+        this.supplyTarget = other.supplyTarget;
+        this.supplyProductName = other.supplyProductName;
+        this.supplyQuantity = other.supplyQuantity;
+        this.tracer = other.tracer;
+        this.submitNanos = other.submitNanos;
+        this.pickupNanos = other.pickupNanos;
+        this.publishNanos = other.publishNanos;
+    }
+
+    // Очищает задачу после выполнения.
+    // Описание запроса и результат обработки не очищаются: их читают следующие потребители
     public void clear() {
         task = null;
+        supplyTarget = null;
+        supplyProductName = null;
+        supplyQuantity = 0;
     }
 
     // Фабрика для создания новых экземпляров событий
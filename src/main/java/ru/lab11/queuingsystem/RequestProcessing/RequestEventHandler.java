@@ -1,15 +1,103 @@
 package ru.lab11.queuingsystem.RequestProcessing;
 
 import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.Sequence;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 //Обработчик событий. Этот класс отвечает за выполнение задачи, связанной с каждым событием, и за очистку события после завершения.
 //класс для получения и запуска запросов, тоже используется в дизрапторе.
+//Поставки товара не выполняются сразу: они накапливаются по товару и применяются одним
+//обновлением перед первой обычной задачей или в конце пакета, поэтому порядок относительно
+//покупок и бронирований сохраняется.
 public class RequestEventHandler implements EventHandler<RequestEvent> {
+    // Счетчик необработанных запросов процессора
+    private final AtomicLong pendingRequests;
+    // Номер последнего запроса входного буфера, результат которого уже применен
+    private final Sequence processedSequence;
+    // Снятие изменений для следующих потребителей (может отсутствовать)
+    private final ChangeCapture changeCapture;
+
+    // Накопленные поставки текущего пакета: товар -> суммарное количество
+    private final Map<String, Integer> pendingSupplies = new LinkedHashMap<>();
+    // Получатель накопленных поставок
+    private SupplyTarget pendingSupplyTarget;
+    // Количество событий-поставок, объединенных в pendingSupplies
+    private long coalescedEvents;
+
+    public RequestEventHandler(AtomicLong pendingRequests, Sequence processedSequence, ChangeCapture changeCapture) {
+        this.pendingRequests = pendingRequests;
+        this.processedSequence = processedSequence;
+        this.changeCapture = changeCapture;
+    }
+
     @Override
     public void onEvent(RequestEvent event, long sequence, boolean endOfBatch) {
-        // Проверяем, есть ли задача в событии
-        if (event.getTask() != null) {
-            event.getTask().run(); // Выполняем задачу
-            event.clear();         // Очищаем событие после выполнения
+        try {
+            if (event.isTraced()) {
+                event.traceStart();
+            }
+            if (event.isSupply()) {
+                // Поставки разных получателей не смешиваем
+                if (event.getSupplyTarget() != pendingSupplyTarget) {
+                    flushSupplies();
+                }
+                // Сумма поставок товара должна помещаться в int: иначе сначала применяем накопленное
+                Integer pending = pendingSupplies.get(event.getSupplyProductName());
+                if (pending != null && (long) pending + event.getSupplyQuantity() > Integer.MAX_VALUE) {
+                    flushSupplies();
+                }
+                pendingSupplyTarget = event.getSupplyTarget();
+                pendingSupplies.merge(event.getSupplyProductName(), event.getSupplyQuantity(), Integer::sum);
+                coalescedEvents++;
+            } else {
+                // Перед любой другой задачей применяем накопленные поставки
+                flushSupplies();
+                try {
+                    // Проверяем, есть ли задача в событии
+                    if (event.getTask() != null) {
+                        event.getTask().run(); // Выполняем задачу
+                    }
+                } finally {
+                    // Уменьшаем счетчик необработанных запросов
+                    pendingRequests.decrementAndGet();
+                }
+            }
+            if (endOfBatch) {
+                flushSupplies();
+            }
+            // Для поставки выполнение — объединение с остальными поставками пакета
+            if (event.isTraced()) {
+                event.traceEnd();
+            }
+            // Все запросы до этого включительно применены, только если нет отложенных поставок
+            if (coalescedEvents == 0) {
+                processedSequence.set(event.getSequence());
+            }
+        } finally {
+            event.clear(); // Очищаем событие после выполнения
+            event.setProcessed(changeCapture != null ? changeCapture.capture() : null, processedSequence.get());
+            if (event.isTraced()) {
+                event.traceComplete();
+            }
+        }
+    }
+
+    // Применяет накопленные поставки по одному обновлению на товар
+    private void flushSupplies() {
+        if (coalescedEvents == 0) {
+            return;
+        }
+        try {
+            for (Map.Entry<String, Integer> entry : pendingSupplies.entrySet()) {
+                pendingSupplyTarget.addSupply(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            pendingSupplies.clear();
+            pendingSupplyTarget = null;
+            pendingRequests.addAndGet(-coalescedEvents);
+            coalescedEvents = 0;
         }
     }
 }
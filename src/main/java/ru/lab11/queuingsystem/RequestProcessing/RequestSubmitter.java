@@ -0,0 +1,28 @@
+package ru.lab11.queuingsystem.RequestProcessing;
+
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+
+//Очередь запросов, через которую StoreAPI отправляет задачи в поток обработки.
+//Реализуется процессором с выделенными потоками (DisruptorProcessor) и каналом арендатора
+//в общем пуле потоков (MultiTenant.TenantChannel).
+public interface RequestSubmitter {
+    // Публикует задачу; возвращает токен, который можно передать в waitFor
+    default long submitRequest(Runnable task) {
+        return submitRequest(task, null);
+    }
+
+    // Публикует задачу вместе с ее описанием в виде данных (может быть null)
+    long submitRequest(Runnable task, StoreCommand command);
+
+    // Публикует поставку товара в указанного получателя
+    long submitSupply(SupplyTarget target, String productName, int quantity, StoreCommand command);
+
+    // Публикует задачу, только если это можно сделать без ожидания; иначе возвращает -1
+    long trySubmitRequest(Runnable task, StoreCommand command);
+
+    // Публикует поставку, только если это можно сделать без ожидания; иначе возвращает -1
+    long trySubmitSupply(SupplyTarget target, String productName, int quantity, StoreCommand command);
+
+    // Ожидает выполнения запроса с указанным токеном и всех запросов, отправленных до него
+    void waitFor(long token);
+}
@@ -0,0 +1,10 @@
+package ru.lab11.queuingsystem.RequestProcessing;
+
+//Получатель поставок товара.
+//Поставки в одну и ту же цель можно складывать между собой, поэтому обработчик
+//объединяет их в пределах одного пакета событий и применяет одним вызовом на товар.
+@FunctionalInterface
+public interface SupplyTarget {
+    // Добавляет указанное количество товара на склад
+    void addSupply(String productName, int quantity);
+}
@@ -0,0 +1,102 @@
+package ru.lab11.queuingsystem.SharedMemory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+//Кольцевой буфер в разделяемой памяти с той же семантикой номеров, что у RingBuffer Disruptor
+//с ProducerType.MULTI: писатели занимают номер атомарным увеличением курсора, ждут, пока
+//читатель освободит ячейку (номер - размер <= прочитанный), пишут данные и публикуют ячейку,
+//записывая в нее ее номер. Читатель один и читает ячейки строго по порядку.
+//Разметка: [long курсор][выравнивание][long прочитанный номер][выравнивание]
+//[long номер публикации × slots][ячейки × slotSize]. Все смещения кратны 8.
+class MappedRing {
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final int CURSOR = 0;
+    private static final int CONSUMED = 64; // На отдельной кэш-линии от курсора.
+    private static final int AVAILABLE = 128;
+
+    private final ByteBuffer buffer;
+    private final int base; // Смещение кольца в файле.
+    private final int slots;
+    private final int mask;
+    private final int slotSize;
+    private final int data; // Смещение первой ячейки.
+
+    MappedRing(ByteBuffer buffer, int base, int slots, int slotSize) {
+        this.buffer = buffer;
+        this.base = base;
+        this.slots = slots;
+        this.mask = slots - 1;
+        this.slotSize = slotSize;
+        this.data = base + AVAILABLE + slots * Long.BYTES;
+    }
+
+    // Размер кольца в байтах
+    static int bytes(int slots, int slotSize) {
+        return AVAILABLE + slots * Long.BYTES + slots * slotSize;
+    }
+
+    // Начальное состояние: ничего не занято, не опубликовано и не прочитано
+    void initialize() {
+        LONGS.setRelease(buffer, base + CURSOR, -1L);
+        LONGS.setRelease(buffer, base + CONSUMED, -1L);
+        for (int i = 0; i < slots; i++) {
+            LONGS.setRelease(buffer, base + AVAILABLE + i * Long.BYTES, -1L);
+        }
+    }
+
+    // Занимает следующий номер; ждет, пока читатель освободит ячейку
+    long claim() {
+        long sequence = (long) LONGS.getAndAdd(buffer, base + CURSOR, 1L) + 1;
+        while (sequence - slots > (long) LONGS.getAcquire(buffer, base + CONSUMED)) {
+            Thread.onSpinWait();
+        }
+        return sequence;
+    }
+
+    // Занимает следующий номер, если ячейка свободна; иначе возвращает -1, не дожидаясь читателя
+    long tryClaim() {
+        while (true) {
+            long current = (long) LONGS.getVolatile(buffer, base + CURSOR);
+            long sequence = current + 1;
+            if (sequence - slots > (long) LONGS.getAcquire(buffer, base + CONSUMED)) {
+                return -1;
+            }
+            if (LONGS.compareAndSet(buffer, base + CURSOR, current, sequence)) {
+                return sequence;
+            }
+        }
+    }
+
+    // Смещение данных ячейки с указанным номером
+    int offset(long sequence) {
+        return data + (int) (sequence & mask) * slotSize;
+    }
+
+    // Размер ячейки
+    int slotSize() {
+        return slotSize;
+    }
+
+    // Публикует ячейку: после этого читатель видит ее данные
+    void publish(long sequence) {
+        LONGS.setRelease(buffer, base + AVAILABLE + (int) (sequence & mask) * Long.BYTES, sequence);
+    }
+
+    // Проверяет, опубликована ли ячейка с указанным номером
+    boolean isAvailable(long sequence) {
+        return (long) LONGS.getAcquire(buffer, base + AVAILABLE + (int) (sequence & mask) * Long.BYTES) == sequence;
+    }
+
+    // Номер последней прочитанной ячейки
+    long consumed() {
+        return (long) LONGS.getAcquire(buffer, base + CONSUMED);
+    }
+
+    // Освобождает ячейки до указанного номера включительно для писателей
+    void release(long sequence) {
+        LONGS.setRelease(buffer, base + CONSUMED, sequence);
+    }
+}
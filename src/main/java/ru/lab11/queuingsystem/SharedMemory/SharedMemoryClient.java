@@ -0,0 +1,145 @@
+package ru.lab11.queuingsystem.SharedMemory;
+
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Клиент SharedMemoryServer из другого процесса на той же машине. Команды пишутся прямо
+ * в разделяемую память без ожидания предыдущих ответов; отдельный поток опрашивает кольцо
+ * ответов клиента и завершает результаты по номеру запроса.
+ */
+public class SharedMemoryClient implements Closeable {
+    private final FileChannel channel; // Файл разделяемой памяти.
+    private final SharedMemoryLayout layout; // Разметка файла.
+    private final MappedRing requests; // Общее кольцо запросов.
+    private final MappedRing responses; // Кольцо ответов этого клиента.
+    private final int clientId; // Номер клиента в файле.
+    private final Map<Long, CompletableFuture<Long>> inFlight = new ConcurrentHashMap<>(); // Запросы без ответа.
+    private final AtomicLong nextRequestId = new AtomicLong(); // Номер следующего запроса.
+    private final Thread reader; // Поток чтения ответов.
+    private volatile boolean running = true;
+
+    /**
+     * Подключается к файлу, созданному SharedMemoryServer.
+     *
+     * @param file путь к файлу.
+     * @throws IOException при ошибке открытия файла.
+     */
+    public SharedMemoryClient(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        layout = SharedMemoryLayout.open(buffer);
+        clientId = layout.registerClient();
+        requests = layout.requestRing();
+        responses = layout.responseRing(clientId);
+        reader = new Thread(this::readResponses, "shm-store-client-" + clientId);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Отправляет команду.
+     *
+     * @param command команда.
+     * @return результат команды (см. StoreCommand.execute).
+     */
+    public CompletableFuture<Long> send(StoreCommand command) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        if (command.maxEncodedSize() > layout.requestSlotSize - SharedMemoryLayout.REQUEST_HEADER) {
+            result.completeExceptionally(new IllegalArgumentException("Команда не помещается в ячейку запроса"));
+            return result;
+        }
+        long requestId = nextRequestId.getAndIncrement();
+        inFlight.put(requestId, result);
+        long sequence = requests.claim();
+        int offset = requests.offset(sequence);
+        ByteBuffer slot = layout.buffer.slice(offset + SharedMemoryLayout.REQUEST_HEADER,
+                layout.requestSlotSize - SharedMemoryLayout.REQUEST_HEADER);
+        // Занятая ячейка должна быть опубликована в любом случае, иначе сервер остановится на ней
+        int length;
+        try {
+            command.writeTo(slot);
+            length = slot.position();
+        } catch (RuntimeException e) {
+            inFlight.remove(requestId);
+            result.completeExceptionally(e);
+            length = 0;
+        }
+        layout.buffer.putInt(offset, length > 0 ? clientId : -1);
+        layout.buffer.putInt(offset + 4, length);
+        layout.buffer.putLong(offset + 8, requestId);
+        requests.publish(sequence);
+        return result;
+    }
+
+    /**
+     * Возвращает номер клиента в файле.
+     *
+     * @return номер клиента.
+     */
+    public int getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Возвращает количество запросов, ожидающих ответа.
+     *
+     * @return количество запросов.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void readResponses() {
+        ByteBuffer buffer = layout.buffer;
+        long next = responses.consumed() + 1;
+        int idle = 0;
+        while (running) {
+            if (!responses.isAvailable(next)) {
+                idle = SharedMemoryServer.backOff(idle);
+                continue;
+            }
+            idle = 0;
+            int offset = responses.offset(next);
+            long requestId = buffer.getLong(offset);
+            long value = buffer.getLong(offset + 8);
+            byte status = buffer.get(offset + 16);
+            responses.release(next);
+            next++;
+            CompletableFuture<Long> result = inFlight.remove(requestId);
+            if (result == null) {
+                continue;
+            }
+            if (status == SharedMemoryLayout.STATUS_OK) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(new IllegalStateException("Сервер отклонил запрос " + requestId));
+            }
+        }
+        IOException closed = new IOException("Клиент разделяемой памяти закрыт");
+        inFlight.values().forEach(result -> result.completeExceptionally(closed));
+        inFlight.clear();
+    }
+}
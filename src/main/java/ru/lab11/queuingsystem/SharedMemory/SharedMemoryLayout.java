@@ -0,0 +1,90 @@
+package ru.lab11.queuingsystem.SharedMemory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+//Разметка файла разделяемой памяти:
+//[заголовок 64 байта][кольцо запросов][кольцо ответов клиента 0]...[кольцо ответов клиента N-1]
+//Заголовок: int признак, int ячеек запросов, int размер ячейки запроса, int клиентов,
+//int ячеек ответов, int выравнивание, long следующий номер клиента.
+//Ячейка запроса: [int номер клиента][int длина команды][long номер запроса][StoreCommand].
+//Ячейка ответа: [long номер запроса][long значение][byte статус].
+final class SharedMemoryLayout {
+    static final int MAGIC = 0x53484d31; // "SHM1"
+    static final int HEADER = 64;
+    static final int REQUEST_HEADER = 16; // Номер клиента, длина и номер запроса.
+    static final int RESPONSE_SLOT = 24;
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final int NEXT_CLIENT = 24;
+
+    final ByteBuffer buffer;
+    final int requestSlots;
+    final int requestSlotSize;
+    final int maxClients;
+    final int responseSlots;
+
+    private SharedMemoryLayout(ByteBuffer buffer, int requestSlots, int requestSlotSize, int maxClients,
+                               int responseSlots) {
+        this.buffer = buffer;
+        this.requestSlots = requestSlots;
+        this.requestSlotSize = requestSlotSize;
+        this.maxClients = maxClients;
+        this.responseSlots = responseSlots;
+    }
+
+    // Размер файла для указанных параметров
+    static long fileSize(int requestSlots, int requestSlotSize, int maxClients, int responseSlots) {
+        return HEADER + MappedRing.bytes(requestSlots, requestSlotSize)
+                + (long) maxClients * MappedRing.bytes(responseSlots, RESPONSE_SLOT);
+    }
+
+    // Записывает заголовок и начальное состояние колец (создатель файла)
+    static SharedMemoryLayout create(ByteBuffer buffer, int requestSlots, int requestSlotSize, int maxClients,
+                                     int responseSlots) {
+        SharedMemoryLayout layout = new SharedMemoryLayout(buffer, requestSlots, requestSlotSize, maxClients,
+                responseSlots);
+        buffer.putInt(4, requestSlots).putInt(8, requestSlotSize).putInt(12, maxClients).putInt(16, responseSlots);
+        LONGS.setRelease(buffer, NEXT_CLIENT, 0L);
+        layout.requestRing().initialize();
+        for (int i = 0; i < maxClients; i++) {
+            layout.responseRing(i).initialize();
+        }
+        // Признак пишется последним: клиенты открывают файл только после него
+        buffer.putInt(0, MAGIC);
+        VarHandle.fullFence();
+        return layout;
+    }
+
+    // Читает заголовок файла, созданного сервером
+    static SharedMemoryLayout open(ByteBuffer buffer) {
+        VarHandle.fullFence();
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Файл разделяемой памяти не инициализирован");
+        }
+        return new SharedMemoryLayout(buffer, buffer.getInt(4), buffer.getInt(8), buffer.getInt(12),
+                buffer.getInt(16));
+    }
+
+    // Выдает номер клиента; номера не переиспользуются
+    int registerClient() {
+        long id = (long) LONGS.getAndAdd(buffer, NEXT_CLIENT, 1L);
+        if (id >= maxClients) {
+            throw new IllegalStateException("Превышено количество клиентов " + maxClients);
+        }
+        return (int) id;
+    }
+
+    MappedRing requestRing() {
+        return new MappedRing(buffer, HEADER, requestSlots, requestSlotSize);
+    }
+
+    MappedRing responseRing(int clientId) {
+        int base = HEADER + MappedRing.bytes(requestSlots, requestSlotSize)
+                + clientId * MappedRing.bytes(responseSlots, RESPONSE_SLOT);
+        return new MappedRing(buffer, base, responseSlots, RESPONSE_SLOT);
+    }
+}
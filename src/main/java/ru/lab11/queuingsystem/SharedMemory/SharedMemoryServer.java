@@ -0,0 +1,260 @@
+package ru.lab11.queuingsystem.SharedMemory;
+
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+import ru.lab11.queuingsystem.StoreAPI;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Сервер магазина для клиентов на той же машине через файл в разделяемой памяти.
+ * Клиенты пишут команды в общее кольцо запросов (несколько писателей, как входное кольцо
+ * DisruptorProcessor), сервер читает его одним потоком и передает команды в StoreAPI.executeLimited;
+ * ответы пишутся в кольцо ответов клиента. На горячем пути нет системных вызовов: стороны
+ * опрашивают номера в памяти и засыпают только после долгого простоя.
+ *
+ * <p>Ответы пишет отдельный поток: поток обработки и поток чтения запросов только ставят ответ
+ * в очередь и никогда не ждут клиента. Если кольцо ответов клиента заполнено, его ответы
+ * копятся в очереди этого клиента (не больше MAX_PENDING_PER_CLIENT), а остальные клиенты
+ * обслуживаются дальше; ответы сверх этого предела отбрасываются и считаются
+ * (getDroppedResponses), так что клиент, переставший читать ответы, не задерживает никого.
+ * Клиент, умерший между занятием и публикацией ячейки запроса, останавливает чтение кольца запросов.
+ */
+public class SharedMemoryServer implements Closeable {
+    static final int SPINS_BEFORE_PARK = 10_000; // Пустых опросов до засыпания.
+    static final long PARK_NANOS = 50_000; // Время сна при простое.
+    private static final int MAX_QUEUED_RESPONSES = 1 << 16; // Ответов в общей очереди потока ответов.
+    private static final int MAX_PENDING_PER_CLIENT = 1 << 14; // Ответов, ждущих места в кольце одного клиента.
+
+    private final StoreAPI api; // API магазина.
+    private final FileChannel channel; // Файл разделяемой памяти.
+    private final SharedMemoryLayout layout; // Разметка файла.
+    private final MappedRing requests; // Кольцо запросов.
+    private final MappedRing[] responses; // Кольца ответов по номеру клиента.
+    private final Thread poller; // Поток чтения запросов.
+    private final Thread responder; // Поток записи ответов.
+    private final Queue<Response> queuedResponses = new ConcurrentLinkedQueue<>(); // Ответы для потока ответов.
+    private final AtomicInteger queuedCount = new AtomicInteger(); // Размер queuedResponses.
+    private final ArrayDeque<Response>[] pendingResponses; // Ответы, ждущие места в кольце клиента (поток ответов).
+    private final LongAdder droppedResponses = new LongAdder(); // Отброшенные ответы.
+    private volatile boolean running = true;
+
+    /**
+     * Создает файл разделяемой памяти с параметрами по умолчанию:
+     * 4096 ячеек запросов по 256 байт, до 16 клиентов по 4096 ячеек ответов.
+     *
+     * @param api  API магазина.
+     * @param file путь к файлу (перезаписывается).
+     * @throws IOException при ошибке создания файла.
+     */
+    public SharedMemoryServer(StoreAPI api, Path file) throws IOException {
+        this(api, file, 4096, 256, 16, 4096);
+    }
+
+    /**
+     * Создает файл разделяемой памяти.
+     *
+     * @param api             API магазина.
+     * @param file            путь к файлу (перезаписывается).
+     * @param requestSlots    размер кольца запросов (степень двойки).
+     * @param requestSlotSize размер ячейки запроса в байтах (кратен 8).
+     * @param maxClients      наибольшее количество клиентов.
+     * @param responseSlots   размер кольца ответов клиента (степень двойки).
+     * @throws IOException при ошибке создания файла.
+     */
+    public SharedMemoryServer(StoreAPI api, Path file, int requestSlots, int requestSlotSize, int maxClients,
+                              int responseSlots) throws IOException {
+        if (Integer.bitCount(requestSlots) != 1 || Integer.bitCount(responseSlots) != 1) {
+            throw new IllegalArgumentException("Размеры колец должны быть степенями двойки");
+        }
+        if (requestSlotSize % Long.BYTES != 0 || requestSlotSize <= SharedMemoryLayout.REQUEST_HEADER) {
+            throw new IllegalArgumentException("Размер ячейки запроса должен быть кратен 8 и больше "
+                    + SharedMemoryLayout.REQUEST_HEADER);
+        }
+        long size = SharedMemoryLayout.fileSize(requestSlots, requestSlotSize, maxClients, responseSlots);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Слишком большой файл разделяемой памяти: " + size);
+        }
+        this.api = api;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.layout = SharedMemoryLayout.create(buffer, requestSlots, requestSlotSize, maxClients, responseSlots);
+        this.requests = layout.requestRing();
+        this.responses = new MappedRing[maxClients];
+        for (int i = 0; i < maxClients; i++) {
+            responses[i] = layout.responseRing(i);
+        }
+        @SuppressWarnings("unchecked")
+        ArrayDeque<Response>[] pending = new ArrayDeque[maxClients];
+        this.pendingResponses = pending;
+        this.poller = new Thread(this::poll, "shm-store-server");
+        poller.setDaemon(true);
+        this.responder = new Thread(this::writeResponses, "shm-store-responder");
+        responder.setDaemon(true);
+    }
+
+    /**
+     * Запускает потоки чтения запросов и записи ответов.
+     */
+    public void start() {
+        responder.start();
+        poller.start();
+    }
+
+    /**
+     * Возвращает количество отброшенных ответов: клиенту, который не читает ответы,
+     * или при переполнении общей очереди ответов.
+     *
+     * @return количество ответов.
+     */
+    public long getDroppedResponses() {
+        return droppedResponses.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            poller.join();
+            responder.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void poll() {
+        ByteBuffer buffer = layout.buffer;
+        long next = requests.consumed() + 1;
+        int idle = 0;
+        while (running) {
+            if (!requests.isAvailable(next)) {
+                idle = backOff(idle);
+                continue;
+            }
+            idle = 0;
+            int offset = requests.offset(next);
+            int clientId = buffer.getInt(offset);
+            int length = buffer.getInt(offset + 4);
+            long requestId = buffer.getLong(offset + 8);
+            StoreCommand command = null;
+            try {
+                command = StoreCommand.readFrom(buffer.slice(offset + SharedMemoryLayout.REQUEST_HEADER, length));
+            } catch (RuntimeException e) {
+                // Поврежденная команда: ниже отвечаем ошибкой
+            }
+            // Команда скопирована — ячейку можно отдавать писателям
+            requests.release(next);
+            next++;
+            if (clientId < 0 || clientId >= responses.length) {
+                continue;
+            }
+            if (command == null) {
+                respond(clientId, requestId, SharedMemoryLayout.STATUS_ERROR, 0);
+                continue;
+            }
+            CompletableFuture<Long> result;
+            try {
+                result = api.executeLimited(command);
+            } catch (RuntimeException e) {
+                // Команда отклонена до публикации (например, слишком длинная строка)
+                respond(clientId, requestId, SharedMemoryLayout.STATUS_ERROR, 0);
+                continue;
+            }
+            result.whenComplete((value, error) -> {
+                if (error != null) {
+                    respond(clientId, requestId, SharedMemoryLayout.STATUS_ERROR, 0);
+                } else {
+                    respond(clientId, requestId, SharedMemoryLayout.STATUS_OK, value);
+                }
+            });
+        }
+    }
+
+    // Ставит ответ в очередь потока ответов; вызывается потоком чтения и потоком обработки и не ждет
+    private void respond(int clientId, long requestId, byte status, long value) {
+        if (queuedCount.incrementAndGet() > MAX_QUEUED_RESPONSES) {
+            queuedCount.decrementAndGet();
+            droppedResponses.increment();
+            return;
+        }
+        queuedResponses.add(new Response(clientId, requestId, status, value));
+    }
+
+    // Поток ответов: переносит ответы из очереди в кольца клиентов, не дожидаясь ни одного клиента
+    private void writeResponses() {
+        int idle = 0;
+        while (running || !queuedResponses.isEmpty()) {
+            boolean progress = false;
+            Response response;
+            while ((response = queuedResponses.poll()) != null) {
+                queuedCount.decrementAndGet();
+                progress = true;
+                ArrayDeque<Response> pending = pendingResponses[response.clientId()];
+                // Ответы клиента идут по порядку: пока есть ждущие, новый встает за ними
+                if ((pending == null || pending.isEmpty()) && write(response)) {
+                    continue;
+                }
+                if (pending == null) {
+                    pending = new ArrayDeque<>();
+                    pendingResponses[response.clientId()] = pending;
+                }
+                if (pending.size() >= MAX_PENDING_PER_CLIENT) {
+                    droppedResponses.increment();
+                } else {
+                    pending.add(response);
+                }
+            }
+            for (ArrayDeque<Response> pending : pendingResponses) {
+                while (pending != null && !pending.isEmpty() && write(pending.peek())) {
+                    pending.poll();
+                    progress = true;
+                }
+            }
+            idle = progress ? 0 : backOff(idle);
+        }
+    }
+
+    // Пишет ответ в кольцо клиента; false, если кольцо заполнено
+    private boolean write(Response response) {
+        MappedRing ring = responses[response.clientId()];
+        long sequence = ring.tryClaim();
+        if (sequence < 0) {
+            return false;
+        }
+        int offset = ring.offset(sequence);
+        ByteBuffer buffer = layout.buffer;
+        buffer.putLong(offset, response.requestId());
+        buffer.putLong(offset + 8, response.value());
+        buffer.put(offset + 16, response.status());
+        ring.publish(sequence);
+        return true;
+    }
+
+    // Ответ, ожидающий записи в кольцо клиента
+    private record Response(int clientId, long requestId, byte status, long value) {
+    }
+
+    // Ждет новых данных: сначала крутится, после долгого простоя засыпает
+    static int backOff(int idle) {
+        if (idle < SPINS_BEFORE_PARK) {
+            Thread.onSpinWait();
+            return idle + 1;
+        }
+        LockSupport.parkNanos(PARK_NANOS);
+        return idle;
+    }
+}
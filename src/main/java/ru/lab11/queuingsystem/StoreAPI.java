@@ -1,21 +1,44 @@
 package ru.lab11.queuingsystem;
 
+import ru.lab11.queuingsystem.Capture.TrafficRecorder;
+import ru.lab11.queuingsystem.Durability.GroupCommitJournal;
 import ru.lab11.queuingsystem.MyStore.Customer;
-import ru.lab11.queuingsystem.MyStore.Message;
 import ru.lab11.queuingsystem.MyStore.Product;
 import ru.lab11.queuingsystem.MyStore.Store;
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+import ru.lab11.queuingsystem.RateLimiting.CustomerRateLimiter;
 import ru.lab11.queuingsystem.RequestProcessing.DisruptorProcessor;
+import ru.lab11.queuingsystem.RequestProcessing.RequestDeduplicator;
+import ru.lab11.queuingsystem.RequestProcessing.RequestSubmitter;
+import ru.lab11.queuingsystem.RequestProcessing.SupplyTarget;
+import ru.lab11.queuingsystem.Warmup.ProcessorWarmup;
+import ru.lab11.queuingsystem.Warmup.WarmupResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
 
 /**
  * StoreAPI предоставляет потокобезопасный интерфейс для взаимодействия с магазином.
- * Использует DisruptorProcessor для асинхронной обработки запросов.
+ * Использует DisruptorProcessor (или канал арендатора TenantProcessor) для асинхронной обработки запросов.
+ * Каждый изменяющий запрос публикуется вместе со своим описанием StoreCommand,
+ * чтобы потребители после потока обработки (репликация, журналы) могли его воспроизвести.
  */
 public class StoreAPI implements IStoreAPI {
-    private final DisruptorProcessor disruptorProcessor; // Обрабатывает задачи асинхронно.
+    private static final int DEFAULT_DEDUP_CAPACITY = 65536; // Сколько последних идентификаторов запросов помнить.
+
+    private final RequestSubmitter disruptorProcessor; // Обрабатывает задачи асинхронно.
     private final Store store; // Основная логика магазина для управления продуктами, клиентами и транзакциями.
+    private final SupplyTarget supplyTarget; // Получатель поставок; один экземпляр, чтобы поставки объединялись.
+    private final RequestDeduplicator deduplicator; // Результаты запросов с идентификатором; доступен только потоку обработки.
+    private final GroupCommitJournal journal; // Журнал, после записи в который завершаются результаты; может быть null.
+    private volatile TrafficRecorder recorder; // Запись входящих вызовов; может быть null.
+    private volatile CustomerRateLimiter rateLimiter; // Лимит покупок и бронирований клиента; может быть null.
 
     /**
      * Конструктор StoreAPI.
@@ -23,9 +46,133 @@ public class StoreAPI implements IStoreAPI {
      * @param disruptorProcessor процессор запросов для выполнения задач асинхронно.
      * @param store              объект магазина для управления данными.
      */
-    public StoreAPI(DisruptorProcessor disruptorProcessor, Store store) {
+    public StoreAPI(RequestSubmitter disruptorProcessor, Store store) {
+        this(disruptorProcessor, store, DEFAULT_DEDUP_CAPACITY);
+    }
+
+    /**
+     * Конструктор StoreAPI с заданным размером кэша идентификаторов запросов.
+     *
+     * @param disruptorProcessor процессор запросов для выполнения задач асинхронно.
+     * @param store              объект магазина для управления данными.
+     * @param dedupCapacity      сколько последних идентификаторов запросов помнить для защиты от повторов.
+     */
+    public StoreAPI(RequestSubmitter disruptorProcessor, Store store, int dedupCapacity) {
+        this(disruptorProcessor, store, dedupCapacity, null);
+    }
+
+    /**
+     * Конструктор StoreAPI в режиме долговечности: результаты покупок, бронирований и оплат
+     * возвращаются только после того, как пакет с запросом записан в журнал на диск.
+     * Журнал должен быть подключен к процессору как потребитель после обработки.
+     *
+     * @param disruptorProcessor процессор запросов для выполнения задач асинхронно.
+     * @param store              объект магазина для управления данными.
+     * @param journal            журнал с групповой фиксацией.
+     * @throws IllegalArgumentException если процессор не DisruptorProcessor.
+     */
+    public StoreAPI(RequestSubmitter disruptorProcessor, Store store, GroupCommitJournal journal) {
+        this(disruptorProcessor, store, DEFAULT_DEDUP_CAPACITY, journal);
+    }
+
+    /**
+     * Конструктор StoreAPI с размером кэша идентификаторов запросов и журналом.
+     *
+     * @param disruptorProcessor процессор запросов для выполнения задач асинхронно.
+     * @param store              объект магазина для управления данными.
+     * @param dedupCapacity      сколько последних идентификаторов запросов помнить для защиты от повторов.
+     * @param journal            журнал с групповой фиксацией или null.
+     * @throws IllegalArgumentException если задан журнал, а процессор не DisruptorProcessor.
+     */
+    public StoreAPI(RequestSubmitter disruptorProcessor, Store store, int dedupCapacity, GroupCommitJournal journal) {
+        // Журнал получает запросы только как потребитель DisruptorProcessor: канал арендатора не передает
+        // описания запросов потребителям, и ожидание записи на диск никогда бы не завершилось
+        if (journal != null && !(disruptorProcessor instanceof DisruptorProcessor)) {
+            throw new IllegalArgumentException("Журнал поддерживается только с DisruptorProcessor");
+        }
         this.disruptorProcessor = disruptorProcessor;
         this.store = store;
+        this.supplyTarget = store::addSupply;
+        this.deduplicator = new RequestDeduplicator(dedupCapacity);
+        this.journal = journal;
+    }
+
+    /**
+     * Включает или отключает запись входящих вызовов (см. TrafficRecorder, TrafficReplay).
+     * Записываются вызовы, которые проходят через процессор: создание клиентов и товаров,
+     * поставки, покупки, бронирования, оплаты и execute.
+     *
+     * @param recorder запись вызовов или null, чтобы отключить.
+     */
+    public void setRecorder(TrafficRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Включает или отключает ограничение частоты покупок и бронирований клиента.
+     * Лимит проверяется только для запросов, пришедших извне: makePurchase, reserveProduct,
+     * их асинхронных вариантов и executeLimited (им пользуются серверы). execute не ограничивается:
+     * через него применяются уже принятые команды (репликация, журнал, воспроизведение, переводы).
+     * Лимит проверяется до публикации в кольцо, поэтому отклоненный запрос не передается потребителям
+     * (репликации, журналу) и не записывается TrafficRecorder (результат false, для executeLimited — 0).
+     * Запрос с идентификатором сверх лимита публикуется только как поиск прежнего результата без
+     * описания команды: повтор выполненного запроса получает первый результат, а невыполненный
+     * отклоняется, не запоминается и может быть повторен. Если пропущенный по лимиту запрос
+     * оказался повтором выполненного, место возвращается клиенту (CustomerRateLimiter.release).
+     *
+     * @param rateLimiter ограничитель или null, чтобы отключить.
+     */
+    public void setRateLimiter(CustomerRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    // Проверяет лимит клиента, если ограничение включено
+    private boolean admitted(String login) {
+        CustomerRateLimiter current = rateLimiter;
+        return current == null || current.tryAcquire(login);
+    }
+
+    // Возвращает место в лимите, занятое повтором уже выполненного запроса
+    private void releaseAdmission(String login) {
+        CustomerRateLimiter current = rateLimiter;
+        if (current != null) {
+            current.release(login);
+        }
+    }
+
+    // Проверяет, что команду можно записать (см. StoreCommand.requireEncodable), и записывает вызов,
+    // если запись включена. Вызывается до публикации: слишком длинная строка отклоняется здесь,
+    // а не в потоке журнала или репликации
+    private StoreCommand capture(StoreCommand command) {
+        command.requireEncodable();
+        TrafficRecorder current = recorder;
+        if (current != null) {
+            current.record(command);
+        }
+        return command;
+    }
+
+    /**
+     * Прогревает процессор с параметрами по умолчанию (см. ProcessorWarmup) и затрагивает
+     * каталог и клиентов магазина. Вызывается до приема настоящих запросов.
+     *
+     * @return итог прогрева.
+     */
+    public WarmupResult warmUp() {
+        return warmUp(new ProcessorWarmup(disruptorProcessor));
+    }
+
+    /**
+     * Выполняет указанный прогрев процессора и затрагивает каталог и клиентов магазина.
+     * Готовность после прогрева проверяется через warmup.isReady().
+     *
+     * @param warmup прогрев процессора этого API.
+     * @return итог прогрева.
+     */
+    public WarmupResult warmUp(ProcessorWarmup warmup) {
+        WarmupResult result = warmup.run();
+        disruptorProcessor.waitFor(disruptorProcessor.submitRequest(store::preTouch));
+        return result;
     }
 
     /**
@@ -33,9 +180,11 @@ public class StoreAPI implements IStoreAPI {
      *
      * @param login   логин клиента.
      * @param balance начальный баланс клиента.
+     * @return токен запроса; чтение с этим токеном увидит созданного клиента.
      */
-    public void createCustomer(String login, double balance) {
-        disruptorProcessor.submitRequest(() -> store.addCustomer(new Customer(login, balance)));
+    public long createCustomer(String login, double balance) {
+        return disruptorProcessor.submitRequest(() -> store.createCustomer(login, balance),
+                capture(StoreCommand.createCustomer(login, balance)));
     }
 
     /**
@@ -44,13 +193,17 @@ public class StoreAPI implements IStoreAPI {
      * @param name     название продукта.
      * @param quantity количество продукта.
      * @param price    цена продукта.
+     * @return токен запроса; чтение с этим токеном увидит добавленный продукт.
      */
-    public void addProductToStore(String name, int quantity, double price) {
-        disruptorProcessor.submitRequest(() -> store.addProduct(name, quantity, price));
+    public long addProductToStore(String name, int quantity, double price) {
+        return disruptorProcessor.submitRequest(() -> store.addProduct(name, quantity, price),
+                capture(StoreCommand.addProduct(name, quantity, price)));
     }
 
     /**
      * Выполняет покупку для клиента, пытаясь приобрести указанное количество продукта.
+     * Клиент, как и в execute, ищется в магазине по логину в потоке обработки: так покупка
+     * выполняется одинаково здесь и при воспроизведении команды на ведомом узле.
      *
      * @param customer    клиент, совершающий покупку.
      * @param productName название продукта.
@@ -58,12 +211,30 @@ public class StoreAPI implements IStoreAPI {
      * @return true, если покупка успешна, иначе false.
      */
     public boolean makePurchase(Customer customer, String productName, int quantity) {
+        if (!admitted(customer.getLogin())) {
+            return false;
+        }
         CompletableFuture<Boolean> result = new CompletableFuture<>();
-        disruptorProcessor.submitRequest(() -> {
-            boolean success = store.handlePurchase(customer, productName, quantity);
-            result.complete(success);
-        });
-        return result.join();
+        String login = customer.getLogin();
+        long token = disruptorProcessor.submitRequest(() -> result.complete(purchase(login, productName, quantity)),
+                capture(StoreCommand.purchase(login, productName, quantity)));
+        return awaitResult(result, token);
+    }
+
+    /**
+     * Выполняет покупку с идентификатором запроса. Повторный вызов с тем же идентификатором
+     * не выполняет покупку еще раз, а возвращает результат первого вызова.
+     *
+     * @param requestId   идентификатор запроса, назначенный клиентом.
+     * @param customer    клиент, совершающий покупку.
+     * @param productName название продукта.
+     * @param quantity    количество продукта для покупки.
+     * @return true, если покупка успешна, иначе false.
+     */
+    public boolean makePurchase(long requestId, Customer customer, String productName, int quantity) {
+        String login = customer.getLogin();
+        return submitIdempotent(requestId, () -> purchase(login, productName, quantity),
+                StoreCommand.purchase(login, productName, quantity), true);
     }
 
     /**
@@ -76,6 +247,18 @@ public class StoreAPI implements IStoreAPI {
         return customer.getSpentAmount();
     }
 
+    /**
+     * Возвращает сумму, которую клиент потратил в магазине, после выполнения запроса с токеном.
+     *
+     * @param customer клиент, чьи затраты нужно узнать.
+     * @param token    токен, полученный от записывающего метода.
+     * @return общая сумма, потраченная клиентом.
+     */
+    public double getCustomerSpentAmount(Customer customer, long token) {
+        disruptorProcessor.waitFor(token);
+        return getCustomerSpentAmount(customer);
+    }
+
     /**
      * Возвращает текущее количество доступного продукта в магазине.
      *
@@ -87,8 +270,21 @@ public class StoreAPI implements IStoreAPI {
         return product != null ? product.getQuantity() : 0;
     }
 
+    /**
+     * Возвращает количество доступного продукта после выполнения запроса с токеном.
+     *
+     * @param productName название продукта.
+     * @param token       токен, полученный от записывающего метода.
+     * @return количество продукта на складе.
+     */
+    public int getStoreProductAvailability(String productName, long token) {
+        disruptorProcessor.waitFor(token);
+        return getStoreProductAvailability(productName);
+    }
+
     /**
      * Пытается зарезервировать указанное количество продукта для клиента.
+     * Клиент ищется в магазине по логину в потоке обработки.
      *
      * @param customer    клиент, для которого резервируется продукт.
      * @param productName название продукта.
@@ -96,44 +292,402 @@ public class StoreAPI implements IStoreAPI {
      * @return true, если резервирование успешно, иначе false.
      */
     public boolean reserveProduct(Customer customer, String productName, int quantity) {
+        if (!admitted(customer.getLogin())) {
+            return false;
+        }
         CompletableFuture<Boolean> result = new CompletableFuture<>();
-        disruptorProcessor.submitRequest(() -> {
-            Product product = store.getProduct(productName);
-            if (product == null) {
-                // Если продукт отсутствует, уведомляем клиента и отменяем резервирование.
-                customer.addMessage(new Message("Продукт " + productName + " отсутствует!", new java.util.Date()));
-                result.complete(false);
-            } else {
-                boolean success = store.reserveProduct(customer, product, quantity);
-                result.complete(success);
-            }
-        });
-        return result.join();
+        String login = customer.getLogin();
+        long token = disruptorProcessor.submitRequest(() -> result.complete(reserve(login, productName, quantity)),
+                capture(StoreCommand.reserve(login, productName, quantity)));
+        return awaitResult(result, token);
+    }
+
+    /**
+     * Резервирует продукт с идентификатором запроса. Повторный вызов с тем же идентификатором
+     * не резервирует товар еще раз, а возвращает результат первого вызова.
+     *
+     * @param requestId   идентификатор запроса, назначенный клиентом.
+     * @param customer    клиент, для которого резервируется продукт.
+     * @param productName название продукта.
+     * @param quantity    количество для резервирования.
+     * @return true, если резервирование успешно, иначе false.
+     */
+    public boolean reserveProduct(long requestId, Customer customer, String productName, int quantity) {
+        String login = customer.getLogin();
+        return submitIdempotent(requestId, () -> reserve(login, productName, quantity),
+                StoreCommand.reserve(login, productName, quantity), true);
+    }
+
+    // Покупка в потоке обработки; неизвестный клиент дает false
+    private boolean purchase(String login, String productName, int quantity) {
+        Customer customer = store.getCustomer(login);
+        return customer != null && store.handlePurchase(customer, productName, quantity);
+    }
+
+    // Резервирование в потоке обработки; неизвестный клиент дает false
+    private boolean reserve(String login, String productName, int quantity) {
+        Customer customer = store.getCustomer(login);
+        // Если продукт отсутствует, магазин уведомляет клиента и отменяет резервирование.
+        return customer != null && store.reserveProduct(customer, productName, quantity);
+    }
+
+    // Оплата брони в потоке обработки; неизвестный клиент дает false
+    private boolean buyReserved(String login) {
+        Customer customer = store.getCustomer(login);
+        return customer != null && store.purchaseReservedItems(customer);
     }
 
     /**
      * Позволяет клиенту приобрести товары, которые он ранее зарезервировал.
+     * Клиент ищется в магазине по логину в потоке обработки.
      *
      * @param customer клиент, совершающий покупку.
      * @return true, если покупка успешна, иначе false.
      */
     public boolean purchaseReservedProducts(Customer customer) {
         CompletableFuture<Boolean> result = new CompletableFuture<>();
-        disruptorProcessor.submitRequest(() -> {
-            boolean success = store.purchaseReservedItems(customer);
+        String login = customer.getLogin();
+        long token = disruptorProcessor.submitRequest(() -> result.complete(buyReserved(login)),
+                capture(StoreCommand.buyReserved(login)));
+        return awaitResult(result, token);
+    }
+
+    /**
+     * Оплачивает забронированные товары с идентификатором запроса. Повторный вызов с тем же
+     * идентификатором не списывает деньги еще раз, а возвращает результат первого вызова.
+     *
+     * @param requestId идентификатор запроса, назначенный клиентом.
+     * @param customer  клиент, совершающий покупку.
+     * @return true, если покупка успешна, иначе false.
+     */
+    public boolean purchaseReservedProducts(long requestId, Customer customer) {
+        String login = customer.getLogin();
+        return submitIdempotent(requestId, () -> buyReserved(login), StoreCommand.buyReserved(login), false);
+    }
+
+    // Выполняет операцию в потоке обработки, если запрос с таким идентификатором еще не выполнялся.
+    // Лимит клиента (limited) проверяется до публикации; повтор выполненного запроса возвращает место
+    private boolean submitIdempotent(long requestId, BooleanSupplier operation, StoreCommand command, boolean limited) {
+        command.requireEncodable();
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        if (limited && !admitted(command.login())) {
+            // Сверх лимита: только поиск прежнего результата, команда не публикуется и не записывается
+            disruptorProcessor.submitRequest(() ->
+                    result.complete(deduplicator.get(requestId) == RequestDeduplicator.SUCCEEDED));
+            return result.join();
+        }
+        long token = disruptorProcessor.submitRequest(() -> {
+            byte previous = deduplicator.get(requestId);
+            if (previous != RequestDeduplicator.UNKNOWN) {
+                if (limited) {
+                    releaseAdmission(command.login());
+                }
+                result.complete(previous == RequestDeduplicator.SUCCEEDED);
+                return;
+            }
+            boolean success = operation.getAsBoolean();
+            deduplicator.put(requestId, success);
             result.complete(success);
-        });
-        return result.join();
+        }, capture(command.withRequestId(requestId)));
+        return awaitResult(result, token);
+    }
+
+    // Ожидает результат запроса, а в режиме долговечности — и записи его пакета на диск
+    private boolean awaitResult(CompletableFuture<Boolean> result, long token) {
+        boolean success = result.join();
+        awaitDurable(token);
+        return success;
+    }
+
+    // Результат, который в режиме долговечности завершается только после записи пакета на диск
+    private <T> CompletableFuture<T> durable(CompletableFuture<T> result, long token) {
+        return journal == null ? result : result.thenCombine(journal.whenDurable(token), (value, ignored) -> value);
+    }
+
+    /**
+     * Блокирует, пока запрос с токеном не записан в журнал на диск.
+     * Без журнала возвращается сразу.
+     *
+     * @param token токен, полученный от записывающего метода.
+     */
+    public void awaitDurable(long token) {
+        if (journal != null) {
+            journal.awaitDurable(token);
+        }
     }
 
     /**
      * Добавляет поставку указанного продукта в магазин.
+     * Поставки, попавшие в один пакет обработки, объединяются по товару.
      *
      * @param productName название продукта.
      * @param quantity    количество продукта для поставки.
+     * @return токен запроса; чтение с этим токеном увидит поставку.
+     */
+    public long addSupply(String productName, int quantity) {
+        return disruptorProcessor.submitSupply(supplyTarget, productName, quantity,
+                capture(StoreCommand.supply(productName, quantity)));
+    }
+
+    /**
+     * Выполняет запрос, заданный данными (из сети, журнала или репликации).
+     * Клиент ищется по логину в потоке обработки; неизвестный клиент дает результат 0.
+     * Лимит клиента (setRateLimiter) не проверяется: для запросов извне используется executeLimited.
+     * Результат: 1/0 для покупки, бронирования, оплаты, списания и зачисления; остаток для AVAILABILITY
+     * и REMOVE_PRODUCT; биты double для PRICE, BALANCE и RESERVED_TOTAL;
+     * токен запроса для создания клиента, добавления товара и поставки.
+     * Результат завершается потоком обработки (в режиме долговечности — потоком журнала после записи
+     * пакета на диск); обработчики результата должны быть легкими.
+     *
+     * @param command запрос.
+     * @return результат запроса.
+     */
+    public CompletableFuture<Long> execute(StoreCommand command) {
+        return submit(command, true, false);
+    }
+
+    /**
+     * Выполняет запрос, как execute, но не ждет места во входном буфере процессора.
+     *
+     * @param command запрос.
+     * @return результат запроса или null, если буфер заполнен и запрос не опубликован.
+     */
+    public CompletableFuture<Long> tryExecute(StoreCommand command) {
+        return submit(command, false, false);
+    }
+
+    /**
+     * Выполняет запрос, пришедший извне (от клиента сервера), как execute, но покупка и бронирование
+     * сверх лимита клиента (см. setRateLimiter) дают 0.
+     *
+     * @param command запрос.
+     * @return результат запроса.
+     */
+    public CompletableFuture<Long> executeLimited(StoreCommand command) {
+        return submit(command, true, true);
+    }
+
+    /**
+     * Выполняет запрос извне, как executeLimited, но не ждет места во входном буфере процессора.
+     * Используется потоками ввода-вывода, которые не должны блокироваться (см. StoreServer).
+     *
+     * @param command запрос.
+     * @return результат запроса или null, если буфер заполнен и запрос не опубликован.
+     */
+    public CompletableFuture<Long> tryExecuteLimited(StoreCommand command) {
+        return submit(command, false, true);
+    }
+
+    // Публикует запрос; если wait == false и места нет, возвращает null.
+    // limited — проверять лимит клиента для покупки и бронирования
+    private CompletableFuture<Long> submit(StoreCommand command, boolean wait, boolean limited) {
+        command.requireEncodable();
+        long token;
+        CompletableFuture<Long> result;
+        switch (command.op()) {
+            case StoreCommand.CREATE_CUSTOMER:
+                token = publish(() -> store.createCustomer(command.login(), command.amount()), command, wait);
+                result = CompletableFuture.completedFuture(token);
+                break;
+            case StoreCommand.ADD_PRODUCT:
+                token = publish(() -> store.addProduct(command.productName(), command.quantity(), command.amount()),
+                        command, wait);
+                result = CompletableFuture.completedFuture(token);
+                break;
+            case StoreCommand.SUPPLY:
+                token = wait
+                        ? disruptorProcessor.submitSupply(supplyTarget, command.productName(), command.quantity(), command)
+                        : disruptorProcessor.trySubmitSupply(supplyTarget, command.productName(), command.quantity(), command);
+                result = CompletableFuture.completedFuture(token);
+                break;
+            case StoreCommand.PURCHASE:
+            case StoreCommand.RESERVE:
+                // Лимит решается до публикации: отклоненный запрос не попадает к потребителям и в запись
+                if (limited && !admitted(command.login())) {
+                    return command.hasRequestId() ? lookup(command.requestId(), wait)
+                            : CompletableFuture.completedFuture(0L);
+                }
+                // fall through
+            default: {
+                CompletableFuture<Long> pending = new CompletableFuture<>();
+                token = publish(() -> {
+                    // Исключение в потоке обработки завершает результат ошибкой, а не оставляет его навсегда
+                    try {
+                        pending.complete(apply(command, limited));
+                    } catch (RuntimeException e) {
+                        pending.completeExceptionally(e);
+                    }
+                }, command.isWrite() ? command : null, wait);
+                result = pending;
+                break;
+            }
+        }
+        if (token < 0) {
+            return null;
+        }
+        capture(command);
+        return command.isWrite() ? durable(result, token) : result;
+    }
+
+    // Публикует поиск результата запроса с идентификатором без описания команды: 1, если запрос
+    // выполнялся успешно, иначе 0. Null, если wait == false и места в буфере нет
+    private CompletableFuture<Long> lookup(long requestId, boolean wait) {
+        CompletableFuture<Long> pending = new CompletableFuture<>();
+        long token = publish(() -> pending.complete(
+                deduplicator.get(requestId) == RequestDeduplicator.SUCCEEDED ? 1L : 0L), null, wait);
+        return token < 0 ? null : pending;
+    }
+
+    // Публикует задачу с ожиданием места в буфере или без него (тогда -1, если места нет)
+    private long publish(Runnable task, StoreCommand command, boolean wait) {
+        return wait ? disruptorProcessor.submitRequest(task, command) : disruptorProcessor.trySubmitRequest(task, command);
+    }
+
+    // Выполняет покупку, бронирование, оплату, перевод или чтение в потоке обработки
+    private long apply(StoreCommand command, boolean limited) {
+        switch (command.op()) {
+            case StoreCommand.AVAILABILITY:
+                return store.getAvailableQuantity(command.productName());
+            case StoreCommand.PRICE: {
+                Product product = store.getProduct(command.productName());
+                return Double.doubleToLongBits(product != null ? product.getPrice() : Double.NaN);
+            }
+            case StoreCommand.BALANCE: {
+                Customer customer = store.getCustomer(command.login());
+                return Double.doubleToLongBits(customer != null ? customer.getBalance() : Double.NaN);
+            }
+            case StoreCommand.RESERVED_TOTAL: {
+                Customer customer = store.getCustomer(command.login());
+                return Double.doubleToLongBits(customer != null ? store.getReservedTotal(customer) : 0.0);
+            }
+            case StoreCommand.REMOVE_PRODUCT:
+                return store.removeProduct(command.productName());
+            default:
+                break;
+        }
+        if (command.hasRequestId()) {
+            byte previous = deduplicator.get(command.requestId());
+            if (previous != RequestDeduplicator.UNKNOWN) {
+                // Повтор выполненного запроса не расходует лимит: место, занятое при публикации, возвращается
+                if (limited && (command.op() == StoreCommand.PURCHASE || command.op() == StoreCommand.RESERVE)) {
+                    releaseAdmission(command.login());
+                }
+                return previous == RequestDeduplicator.SUCCEEDED ? 1 : 0;
+            }
+        }
+        if (command.op() == StoreCommand.DEPOSIT) {
+            store.deposit(command.login(), command.amount());
+            if (command.hasRequestId()) {
+                deduplicator.put(command.requestId(), true);
+            }
+            return 1;
+        }
+        boolean success = switch (command.op()) {
+            case StoreCommand.PURCHASE -> purchase(command.login(), command.productName(), command.quantity());
+            case StoreCommand.RESERVE -> reserve(command.login(), command.productName(), command.quantity());
+            case StoreCommand.BUY_RESERVED -> buyReserved(command.login());
+            case StoreCommand.WITHDRAW -> {
+                Customer customer = store.getCustomer(command.login());
+                yield customer != null && store.withdraw(customer, command.amount());
+            }
+            default -> throw new IllegalArgumentException("Неизвестная операция " + command.op());
+        };
+        if (command.hasRequestId()) {
+            deduplicator.put(command.requestId(), success);
+        }
+        return success ? 1 : 0;
+    }
+
+    /**
+     * Снимает копию состояния магазина вместе с результатами запросов с идентификатором
+     * (для восстановления отставшего ведомого узла, см. ReplicationLeader). Копия снимается
+     * потоком обработки между запросами и публикуется с описанием StoreCommand.snapshot(snapshotId),
+     * по которому потребители после обработки находят ее место в потоке запросов.
+     *
+     * @param snapshotId номер копии.
+     * @return копия состояния в двоичном виде.
      */
-    public void addSupply(String productName, int quantity) {
-        disruptorProcessor.submitRequest(() -> store.addSupply(productName, quantity));
+    public CompletableFuture<byte[]> snapshot(long snapshotId) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        disruptorProcessor.submitRequest(() -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                store.writeState(out);
+                deduplicator.writeTo(out);
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            result.complete(bytes.toByteArray());
+        }, StoreCommand.snapshot(snapshotId));
+        return result;
+    }
+
+    /**
+     * Заменяет состояние магазина и результаты запросов с идентификатором копией, снятой snapshot().
+     * Копия разбирается в вызывающем потоке, а поток обработки только подменяет состояние,
+     * поэтому некорректная копия не останавливает обработку.
+     *
+     * @param state копия состояния.
+     * @return токен запроса; чтение с этим токеном увидит восстановленное состояние.
+     * @throws IOException если копия некорректна.
+     */
+    public long restoreSnapshot(byte[] state) throws IOException {
+        Store restored;
+        RequestDeduplicator restoredResults;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(state))) {
+            restored = Store.readState(in);
+            restoredResults = RequestDeduplicator.readFrom(in, deduplicator.capacity());
+        }
+        return disruptorProcessor.submitRequest(() -> {
+            store.replaceWith(restored);
+            deduplicator.copyFrom(restoredResults);
+        });
+    }
+
+    /**
+     * Асинхронно выполняет покупку для клиента с указанным логином.
+     *
+     * @param login       логин клиента.
+     * @param productName название продукта.
+     * @param quantity    количество продукта для покупки.
+     * @return результат покупки (false, если клиента нет или его лимит исчерпан).
+     */
+    public CompletableFuture<Boolean> makePurchaseAsync(String login, String productName, int quantity) {
+        return executeLimited(StoreCommand.purchase(login, productName, quantity)).thenApply(value -> value != 0);
+    }
+
+    /**
+     * Асинхронно резервирует продукт для клиента с указанным логином.
+     *
+     * @param login       логин клиента.
+     * @param productName название продукта.
+     * @param quantity    количество для резервирования.
+     * @return результат резервирования (false, если клиента нет или его лимит исчерпан).
+     */
+    public CompletableFuture<Boolean> reserveProductAsync(String login, String productName, int quantity) {
+        return executeLimited(StoreCommand.reserve(login, productName, quantity)).thenApply(value -> value != 0);
+    }
+
+    /**
+     * Асинхронно оплачивает забронированные товары клиента с указанным логином.
+     *
+     * @param login логин клиента.
+     * @return результат оплаты (false, если клиента нет).
+     */
+    public CompletableFuture<Boolean> purchaseReservedProductsAsync(String login) {
+        return execute(StoreCommand.buyReserved(login)).thenApply(value -> value != 0);
+    }
+
+    /**
+     * Асинхронно возвращает количество продукта на складе. В отличие от
+     * getStoreProductAvailability, чтение упорядочено со всеми запросами до него.
+     *
+     * @param productName название продукта.
+     * @return количество продукта на складе.
+     */
+    public CompletableFuture<Integer> getStoreProductAvailabilityAsync(String productName) {
+        return execute(StoreCommand.availability(productName)).thenApply(Long::intValue);
     }
 
     /**
@@ -145,6 +699,17 @@ public class StoreAPI implements IStoreAPI {
         return store.getCustomers();
     }
 
+    /**
+     * Возвращает список всех клиентов магазина после выполнения запроса с токеном.
+     *
+     * @param token токен, полученный от записывающего метода.
+     * @return список клиентов.
+     */
+    public List<Customer> getAllCustomers(long token) {
+        disruptorProcessor.waitFor(token);
+        return getAllCustomers();
+    }
+
     /**
      * Возвращает продукт по его названию из магазина.
      *
@@ -155,6 +720,18 @@ public class StoreAPI implements IStoreAPI {
         return store.getProduct(productName);
     }
 
+    /**
+     * Возвращает продукт по его названию после выполнения запроса с токеном.
+     *
+     * @param productName название продукта.
+     * @param token       токен, полученный от записывающего метода.
+     * @return объект продукта, если найден, или null, если продукт отсутствует.
+     */
+    public Product getProduct(String productName, long token) {
+        disruptorProcessor.waitFor(token);
+        return getProduct(productName);
+    }
+
     /**
      * Возвращает текущий баланс магазина.
      *
@@ -163,4 +740,15 @@ public class StoreAPI implements IStoreAPI {
     public double getStoreBalance() {
         return store.getStoreBalance();
     }
+
+    /**
+     * Возвращает баланс магазина после выполнения запроса с токеном.
+     *
+     * @param token токен, полученный от записывающего метода.
+     * @return баланс магазина.
+     */
+    public double getStoreBalance(long token) {
+        disruptorProcessor.waitFor(token);
+        return getStoreBalance();
+    }
 }
@@ -0,0 +1,46 @@
+package ru.lab11.queuingsystem.Tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Событие JFR с длительностями этапов одного запроса.
+ */
+@Name("ru.lab11.queuingsystem.RequestTrace")
+@Label("Store Request Trace")
+@Category({"Queuing System", "Requests"})
+@Description("Длительности этапов запроса в конвейере Disruptor")
+@StackTrace(false)
+class RequestTraceEvent extends Event {
+    @Label("Sequence")
+    long sequence;
+
+    @Label("Input Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long inputWait;
+
+    @Label("Transfer")
+    @Timespan(Timespan.NANOSECONDS)
+    long transfer;
+
+    @Label("Queue")
+    @Timespan(Timespan.NANOSECONDS)
+    long queue;
+
+    @Label("Execute")
+    @Timespan(Timespan.NANOSECONDS)
+    long execute;
+
+    @Label("Completion")
+    @Timespan(Timespan.NANOSECONDS)
+    long completion;
+
+    @Label("Total")
+    @Timespan(Timespan.NANOSECONDS)
+    long total;
+}
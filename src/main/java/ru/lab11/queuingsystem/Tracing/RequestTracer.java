@@ -0,0 +1,162 @@
+package ru.lab11.queuingsystem.Tracing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Выборочная трассировка запросов. Отбирает примерно один запрос из sampleRate,
+ * а поток обработки записывает отметки времени отобранных запросов в заранее выделенный
+ * кольцевой буфер без блокировок. Новые записи вытесняют самые старые.
+ *
+ * <p>Писатель один (поток обработки), поэтому каждая ячейка защищена своим номером записи:
+ * на время записи номер сбрасывается в -1, а читатель принимает ячейку, только если номер
+ * до и после копирования одинаков.
+ *
+ * <p>Подключение и отключение во время работы:
+ * <pre>
+ * RequestTracer tracer = new RequestTracer(100, 4096, false);
+ * processor.setTracer(tracer);
+ * ...
+ * tracer.exportTo(Path.of("trace.csv"));
+ * processor.setTracer(null);
+ * </pre>
+ * Без трассировщика процессор только проверяет поле на null.
+ */
+public class RequestTracer {
+    private static final int STRIDE = 8; // Номер записи, номер запроса и шесть отметок времени.
+
+    private final int sampleRate; // Трассируется примерно один запрос из sampleRate.
+    private final int mask; // Маска индекса ячейки (емкость — степень двойки).
+    private final boolean emitJfr; // Публиковать ли события JFR.
+
+    private final AtomicLongArray slots; // Ячейки по STRIDE значений.
+    private final AtomicLong recorded = new AtomicLong(); // Сколько записей сделано всего.
+
+    /**
+     * Конструктор трассировщика.
+     *
+     * @param sampleRate трассируется примерно один запрос из sampleRate (1 — все запросы).
+     * @param capacity   количество хранимых записей, степень двойки.
+     * @param emitJfr    публиковать ли каждую запись как событие JFR RequestTrace.
+     */
+    public RequestTracer(int sampleRate, int capacity, boolean emitJfr) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("sampleRate должен быть положительным");
+        }
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity должна быть степенью двойки");
+        }
+        this.sampleRate = sampleRate;
+        this.mask = capacity - 1;
+        this.emitJfr = emitJfr;
+        this.slots = new AtomicLongArray(capacity * STRIDE);
+        for (int i = 0; i < capacity; i++) {
+            slots.set(i * STRIDE, -1);
+        }
+    }
+
+    /**
+     * Решает, трассировать ли очередной запрос. Вызывается отправителем.
+     *
+     * @return true, если запрос нужно трассировать.
+     */
+    public boolean sample() {
+        return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+    }
+
+    /**
+     * Записывает отметки запроса. Вызывается только потоком обработки.
+     */
+    public void record(long sequence, long submitNanos, long pickupNanos, long publishNanos,
+                       long startNanos, long endNanos, long completeNanos) {
+        long index = recorded.get();
+        int base = (int) (index & mask) * STRIDE;
+        slots.set(base, -1);
+        slots.lazySet(base + 1, sequence);
+        slots.lazySet(base + 2, submitNanos);
+        slots.lazySet(base + 3, pickupNanos);
+        slots.lazySet(base + 4, publishNanos);
+        slots.lazySet(base + 5, startNanos);
+        slots.lazySet(base + 6, endNanos);
+        slots.lazySet(base + 7, completeNanos);
+        slots.set(base, index);
+        recorded.set(index + 1);
+
+        if (emitJfr) {
+            RequestTraceEvent event = new RequestTraceEvent();
+            if (event.isEnabled()) {
+                event.sequence = sequence;
+                event.inputWait = pickupNanos - submitNanos;
+                event.transfer = publishNanos - pickupNanos;
+                event.queue = startNanos - publishNanos;
+                event.execute = endNanos - startNanos;
+                event.completion = completeNanos - endNanos;
+                event.total = completeNanos - submitNanos;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Возвращает количество записей, сделанных с момента создания.
+     *
+     * @return количество записей.
+     */
+    public long getRecorded() {
+        return recorded.get();
+    }
+
+    /**
+     * Возвращает хранимые записи от старых к новым. Записи, которые перезаписывались
+     * во время копирования, пропускаются.
+     *
+     * @return список записей.
+     */
+    public List<TraceSample> samples() {
+        long end = recorded.get();
+        long start = Math.max(0, end - (mask + 1));
+        List<TraceSample> result = new ArrayList<>((int) (end - start));
+        for (long index = start; index < end; index++) {
+            int base = (int) (index & mask) * STRIDE;
+            if (slots.get(base) != index) {
+                continue;
+            }
+            TraceSample sample = new TraceSample(slots.get(base + 1), slots.get(base + 2), slots.get(base + 3),
+                    slots.get(base + 4), slots.get(base + 5), slots.get(base + 6), slots.get(base + 7));
+            if (slots.get(base) == index) {
+                result.add(sample);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Выгружает хранимые записи в CSV: номер запроса и длительности этапов в наносекундах.
+     *
+     * @param file файл выгрузки.
+     * @return количество выгруженных записей.
+     * @throws IOException при ошибке записи.
+     */
+    public int exportTo(Path file) throws IOException {
+        List<TraceSample> samples = samples();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("sequence,input_wait_ns,transfer_ns,queue_ns,execute_ns,completion_ns,total_ns");
+            writer.newLine();
+            for (TraceSample sample : samples) {
+                writer.write(sample.sequence() + "," + sample.inputWaitNanos() + "," + sample.transferNanos() + ","
+                        + sample.queueNanos() + "," + sample.executeNanos() + "," + sample.completionNanos() + ","
+                        + sample.totalNanos());
+                writer.newLine();
+            }
+        }
+        return samples.size();
+    }
+}
@@ -0,0 +1,70 @@
+package ru.lab11.queuingsystem.Tracing;
+
+/**
+ * Отметки времени одного запроса на этапах конвейера (System.nanoTime).
+ *
+ * @param sequence      номер запроса во входном буфере.
+ * @param submitNanos   перед получением места во входном буфере.
+ * @param pickupNanos   входной обработчик взял событие.
+ * @param publishNanos  событие опубликовано в буфере обработки.
+ * @param startNanos    начало выполнения в потоке обработки.
+ * @param endNanos      конец выполнения.
+ * @param completeNanos результат обработки доступен (номер обработанного запроса и изменения обновлены).
+ */
+public record TraceSample(long sequence, long submitNanos, long pickupNanos, long publishNanos,
+                          long startNanos, long endNanos, long completeNanos) {
+
+    /**
+     * Время от отправки до входного обработчика: ожидание места во входном буфере и очередь в нем.
+     *
+     * @return наносекунды.
+     */
+    public long inputWaitNanos() {
+        return pickupNanos - submitNanos;
+    }
+
+    /**
+     * Время переноса события во второй буфер (включая ожидание места в нем).
+     *
+     * @return наносекунды.
+     */
+    public long transferNanos() {
+        return publishNanos - pickupNanos;
+    }
+
+    /**
+     * Время ожидания в буфере обработки за другими событиями.
+     *
+     * @return наносекунды.
+     */
+    public long queueNanos() {
+        return startNanos - publishNanos;
+    }
+
+    /**
+     * Время выполнения бизнес-логики в Store.
+     *
+     * @return наносекунды.
+     */
+    public long executeNanos() {
+        return endNanos - startNanos;
+    }
+
+    /**
+     * Время от конца выполнения до публикации результата.
+     *
+     * @return наносекунды.
+     */
+    public long completionNanos() {
+        return completeNanos - endNanos;
+    }
+
+    /**
+     * Полное время запроса.
+     *
+     * @return наносекунды.
+     */
+    public long totalNanos() {
+        return completeNanos - submitNanos;
+    }
+}
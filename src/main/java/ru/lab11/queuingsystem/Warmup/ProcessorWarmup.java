@@ -0,0 +1,152 @@
+package ru.lab11.queuingsystem.Warmup;
+
+import ru.lab11.queuingsystem.MyStore.Customer;
+import ru.lab11.queuingsystem.MyStore.Store;
+import ru.lab11.queuingsystem.RequestProcessing.DisruptorProcessor;
+import ru.lab11.queuingsystem.RequestProcessing.RequestSubmitter;
+import ru.lab11.queuingsystem.RequestProcessing.SupplyTarget;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Прогрев процессора перед приемом настоящих запросов. Прогоняет все ячейки обоих буферов
+ * DisruptorProcessor, затем раундами выполняет синтетические покупки, бронирования, выкупы,
+ * поставки и чтения через те же буферы, но над теневым магазином, пока не скомпилируются горячие методы
+ * (Store, Customer.purchase, обработчики Disruptor).
+ *
+ * <p>Раунд считается устойчивым, если его медианная задержка отличается от предыдущей не больше
+ * чем на tolerance, а JIT за раунд почти ничего не компилировал. После stableRounds устойчивых
+ * раундов подряд isReady() возвращает true. Если за maxRounds это не случилось, процессор
+ * остается неготовым, а прогрев можно запустить снова.
+ *
+ * <p>Синтетические задачи публикуются без StoreCommand, поэтому репликация и журналы
+ * их не видят, а настоящий магазин не изменяется.
+ */
+public class ProcessorWarmup {
+    private static final int PRODUCTS = 64; // Товаров в теневом магазине.
+    private static final int CUSTOMERS = 1024; // Клиентов в теневом магазине.
+    private static final double MAX_COMPILE_SHARE = 0.05; // Доля времени раунда на JIT, при которой раунд еще устойчив.
+
+    private final RequestSubmitter disruptorProcessor;
+    private final int roundOperations; // Операций в раунде.
+    private final int maxRounds; // Наибольшее количество раундов.
+    private final int stableRounds; // Сколько устойчивых раундов подряд нужно для готовности.
+    private final double tolerance; // Допустимое относительное изменение медианной задержки.
+
+    private volatile boolean ready; // Готов ли процессор к настоящей нагрузке.
+
+    /**
+     * Конструктор прогрева с параметрами по умолчанию: раунды по 10000 операций,
+     * не больше 200 раундов, 3 устойчивых раунда с отклонением не больше 10%.
+     *
+     * @param disruptorProcessor прогреваемый процессор.
+     */
+    public ProcessorWarmup(RequestSubmitter disruptorProcessor) {
+        this(disruptorProcessor, 10000, 200, 3, 0.1);
+    }
+
+    /**
+     * Конструктор прогрева.
+     *
+     * @param disruptorProcessor прогреваемый процессор.
+     * @param roundOperations    операций в раунде.
+     * @param maxRounds          наибольшее количество раундов.
+     * @param stableRounds       сколько устойчивых раундов подряд нужно для готовности.
+     * @param tolerance          допустимое относительное изменение медианной задержки между раундами.
+     */
+    public ProcessorWarmup(RequestSubmitter disruptorProcessor, int roundOperations, int maxRounds,
+                           int stableRounds, double tolerance) {
+        this.disruptorProcessor = disruptorProcessor;
+        this.roundOperations = roundOperations;
+        this.maxRounds = maxRounds;
+        this.stableRounds = stableRounds;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Выполняет прогрев. Блокирует вызывающий поток.
+     *
+     * @return итог прогрева.
+     */
+    public WarmupResult run() {
+        long start = System.nanoTime();
+        if (disruptorProcessor instanceof DisruptorProcessor processor) {
+            processor.preTouch();
+        }
+
+        // Теневой магазин с запасом товара и денег, чтобы все операции были успешными
+        Store shadow = new Store(0.0, PRODUCTS, CUSTOMERS);
+        SupplyTarget supplyTarget = shadow::addSupply;
+        disruptorProcessor.waitFor(disruptorProcessor.submitRequest(() -> {
+            for (int i = 0; i < PRODUCTS; i++) {
+                shadow.addProduct(productName(i), Integer.MAX_VALUE / 2, 1.0 + i);
+            }
+            for (int i = 0; i < CUSTOMERS; i++) {
+                shadow.createCustomer("warmup-" + i, 1e15);
+            }
+        }));
+        List<Customer> customers = shadow.getCustomers();
+
+        CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        boolean compilationTimeSupported = compilation != null && compilation.isCompilationTimeMonitoringSupported();
+        long[] latencies = new long[roundOperations];
+        long previousMedian = -1;
+        int stable = 0;
+        int rounds = 0;
+        long operation = 0;
+        while (rounds < maxRounds && stable < stableRounds) {
+            long compileBefore = compilationTimeSupported ? compilation.getTotalCompilationTime() : 0;
+            long roundStart = System.nanoTime();
+            for (int i = 0; i < roundOperations; i++, operation++) {
+                long submitted = System.nanoTime();
+                disruptorProcessor.waitFor(submitOperation(shadow, supplyTarget, customers, operation));
+                latencies[i] = System.nanoTime() - submitted;
+            }
+            long roundMillis = (System.nanoTime() - roundStart) / 1_000_000;
+            long compileMillis = compilationTimeSupported ? compilation.getTotalCompilationTime() - compileBefore : 0;
+            rounds++;
+
+            Arrays.sort(latencies);
+            long median = latencies[roundOperations / 2];
+            boolean compiling = compileMillis > roundMillis * MAX_COMPILE_SHARE;
+            if (previousMedian > 0 && !compiling && Math.abs(median - previousMedian) <= tolerance * previousMedian) {
+                stable++;
+            } else {
+                stable = 0;
+            }
+            previousMedian = median;
+        }
+        ready = stable >= stableRounds;
+        return new WarmupResult(rounds, operation, ready, previousMedian, System.nanoTime() - start);
+    }
+
+    /**
+     * Проверяет, достиг ли процессор устойчивой задержки. Можно вызывать из любого потока
+     * (например, из проверки готовности сервиса) во время прогрева.
+     *
+     * @return true, если прогрев завершился устойчивой задержкой.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Публикует одну синтетическую операцию; вид операции чередуется
+    private long submitOperation(Store shadow, SupplyTarget supplyTarget, List<Customer> customers, long operation) {
+        Customer customer = customers.get((int) (operation % CUSTOMERS));
+        String productName = productName((int) (operation % PRODUCTS));
+        return switch ((int) (operation % 5)) {
+            case 0 -> disruptorProcessor.submitRequest(() -> shadow.handlePurchase(customer, productName, 1));
+            case 1 -> disruptorProcessor.submitRequest(() -> shadow.reserveProduct(customer, productName, 1));
+            case 2 -> disruptorProcessor.submitRequest(() -> shadow.purchaseReservedItems(customer));
+            case 3 -> disruptorProcessor.submitSupply(supplyTarget, productName, 2, null);
+            default -> disruptorProcessor.submitRequest(() -> shadow.getAvailableQuantity(productName));
+        };
+    }
+
+    private static String productName(int index) {
+        return "warmup-product-" + index;
+    }
+}
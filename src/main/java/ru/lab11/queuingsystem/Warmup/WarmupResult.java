@@ -0,0 +1,14 @@
+package ru.lab11.queuingsystem.Warmup;
+
+/**
+ * Итог прогрева процессора.
+ *
+ * @param rounds             количество выполненных раундов.
+ * @param operations         количество синтетических операций.
+ * @param stabilized         достигнута ли устойчивая задержка (процессор готов).
+ * @param steadyLatencyNanos медианная задержка операции в последнем раунде.
+ * @param elapsedNanos       длительность прогрева.
+ */
+public record WarmupResult(int rounds, long operations, boolean stabilized, long steadyLatencyNanos,
+                           long elapsedNanos) {
+}
@@ -0,0 +1,246 @@
+import com.lmax.disruptor.EventHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import ru.lab11.queuingsystem.MyStore.Customer;
+import ru.lab11.queuingsystem.MyStore.CustomerSnapshot;
+import ru.lab11.queuingsystem.MyStore.Product;
+import ru.lab11.queuingsystem.MyStore.ProductSnapshot;
+import ru.lab11.queuingsystem.MyStore.Store;
+import ru.lab11.queuingsystem.MyStore.StoreChanges;
+import ru.lab11.queuingsystem.MyStore.StoreOperation;
+import ru.lab11.queuingsystem.RequestProcessing.DisruptorProcessor;
+import ru.lab11.queuingsystem.RequestProcessing.RequestEvent;
+import ru.lab11.queuingsystem.StoreAPI;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочная проверка инвариантов магазина: тысячи клиентов на виртуальных потоках выполняют
+ * случайную смесь операций над множеством товаров. Потребитель после потока обработки во время
+ * нагрузки сверяет снимки остатков и денег из StoreChanges с журналом выполненных операций, не
+ * задерживая поток обработки; брони сверяются с магазином один раз после нагрузки.
+ *
+ * <p>Длительность и количество клиентов задаются свойствами stress.seconds и stress.clients
+ * (например, -Dstress.seconds=600 для длительного прогона).
+ */
+public class StoreStressTests {
+    private static final int SECONDS = Integer.getInteger("stress.seconds", 3); // Длительность нагрузки.
+    private static final int CLIENTS = Integer.getInteger("stress.clients", 2000); // Виртуальных потоков-клиентов.
+    private static final int PRODUCTS = 500; // Количество товаров.
+    private static final int CUSTOMERS = 1000; // Количество клиентов магазина.
+    private static final int INITIAL_STOCK = 100; // Начальный остаток каждого товара (мал, чтобы товар заканчивался).
+    private static final double INITIAL_BALANCE = 5_000.0; // Начальный баланс клиента (мал, чтобы деньги заканчивались).
+
+    @Test
+    public void testInvariantsHoldUnderConcurrentLoad(TestReporter reporter) throws InterruptedException {
+        Store store = new Store(0.0, PRODUCTS, CUSTOMERS);
+        store.enableChangeTracking();
+        InvariantChecker checker = new InvariantChecker();
+        DisruptorProcessor processor = new DisruptorProcessor(store::drainChanges, checker);
+        StoreAPI api = new StoreAPI(processor, store);
+
+        long token = -1;
+        for (int p = 0; p < PRODUCTS; p++) {
+            token = api.addProductToStore(sku(p), INITIAL_STOCK, 1 + p % 50);
+        }
+        for (int c = 0; c < CUSTOMERS; c++) {
+            token = api.createCustomer(login(c), INITIAL_BALANCE);
+        }
+        List<Customer> customers = api.getAllCustomers(token);
+
+        AtomicLong completed = new AtomicLong();
+        AtomicLong succeeded = new AtomicLong();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(SECONDS);
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CLIENTS; i++) {
+                clients.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        int c = random.nextInt(CUSTOMERS);
+                        String product = sku(random.nextInt(PRODUCTS));
+                        int quantity = 1 + random.nextInt(3);
+                        int kind = random.nextInt(100);
+                        boolean success;
+                        if (kind < 35) {
+                            success = api.makePurchaseAsync(login(c), product, quantity).join();
+                        } else if (kind < 50) {
+                            success = api.makePurchase(customers.get(c), product, quantity);
+                        } else if (kind < 65) {
+                            success = api.reserveProductAsync(login(c), product, quantity).join();
+                        } else if (kind < 75) {
+                            success = api.purchaseReservedProductsAsync(login(c)).join();
+                        } else if (kind < 90) {
+                            api.addSupply(product, quantity);
+                            success = true;
+                        } else {
+                            success = api.getStoreProductAvailabilityAsync(product).join() >= 0;
+                        }
+                        completed.incrementAndGet();
+                        if (success) {
+                            succeeded.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            // Пропускная способность за каждую секунду нагрузки
+            long previous = 0;
+            while (System.nanoTime() < deadline) {
+                Thread.sleep(1000);
+                long now = completed.get();
+                reporter.publishEntry("Нагрузка", String.format("%d операций/с, проверок инвариантов: %d",
+                        now - previous, checker.checks));
+                previous = now;
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        // Финальная проверка после выполнения всех запросов: shutdown дожидается потребителя,
+        // после него магазин больше не меняется и читается напрямую
+        processor.shutdown();
+        checker.checkStore(store);
+        reporter.publishEntry("Итог", String.format("клиентов: %d, операций: %d (успешных %d), "
+                        + "пропускная способность: %.0f операций/с",
+                CLIENTS, completed.get(), succeeded.get(), completed.get() / elapsedSeconds));
+
+        //Под нагрузкой и после нее остаток плюс проданное равно поставленному, а траты клиентов — выручке.
+        assertNull(checker.violation, "Инварианты магазина должны выполняться");
+        assertTrue(checker.checks > 1, "Инварианты должны проверяться во время нагрузки");
+        assertTrue(completed.get() > 0, "Клиенты должны выполнить операции");
+        assertEquals(checker.revenue, store.getStoreBalance(), 1e-6, "Выручка должна совпадать с балансом магазина");
+    }
+
+    private static String sku(int index) {
+        return "SKU-" + index;
+    }
+
+    private static String login(int index) {
+        return "Customer" + index;
+    }
+
+    //Сверка снимков из StoreChanges с выполненными операциями. onEvent вызывается потоком потребителя
+    //после потока обработки; checkStore — после остановки процессора
+    private static final class InvariantChecker implements EventHandler<RequestEvent> {
+        private final Map<String, Integer> productIndex = new HashMap<>(); // Номер товара по названию.
+        private final long[] supplied = new long[PRODUCTS]; // Поставлено после создания товара.
+        private final long[] purchased = new long[PRODUCTS]; // Куплено без бронирования.
+        private final long[] reserved = new long[PRODUCTS]; // Забронировано (оплачено или нет).
+        private final long[] reservedPaid = new long[PRODUCTS]; // Оплачено из брони.
+        private final Map<String, CustomerSnapshot> customers = new HashMap<>(); // Последний снимок клиента.
+        private double customerMoney; // Сумма баланса и трат по последним снимкам клиентов.
+        private double customerSpent; // Сумма трат по последним снимкам клиентов.
+        private double revenue; // Сумма всех покупок и оплат брони.
+        private volatile long checks; // Количество проверок.
+        private volatile String violation; // Первое нарушение или null.
+
+        InvariantChecker() {
+            for (int p = 0; p < PRODUCTS; p++) {
+                productIndex.put(sku(p), p);
+            }
+        }
+
+        // Учитывает операции и снимки события и проверяет товары, измененные в нем
+        @Override
+        public void onEvent(RequestEvent event, long sequence, boolean endOfBatch) {
+            StoreChanges changes = event.getChanges();
+            if (changes == null || violation != null) {
+                return;
+            }
+            for (StoreOperation operation : changes.operations()) {
+                int p = productIndex.get(operation.productName());
+                switch (operation.type()) {
+                    case PURCHASE -> purchased[p] += operation.quantity();
+                    case RESERVE -> reserved[p] += operation.quantity();
+                    case RESERVED_PURCHASE -> reservedPaid[p] += operation.quantity();
+                    case SUPPLY -> supplied[p] += operation.quantity();
+                }
+                if (operation.type() == StoreOperation.Type.PURCHASE
+                        || operation.type() == StoreOperation.Type.RESERVED_PURCHASE) {
+                    revenue += operation.amount();
+                }
+            }
+            for (CustomerSnapshot customer : changes.customers()) {
+                CustomerSnapshot previous = customers.put(customer.login(), customer);
+                if (previous != null) {
+                    customerMoney -= previous.balance() + previous.spentAmount();
+                    customerSpent -= previous.spentAmount();
+                }
+                customerMoney += customer.balance() + customer.spentAmount();
+                customerSpent += customer.spentAmount();
+            }
+            // Каждая операция с товаром попадает в снимки, поэтому остальные товары не изменились
+            for (ProductSnapshot product : changes.products()) {
+                int p = productIndex.get(product.name());
+                if (!checkStock(p, product.quantity())) {
+                    return;
+                }
+            }
+            if (checkMoney(customerSpent, changes.storeBalance(), customerMoney, customers.size())) {
+                checks++;
+            }
+        }
+
+        // Полная сверка с магазином, включая брони клиентов (их нет в снимках)
+        void checkStore(Store store) {
+            if (violation != null) {
+                return;
+            }
+            long[] held = new long[PRODUCTS];
+            double spent = 0;
+            double money = 0;
+            for (Customer customer : store.getCustomers()) {
+                spent += customer.getSpentAmount();
+                money += customer.getBalance() + customer.getSpentAmount();
+                for (Map.Entry<Product, Integer> entry : customer.getReservedProducts().entrySet()) {
+                    held[productIndex.get(entry.getKey().getName())] += entry.getValue();
+                }
+            }
+            for (int p = 0; p < PRODUCTS; p++) {
+                if (!checkStock(p, store.getAvailableQuantity(sku(p)))) {
+                    return;
+                }
+                if (held[p] != reserved[p] - reservedPaid[p]) {
+                    violation = sku(p) + ": в брони " + held[p] + " != забронировано " + reserved[p]
+                            + " - оплачено " + reservedPaid[p];
+                    return;
+                }
+            }
+            if (checkMoney(spent, store.getStoreBalance(), money, store.getCustomers().size())) {
+                checks++;
+            }
+        }
+
+        private boolean checkStock(int p, long stock) {
+            // Создание товара не записывается как операция, поэтому начальный остаток добавляется здесь
+            if (stock + purchased[p] + reserved[p] != INITIAL_STOCK + supplied[p]) {
+                violation = sku(p) + ": остаток " + stock + " + продано " + (purchased[p] + reserved[p])
+                        + " != поставлено " + (INITIAL_STOCK + supplied[p]);
+                return false;
+            }
+            return true;
+        }
+
+        private boolean checkMoney(double spent, double storeBalance, double money, int customerCount) {
+            if (Math.abs(spent - storeBalance) > 1e-6 || Math.abs(spent - revenue) > 1e-6) {
+                violation = "траты клиентов " + spent + " != выручка " + storeBalance + " / " + revenue;
+                return false;
+            }
+            if (Math.abs(money - customerCount * INITIAL_BALANCE) > 1e-6) {
+                violation = "деньги клиентов " + money + " != " + customerCount * INITIAL_BALANCE;
+                return false;
+            }
+            return true;
+        }
+    }
+}
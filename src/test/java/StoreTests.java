@@ -1,15 +1,70 @@
 import org.junit.jupiter.api.RepeatedTest;
 import ru.lab11.queuingsystem.*;
+import ru.lab11.queuingsystem.Analytics.SalesAnalytics;
+import ru.lab11.queuingsystem.BulkLoad.BulkLoadException;
+import ru.lab11.queuingsystem.BulkLoad.BulkLoader;
+import ru.lab11.queuingsystem.BulkLoad.LoadResult;
+import ru.lab11.queuingsystem.Capture.ReplayReport;
+import ru.lab11.queuingsystem.Capture.StateChecksum;
+import ru.lab11.queuingsystem.Capture.TrafficRecorder;
+import ru.lab11.queuingsystem.Capture.TrafficReplay;
 import ru.lab11.queuingsystem.MyStore.Customer;
+import ru.lab11.queuingsystem.Durability.GroupCommitJournal;
+import ru.lab11.queuingsystem.History.OrderHistory;
+import ru.lab11.queuingsystem.History.OrderRecord;
+import ru.lab11.queuingsystem.MultiTenant.TenantChannel;
+import ru.lab11.queuingsystem.MultiTenant.TenantProcessor;
 import ru.lab11.queuingsystem.MyStore.Store;
+import ru.lab11.queuingsystem.MyStore.CustomerNotification;
+import ru.lab11.queuingsystem.Network.StoreClient;
+import ru.lab11.queuingsystem.Network.StoreServer;
+import ru.lab11.queuingsystem.Notifications.NotificationHub;
+import ru.lab11.queuingsystem.Partitioning.PartitionRouter;
+import ru.lab11.queuingsystem.Protocol.StoreCommand;
+import ru.lab11.queuingsystem.RateLimiting.CustomerRateLimiter;
+import ru.lab11.queuingsystem.Replication.ReplicationFollower;
+import ru.lab11.queuingsystem.Replication.ReplicationLeader;
+import ru.lab11.queuingsystem.ReadModel.StoreReadModel;
+import ru.lab11.queuingsystem.Reporting.CustomerColumns;
+import ru.lab11.queuingsystem.Reporting.StoreReports;
 import ru.lab11.queuingsystem.RequestProcessing.DisruptorProcessor;
-
+import ru.lab11.queuingsystem.SharedMemory.SharedMemoryClient;
+import ru.lab11.queuingsystem.SharedMemory.SharedMemoryServer;
+import ru.lab11.queuingsystem.Tracing.RequestTracer;
+import ru.lab11.queuingsystem.Tracing.TraceSample;
+import ru.lab11.queuingsystem.Warmup.ProcessorWarmup;
+import ru.lab11.queuingsystem.Warmup.WarmupResult;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 // Класс тестов для магазина и системы обработки запросов
@@ -363,4 +418,1362 @@ public class StoreTests {
         assertEquals(expectedRemainingStock, api.getStoreProductAvailability(productName),
                 "Количество товара на складе после покупки должно быть правильным");
     }
+
+    // Проверяется, что объединенные поставки применяются до зависящей от них покупки.
+    @RepeatedTest(500)
+    public void testCoalescedSupplyAppliedBeforeDependentPurchase() throws InterruptedException {
+        // Инициализация процессора и API магазина
+        DisruptorProcessor processor = new DisruptorProcessor();
+        StoreAPI api = new StoreAPI(processor, new Store(100000.0));
+
+        String productName = "Phone";
+
+        // Добавляем продукт без остатка и клиента
+        api.addProductToStore(productName, 0, 100.0);
+        api.createCustomer("Customer", 100000.0);
+        processor.waitProcessor();
+
+        // Серия мелких поставок, за которой сразу следует покупка всего поставленного
+        int numberOfSupplies = 50;
+        for (int i = 0; i < numberOfSupplies; i++) {
+            api.addSupply(productName, 2);
+        }
+        boolean purchaseSuccess = api.makePurchase(api.getAllCustomers().get(0), productName, numberOfSupplies * 2);
+        processor.waitProcessor();
+
+        int remaining = api.getStoreProductAvailability(productName);
+
+        // Завершаем работу процессора
+        processor.shutdown();
+
+        //Покупка стоит в очереди после поставок, значит она должна видеть весь поставленный товар.
+        assertTrue(purchaseSuccess, "Покупка после поставок должна быть успешной");
+        assertEquals(0, remaining, "Весь поставленный товар должен быть продан");
+    }
+
+    // Проверяется, что повтор покупки с тем же идентификатором запроса не списывает деньги дважды.
+    @RepeatedTest(500)
+    public void testRetriedPurchaseWithSameRequestIdIsAppliedOnce() throws InterruptedException {
+        // Инициализация процессора и API магазина
+        DisruptorProcessor processor = new DisruptorProcessor();
+        StoreAPI api = new StoreAPI(processor, new Store(100000.0));
+
+        api.addProductToStore("Laptop", 100, 500.0);
+        api.createCustomer("Customer", 10000.0);
+        processor.waitProcessor();
+        Customer customer = api.getAllCustomers().get(0);
+
+        // Несколько потоков повторяют один и тот же запрос
+        long requestId = new Random().nextLong();
+        List<Thread> threads = new ArrayList<>();
+        AtomicInteger successes = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            Thread thread = new Thread(() -> {
+                if (api.makePurchase(requestId, customer, "Laptop", 3)) {
+                    successes.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Новый идентификатор выполняется как отдельный запрос
+        boolean nextPurchase = api.makePurchase(requestId + 1, customer, "Laptop", 1);
+
+        // Завершаем работу процессора
+        processor.shutdown();
+
+        //Все повторы получают исходный результат, а товар и деньги списываются один раз.
+        assertEquals(5, successes.get(), "Все повторы должны получить результат первого запроса");
+        assertTrue(nextPurchase, "Запрос с новым идентификатором должен выполниться");
+        assertEquals(2000.0, customer.getSpentAmount(), 1e-9, "Покупка должна быть оплачена один раз");
+        assertEquals(96, api.getStoreProductAvailability("Laptop"), "Товар должен быть списан один раз");
+    }
+
+    // Проверяется, что чтение с токеном записи видит результат этой записи без общего ожидания процессора.
+    @RepeatedTest(500)
+    public void testReadWithTokenSeesOwnWrites() {
+        // Инициализация процессора и API магазина
+        DisruptorProcessor processor = new DisruptorProcessor();
+        StoreAPI api = new StoreAPI(processor, new Store(100000.0));
+
+        long productToken = api.addProductToStore("Phone", 10, 300.0);
+        int initialQuantity = api.getStoreProductAvailability("Phone", productToken);
+
+        long supplyToken = 0;
+        for (int i = 0; i < 20; i++) {
+            supplyToken = api.addSupply("Phone", 5);
+        }
+        int suppliedQuantity = api.getStoreProductAvailability("Phone", supplyToken);
+
+        long customerToken = api.createCustomer("Customer", 1000.0);
+        int customers = api.getAllCustomers(customerToken).size();
+
+        // Завершаем работу процессора
+        processor.shutdown();
+
+        //Каждое чтение с токеном должно видеть все записи до этого токена включительно.
+        assertEquals(10, initialQuantity, "Чтение должно видеть добавленный продукт");
+        assertEquals(110, suppliedQuantity, "Чтение должно видеть все поставки до токена");
+        assertEquals(1, customers, "Чтение должно видеть созданного клиента");
+    }
+
+    // Проверяется, что модель чтения совпадает с магазином после многопоточных покупок.
+    @RepeatedTest(100)
+    public void testReadModelMatchesStoreAfterPurchases() throws InterruptedException {
+        // Инициализация магазина, модели чтения и процессора
+        Store store = new Store(100000.0);
+        store.enableChangeTracking();
+        StoreReadModel readModel = new StoreReadModel();
+        DisruptorProcessor processor = new DisruptorProcessor(store::drainChanges, readModel);
+        StoreAPI api = new StoreAPI(processor, store);
+
+        api.addProductToStore("Laptop", 1000, 500.0);
+        long token = 0;
+        for (int i = 0; i < 10; i++) {
+            token = api.createCustomer("Customer" + i, 5000.0);
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        Random random = new Random();
+        for (Customer customer : api.getAllCustomers(token)) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 5; i++) {
+                    api.makePurchase(customer, "Laptop", random.nextInt(3) + 1);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Модель чтения догоняет последнюю запись
+        token = api.addSupply("Laptop", 1);
+        readModel.waitFor(token);
+
+        // Завершаем работу процессора
+        processor.shutdown();
+
+        //Модель чтения должна отражать остатки, баланс магазина и траты каждого клиента.
+        assertEquals(api.getStoreProductAvailability("Laptop"), readModel.getProductAvailability("Laptop"),
+                "Остаток в модели чтения не совпадает с магазином");
+        assertEquals(api.getStoreBalance(), readModel.getStoreBalance(), 1e-9,
+                "Баланс магазина в модели чтения не совпадает с магазином");
+        for (Customer customer : api.getAllCustomers()) {
+            assertEquals(customer.getSpentAmount(), readModel.getCustomer(customer.getLogin()).spentAmount(), 1e-9,
+                    "Траты клиента в модели чтения не совпадают с магазином");
+        }
+    }
+
+    // Проверяется, что потоковая аналитика совпадает с фактическими продажами магазина.
+    @RepeatedTest(100)
+    public void testSalesAnalyticsMatchesStore() throws InterruptedException {
+        // Инициализация магазина, аналитики и процессора
+        Store store = new Store(100000.0);
+        store.enableChangeTracking();
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        SalesAnalytics analytics = new SalesAnalytics(60, 3, clock::get);
+        DisruptorProcessor processor = new DisruptorProcessor(store::drainChanges, analytics);
+        StoreAPI api = new StoreAPI(processor, store);
+
+        api.addProductToStore("Laptop", 1000, 500.0);
+        api.addProductToStore("Phone", 1000, 300.0);
+        api.addProductToStore("Mouse", 1000, 10.0);
+        long token = api.createCustomer("Customer", 1000000.0);
+        Customer customer = api.getAllCustomers(token).get(0);
+
+        // Мышей продается больше всего, ноутбуков — меньше всего
+        for (int i = 0; i < 30; i++) {
+            api.makePurchase(customer, "Mouse", 3);
+            api.makePurchase(customer, "Phone", 2);
+            api.makePurchase(customer, "Laptop", 1);
+        }
+        // Из двух бронирований оплачивается одно
+        api.reserveProduct(customer, "Phone", 4);
+        api.purchaseReservedProducts(customer);
+        api.reserveProduct(customer, "Phone", 4);
+
+        // Ждем, пока аналитика обработает продажи
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (Math.abs(analytics.getTotalRevenue() - customer.getSpentAmount()) > 1e-6 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        double windowRevenue = analytics.getWindowRevenue();
+        // После затишья дольше окна первый же запрос без продаж сдвигает окно
+        clock.addAndGet(120_000);
+        api.getStoreProductAvailabilityAsync("Mouse").join();
+
+        // Завершение процессора дожидается, пока аналитика обработает все события
+        processor.shutdown();
+
+        //Выручка аналитики равна тратам клиента, а рейтинг и конверсия соответствуют операциям.
+        assertEquals(customer.getSpentAmount(), analytics.getTotalRevenue(), 1e-6, "Общая выручка неверна");
+        assertEquals(customer.getSpentAmount(), windowRevenue, 1e-6, "Выручка в окне неверна");
+        assertEquals(0.0, analytics.getWindowRevenue(), 1e-9, "Окно должно устареть без новых продаж");
+        assertEquals("Mouse", analytics.getTopProducts().get(0).productName(), "Самый продаваемый товар неверен");
+        assertEquals(64, analytics.getTopProducts().get(1).units(), "Продажи телефонов неверны");
+        assertEquals(0.5, analytics.getReservationConversionRate(), 1e-9, "Конверсия бронирований неверна");
+    }
+
+    // Проверяется массовая загрузка каталога и клиентов из CSV мелкими блоками.
+    @RepeatedTest(20)
+    public void testBulkLoadOfCatalogAndCustomers() throws IOException {
+        // Готовим файлы: 20000 товаров и 5000 клиентов
+        Path productsFile = Files.createTempFile("products", ".csv");
+        Path customersFile = Files.createTempFile("customers", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(productsFile)) {
+            writer.write("# название,количество,цена\n");
+            for (int i = 0; i < 20000; i++) {
+                writer.write("SKU-" + i + "," + i + "," + (i + 0.5) + "\n");
+            }
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(customersFile)) {
+            for (int i = 0; i < 5000; i++) {
+                writer.write("Customer" + i + "," + (i * 10.0) + "\r\n");
+            }
+        }
+
+        // Инициализация процессора и магазина с журналом: загрузка должна попасть в журнал
+        Path journalFile = Files.createTempFile("bulk", ".journal");
+        GroupCommitJournal journal = new GroupCommitJournal(journalFile);
+        DisruptorProcessor processor = new DisruptorProcessor(null, journal);
+        Store store = new Store(100000.0);
+        StoreAPI api = new StoreAPI(processor, store, journal);
+
+        // Маленькие блоки, чтобы строки попадали на границы блоков
+        BulkLoader loader = new BulkLoader(processor, api, 4096, 4, null);
+        LoadResult products = loader.loadProducts(productsFile);
+        LoadResult customers = loader.loadCustomers(customersFile);
+
+        // Файл с длинным логином в начале и испорченной строкой в одном из следующих блоков
+        Path brokenFile = Files.createTempFile("broken", ".csv");
+        String longLogin = "L".repeat(1000);
+        try (BufferedWriter writer = Files.newBufferedWriter(brokenFile)) {
+            writer.write(longLogin + ",1.0\n");
+            for (int i = 0; i < 2000; i++) {
+                writer.write(i == 1500 ? "Late" + i + ",не число\n" : "Late" + i + ",1.0\n");
+            }
+        }
+        BulkLoadException failure = assertThrows(BulkLoadException.class, () -> loader.loadCustomers(brokenFile));
+
+        // Завершаем работу процессора и восстанавливаем новый магазин из журнала
+        processor.shutdown();
+        journal.close();
+        DisruptorProcessor replayProcessor = new DisruptorProcessor();
+        StoreAPI replayApi = new StoreAPI(replayProcessor, new Store(100000.0));
+        GroupCommitJournal.replay(journalFile, replayApi::execute);
+        replayProcessor.shutdown();
+        Files.delete(productsFile);
+        Files.delete(customersFile);
+        Files.delete(brokenFile);
+        Files.delete(journalFile);
+
+        //Все строки должны быть загружены без потерь и искажений.
+        assertEquals(20000, products.records(), "Количество загруженных товаров неверно");
+        assertEquals(5000, customers.records(), "Количество загруженных клиентов неверно");
+        assertEquals(12345, api.getStoreProductAvailability("SKU-12345"), "Остаток загруженного товара неверен");
+        assertEquals(19999.5, api.getProduct("SKU-19999").getPrice(), 1e-9, "Цена загруженного товара неверна");
+        assertEquals(5000 + failure.getApplied().records(), api.getAllCustomers().size(), "Количество клиентов в магазине неверно");
+        assertEquals(49990.0, api.getAllCustomers().get(4999).getBalance(), 1e-9, "Баланс загруженного клиента неверен");
+        //Испорченный файл загружен ровно до блока с ошибкой, длинное поле принято.
+        assertTrue(failure.getApplied().records() > 0 && failure.getApplied().records() <= 1501,
+                "Загрузка должна остановиться на блоке с ошибкой");
+        assertEquals(longLogin, api.getAllCustomers().get(5000).getLogin(), "Длинный логин должен загружаться целиком");
+        assertEquals("Late" + (failure.getApplied().records() - 2), api.getAllCustomers().get(api.getAllCustomers().size() - 1).getLogin(),
+                "Последний примененный клиент неверен");
+        //Журнал содержит всю загрузку: восстановленный магазин совпадает с исходным.
+        assertEquals(api.getAllCustomers().size(), replayApi.getAllCustomers().size(), "Клиенты из журнала неверны");
+        assertEquals(12345, replayApi.getStoreProductAvailability("SKU-12345"), "Остаток товара из журнала неверен");
+        assertEquals(19999.5, replayApi.getProduct("SKU-19999").getPrice(), 1e-9, "Цена товара из журнала неверна");
+    }
+
+    // Проверяются отчеты по снимку клиентов, снятому во время работы магазина.
+    @RepeatedTest(20)
+    public void testReportsOverCustomerSnapshot() throws IOException {
+        // Инициализация процессора и API магазина
+        DisruptorProcessor processor = new DisruptorProcessor();
+        Store store = new Store(100000.0);
+        StoreAPI api = new StoreAPI(processor, store);
+
+        api.addProductToStore("Phone", 100000, 10.0);
+        long token = 0;
+        for (int i = 0; i < 40000; i++) {
+            token = api.createCustomer("Customer" + i, 500.0 + 1000.0 * (i % 4));
+        }
+        // Каждый десятый клиент бронирует товар, каждый пятый — покупает
+        List<Customer> customers = api.getAllCustomers(token);
+        for (int i = 1; i < 40000; i += 5) {
+            Customer customer = customers.get(i);
+            if (i % 10 == 1) {
+                api.reserveProduct(customer, "Phone", 1);
+            } else {
+                api.makePurchase(customer, "Phone", 2);
+            }
+        }
+
+        // Покупки других клиентов идут одновременно со снятием снимка по частям
+        StoreReports reports = new StoreReports(processor, store);
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            for (int i = 3; i < 40000; i += 5) {
+                api.makePurchaseAsync(customers.get(i).getLogin(), "Phone", 1);
+            }
+        });
+        CustomerColumns columns = reports.snapshot();
+        writer.join();
+        Path exportFile = Files.createTempFile("pending", ".csv");
+        reports.exportPendingReservations(columns, exportFile);
+        long exportedLines;
+        try (Stream<String> lines = Files.lines(exportFile)) {
+            exportedLines = lines.count();
+        }
+        Files.delete(exportFile);
+
+        // Завершаем работу процессора
+        processor.shutdown();
+
+        //Агрегаты по снимку должны совпадать с состоянием магазина.
+        assertEquals(40000, columns.size(), "Снимок должен содержать всех клиентов");
+        assertEquals(columns.storeBalance() - 100000.0, reports.totalSpent(columns), 1e-6,
+                "Траты в снимке должны соответствовать балансу магазина в тот же момент");
+        assertEquals(4000, reports.countWithPendingReservations(columns), "Количество клиентов с бронированиями неверно");
+        assertEquals(4001, exportedLines, "Выгрузка должна содержать заголовок и клиентов с бронированиями");
+        assertArrayEquals(new long[]{10000, 10000, 10000, 10000}, reports.balanceHistogram(columns, 1000.0, 4),
+                "Распределение балансов неверно");
+    }
+
+    // Проверяются конвейерные запросы к серверу магазина через loopback.
+    @RepeatedTest(20)
+    public void testPipelinedRequestsOverLoopback() throws IOException {
+        // Инициализация процессора, API магазина и сервера
+        DisruptorProcessor processor = new DisruptorProcessor();
+        StoreAPI api = new StoreAPI(processor, new Store(100000.0));
+        StoreServer server = new StoreServer(api, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+
+        List<CompletableFuture<Boolean>> purchases = new ArrayList<>();
+        int availability;
+        boolean reserved;
+        boolean boughtReserved;
+        boolean unknownCustomer;
+        try (StoreClient client = new StoreClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+            // Все запросы отправляются без ожидания ответов
+            client.send(StoreCommand.addProduct("Phone", 100, 300.0));
+            client.send(StoreCommand.createCustomer("Customer", 100000.0));
+            for (int i = 0; i < 50; i++) {
+                purchases.add(client.purchase("Customer", "Phone", 1));
+            }
+            client.supply("Phone", 30);
+            CompletableFuture<Boolean> reserve = client.reserve("Customer", "Phone", 10);
+            CompletableFuture<Boolean> buyReserved = client.buyReserved("Customer");
+            CompletableFuture<Boolean> unknown = client.purchase("Nobody", "Phone", 1);
+            CompletableFuture<Integer> remaining = client.availability("Phone");
+
+            availability = remaining.join();
+            reserved = reserve.join();
+            boughtReserved = buyReserved.join();
+            unknownCustomer = unknown.join();
+        } finally {
+            server.close();
+            processor.shutdown();
+        }
+
+        //Ответы приходят на все запросы, а запросы выполняются в порядке отправки.
+        for (CompletableFuture<Boolean> purchase : purchases) {
+            assertTrue(purchase.join(), "Покупка через сервер должна быть успешной");
+        }
+        assertTrue(reserved, "Бронирование через сервер должно быть успешным");
+        assertTrue(boughtReserved, "Оплата бронирования через сервер должна быть успешной");
+        assertFalse(unknownCustomer, "Покупка неизвестного клиента должна быть отклонена");
+        assertEquals(70, availability, "Остаток после конвейерных запросов неверен");
+        assertEquals(100000.0 + 60 * 300.0, api.getStoreBalance(), 1e-9, "Баланс магазина неверен");
+    }
+
+    // Проверяется, что ведомый узел после репликации и promote() совпадает с ведущим.
+    @RepeatedTest(10)
+    public void testFollowerMatchesLeaderAfterReplication() throws Exception {
+        // Ведущий: магазин, журнал репликации и процессор
+        ReplicationLeader leader = new ReplicationLeader(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1 << 16);
+        DisruptorProcessor leaderProcessor = new DisruptorProcessor(null, leader);
+        StoreAPI leaderApi = new StoreAPI(leaderProcessor, new Store(100000.0));
+        leader.start();
+
+        // Ведомый с тем же начальным состоянием
+        DisruptorProcessor followerProcessor = new DisruptorProcessor();
+        StoreAPI followerApi = new StoreAPI(followerProcessor, new Store(100000.0));
+        ReplicationFollower follower = new ReplicationFollower(followerApi, followerProcessor,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), leader.getPort()));
+        follower.start();
+
+        leaderApi.addProductToStore("Laptop", 500, 700.0);
+        long token = 0;
+        for (int i = 0; i < 20; i++) {
+            token = leaderApi.createCustomer("Customer" + i, 5000.0);
+        }
+        List<Thread> threads = new ArrayList<>();
+        Random random = new Random();
+        for (Customer customer : leaderApi.getAllCustomers(token)) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10; i++) {
+                    leaderApi.reserveProduct(customer, "Laptop", random.nextInt(2) + 1);
+                    leaderApi.purchaseReservedProducts(random.nextLong(), customer);
+                    leaderApi.addSupply("Laptop", 1);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Останавливаем процессор ведущего: shutdown дожидается, пока журнал репликации получит все команды
+        leaderProcessor.shutdown();
+
+        // Ждем, пока ведомый догонит ведущего, и делаем его самостоятельным
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while ((follower.getAppliedIndex() < leader.getLogIndex()) && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        follower.promote();
+
+        // Завершаем работу
+        leader.close();
+        followerProcessor.shutdown();
+
+        //Ведомый должен иметь то же состояние, что и ведущий.
+        assertEquals(leader.getLogIndex(), follower.getAppliedIndex(), "Ведомый должен применить весь журнал");
+        assertEquals(leaderApi.getStoreBalance(), followerApi.getStoreBalance(), 1e-9, "Баланс магазина ведомого неверен");
+        assertEquals(leaderApi.getStoreProductAvailability("Laptop"), followerApi.getStoreProductAvailability("Laptop"),
+                "Остаток товара ведомого неверен");
+        for (int i = 0; i < 20; i++) {
+            assertEquals(leaderApi.getAllCustomers().get(i).getSpentAmount(), followerApi.getAllCustomers().get(i).getSpentAmount(),
+                    1e-9, "Траты клиента ведомого неверны");
+        }
+    }
+
+    // Проверяется, что ведомый, отставший дальше журнала ведущего, восстанавливается по копии состояния.
+    @RepeatedTest(5)
+    public void testLaggingFollowerResyncsFromSnapshot() throws Exception {
+        // Ведущий с маленьким журналом и источником копий состояния
+        ReplicationLeader leader = new ReplicationLeader(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16);
+        DisruptorProcessor leaderProcessor = new DisruptorProcessor(null, leader);
+        StoreAPI leaderApi = new StoreAPI(leaderProcessor, new Store(100000.0));
+        leader.setSnapshotSource(leaderApi);
+        leader.start();
+
+        // До подключения ведомого журнал успевает вытеснить первые команды
+        leaderApi.addProductToStore("Laptop", 500, 700.0);
+        long token = 0;
+        for (int i = 0; i < 20; i++) {
+            token = leaderApi.createCustomer("Customer" + i, 5000.0);
+        }
+        List<Customer> customers = leaderApi.getAllCustomers(token);
+        for (int i = 0; i < 20; i++) {
+            leaderApi.reserveProduct(customers.get(i), "Laptop", 2);
+            leaderApi.purchaseReservedProducts(i, customers.get(i));
+            leaderApi.reserveProduct(customers.get(i), "Laptop", 1);
+        }
+        leaderApi.makePurchase(customers.get(0), "Laptop", 1);
+
+        // Ведомый начинает с пустого магазина с другим балансом: состояние придет копией
+        DisruptorProcessor followerProcessor = new DisruptorProcessor();
+        StoreAPI followerApi = new StoreAPI(followerProcessor, new Store(0.0));
+        ReplicationFollower follower = new ReplicationFollower(followerApi, followerProcessor,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), leader.getPort()));
+        follower.start();
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (follower.getSnapshotsApplied() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+
+        // Команды после копии (меньше размера журнала) приходят журналом;
+        // повтор запроса 0 не должен списать деньги второй раз
+        for (int i = 0; i < 10; i++) {
+            leaderApi.addSupply("Laptop", 1);
+        }
+        // Команда в обход StoreAPI, которую нельзя закодировать: ведущий не останавливается,
+        // а ведомый снова восстанавливается копией
+        leaderProcessor.submitRequest(() -> {
+        }, StoreCommand.createCustomer("x".repeat(Short.MAX_VALUE + 1), 1.0));
+        leaderApi.addSupply("Laptop", 1);
+        deadline = System.nanoTime() + 10_000_000_000L;
+        while (follower.getSnapshotsApplied() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(leaderApi.purchaseReservedProducts(0, customers.get(0)), "Повтор запроса должен вернуть первый результат");
+        leaderProcessor.shutdown();
+
+        deadline = System.nanoTime() + 10_000_000_000L;
+        while ((follower.getAppliedIndex() < leader.getLogIndex()) && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        follower.promote();
+        leader.close();
+        followerProcessor.shutdown();
+
+        //Ведомый получил копию при подключении и после незакодированной команды и совпадает с ведущим, вместе с бронированиями.
+        assertEquals(1, leader.getUnreplicableCommands(), "Незакодированная команда должна быть посчитана");
+        assertEquals(2, leader.getSnapshotResyncs(), "Ведомый должен быть восстановлен копией дважды");
+        assertEquals(2, follower.getSnapshotsApplied(), "Ведомый должен получить две копии");
+        assertEquals(0, leader.getDroppedFollowers(), "Ведомый не должен быть отключен");
+        assertEquals(leader.getLogIndex(), follower.getAppliedIndex(), "Ведомый должен применить весь журнал");
+        assertEquals(leaderApi.getStoreBalance(), followerApi.getStoreBalance(), 1e-9, "Баланс магазина ведомого неверен");
+        assertEquals(leaderApi.getStoreProductAvailability("Laptop"), followerApi.getStoreProductAvailability("Laptop"),
+                "Остаток товара ведомого неверен");
+        assertEquals(20, followerApi.getAllCustomers().size(), "Клиенты ведомого неверны");
+        for (int i = 0; i < 20; i++) {
+            Customer expected = leaderApi.getAllCustomers().get(i);
+            Customer actual = followerApi.getAllCustomers().get(i);
+            assertEquals(expected.getLogin(), actual.getLogin(), "Логин клиента ведомого неверен");
+            assertEquals(expected.getBalance(), actual.getBalance(), 1e-9, "Баланс клиента ведомого неверен");
+            assertEquals(expected.getSpentAmount(), actual.getSpentAmount(), 1e-9, "Траты клиента ведомого неверны");
+            assertEquals(expected.getReservedProducts().values().stream().mapToInt(Integer::intValue).sum(),
+                    actual.getReservedProducts().values().stream().mapToInt(Integer::intValue).sum(),
+                    "Бронирования клиента ведомого неверны");
+        }
+    }
+
+    // Проверяется, что клиенты остаются верными после роста таблицы клиентов.
+    @RepeatedTest(20)
+    public void testCustomerViewsSurviveTableGrowth() {
+        // Инициализация процессора и API магазина
+        DisruptorProcessor processor = new DisruptorProcessor();
+        Store store = new Store(1000.0);
+        StoreAPI api = new StoreAPI(processor, store);
+
+        // Клиент, созданный вне магазина, переносится в таблицу магазина вместе с бронированием
+        api.addProductToStore("Phone", 100, 10.0);
+        Customer detached = new Customer("Detached", 500.0);
+        processor.submitRequest(() -> {
+            detached.reserveProduct(store.getProduct("Phone"), 3);
+            store.addCustomer(detached);
+        });
+        // Таблица несколько раз увеличивается, пока клиенты продолжают покупать
+        long token = 0;
+        for (int i = 0; i < 5000; i++) {
+            token = api.createCustomer("Customer" + i, 100.0);
+        }
+        List<Customer> customers = api.getAllCustomers(token);
+        for (int i = 0; i < 5000; i += 2) {
+            api.makePurchase(customers.get(i + 1), "Phone", 1);
+        }
+        api.purchaseReservedProducts(detached);
+        long lastToken = api.createCustomer("Last", 0.0);
+        api.getAllCustomers(lastToken);
+
+        // Завершаем работу процессора
+        processor.shutdown();
+
+        //Представления клиентов должны видеть свои строки после роста таблицы.
+        assertEquals(5002, customers.size(), "Количество клиентов неверно");
+        assertEquals("Detached", customers.get(0).getLogin(), "Логин перенесенного клиента неверен");
+        assertEquals(470.0, detached.getBalance(), 1e-9, "Баланс перенесенного клиента неверен");
+        assertTrue(detached.getReservedProducts().isEmpty(), "Бронирования должны быть выкуплены");
+        assertEquals(90.0, customers.get(1).getBalance(), 1e-9, "Баланс покупателя неверен");
+        assertEquals(10.0, customers.get(1).getSpentAmount(), 1e-9, "Траты покупателя неверны");
+        assertEquals(100.0, customers.get(2).getBalance(), 1e-9, "Баланс клиента без покупок неверен");
+        assertTrue(customers.get(2).getMessages().isEmpty(), "У клиента без покупок не должно быть сообщений");
+    }
+
+    // Проверяется, что отметки этапов трассированных запросов идут по порядку.
+    @RepeatedTest(20)
+    public void testTracedRequestsHaveOrderedStageTimestamps() throws IOException {
+        // Инициализация процессора и API магазина с трассировкой всех запросов
+        DisruptorProcessor processor = new DisruptorProcessor();
+        Store store = new Store(1000.0);
+        StoreAPI api = new StoreAPI(processor, store);
+        RequestTracer tracer = new RequestTracer(1, 1024, true);
+        processor.setTracer(tracer);
+
+        api.addProductToStore("Phone", 1000, 10.0);
+        long token = api.createCustomer("Customer", 10000.0);
+        Customer customer = api.getAllCustomers(token).get(0);
+        for (int i = 0; i < 200; i++) {
+            api.makePurchase(customer, "Phone", 1);
+            api.addSupply("Phone", 1);
+        }
+        // Запросы после отключения не трассируются
+        processor.setTracer(null);
+        long lastToken = api.addSupply("Phone", 1);
+        processor.waitFor(lastToken);
+
+        Path exportFile = Files.createTempFile("trace", ".csv");
+        int exported = tracer.exportTo(exportFile);
+        long exportedLines;
+        try (Stream<String> lines = Files.lines(exportFile)) {
+            exportedLines = lines.count();
+        }
+        Files.delete(exportFile);
+
+        // Завершаем работу процессора
+        processor.shutdown();
+
+        //Трассируются все запросы до отключения, этапы идут по порядку.
+        List<TraceSample> samples = tracer.samples();
+        assertEquals(402, samples.size(), "Количество записей трассировки неверно");
+        assertEquals(402, exported, "Количество выгруженных записей неверно");
+        assertEquals(403, exportedLines, "Выгрузка должна содержать заголовок и записи");
+        for (TraceSample sample : samples) {
+            assertTrue(sample.inputWaitNanos() >= 0 && sample.transferNanos() >= 0 && sample.queueNanos() >= 0
+                    && sample.executeNanos() >= 0 && sample.completionNanos() >= 0, "Этапы должны идти по порядку");
+        }
+    }
+
+    // Проверяется, что прогрев процессора не меняет настоящий магазин.
+    @RepeatedTest(3)
+    public void testWarmUpLeavesRealStoreUntouched() {
+        // Инициализация процессора и API магазина
+        DisruptorProcessor processor = new DisruptorProcessor();
+        Store store = new Store(1000.0);
+        StoreAPI api = new StoreAPI(processor, store);
+        api.addProductToStore("Phone", 10, 100.0);
+
+        // Короткий прогрев: раунды по 500 операций, не больше 10 раундов
+        ProcessorWarmup warmup = new ProcessorWarmup(processor, 500, 10, 2, 0.5);
+        WarmupResult result = api.warmUp(warmup);
+
+        long token = api.createCustomer("Customer", 1000.0);
+        Customer customer = api.getAllCustomers(token).get(0);
+        boolean purchased = api.makePurchase(customer, "Phone", 2);
+
+        // Завершаем работу процессора
+        processor.shutdown();
+
+        //Прогрев выполняется над теневым магазином и не меняет настоящий.
+        assertTrue(result.rounds() > 0 && result.rounds() <= 10, "Количество раундов неверно");
+        assertEquals(result.rounds() * 500L, result.operations(), "Количество операций неверно");
+        assertEquals(result.stabilized(), warmup.isReady(), "Готовность должна совпадать с итогом прогрева");
+        assertTrue(purchased, "Покупка после прогрева должна пройти");
+        assertEquals(1, api.getAllCustomers().size(), "Прогрев не должен добавлять клиентов");
+        assertEquals(8, api.getStoreProductAvailability("Phone"), "Прогрев не должен менять товары");
+        assertEquals(1200.0, api.getStoreBalance(), 1e-9, "Прогрев не должен менять баланс");
+        assertEquals(0, processor.getPendingRequests(), "Все запросы прогрева должны быть обработаны");
+    }
+
+    // Проверяется, что арендаторы обслуживаются общим пулом потоков независимо друг от друга.
+    @RepeatedTest(10)
+    public void testTenantsShareThreadPool() throws InterruptedException {
+        // 40 магазинов на двух потоках обработки, не больше 8 ожидающих запросов на магазин
+        TenantProcessor processor = new TenantProcessor(2, 1024, 8);
+        int tenantCount = 40;
+        StoreAPI[] apis = new StoreAPI[tenantCount];
+        Customer[] customers = new Customer[tenantCount];
+        for (int t = 0; t < tenantCount; t++) {
+            apis[t] = new StoreAPI(processor.tenant("shop-" + t), new Store(0.0));
+            apis[t].addProductToStore("Phone", 100, 1.0);
+            long token = apis[t].createCustomer("Customer", 1000.0);
+            customers[t] = apis[t].getAllCustomers(token).get(0);
+        }
+
+        // Шумный магазин отправляет много поставок подряд, остальные покупают из четырех потоков
+        StoreAPI noisy = new StoreAPI(processor.tenant("noisy"), new Store(0.0));
+        Thread noisyThread = new Thread(() -> {
+            long token = 0;
+            for (int i = 0; i < 5000; i++) {
+                token = noisy.addSupply("Phone", 1);
+            }
+            processor.tenant("noisy").waitFor(token);
+        });
+        noisyThread.start();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            int worker = w;
+            Thread thread = new Thread(() -> {
+                for (int t = worker; t < tenantCount; t += 4) {
+                    for (int i = 0; i < 50; i++) {
+                        apis[t].makePurchase(customers[t], "Phone", 1);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        noisyThread.join();
+
+        // Исключение в задаче одного магазина не останавливает общий поток
+        TenantChannel failing = processor.tenant("shop-0");
+        long completedBefore = failing.getCompleted();
+        failing.waitFor(failing.submitRequest(() -> {
+            throw new IllegalStateException("Ошибка задачи");
+        }));
+        assertEquals(completedBefore, failing.getCompleted(), "Задача с ошибкой не должна считаться выполненной");
+        assertEquals(0, failing.getInFlight(), "Задача с ошибкой должна освободить место");
+        long token = apis[0].addSupply("Phone", 1);
+
+        //Каждый магазин видит только свои запросы, выполненные по порядку.
+        for (int t = 0; t < tenantCount; t++) {
+            int available = t == 0 ? apis[t].getStoreProductAvailability("Phone", token) - 1
+                    : apis[t].getStoreProductAvailability("Phone");
+            assertEquals(50, available, "Остаток магазина неверен");
+            assertEquals(950.0, customers[t].getBalance(), 1e-9, "Баланс клиента неверен");
+            assertEquals(50.0, apis[t].getStoreBalance(), 1e-9, "Баланс магазина неверен");
+        }
+        assertEquals(5000, noisy.getProduct("Phone").getQuantity(), "Поставки шумного магазина потеряны");
+        assertEquals(0, processor.tenant("noisy").getInFlight(), "Все запросы должны быть выполнены");
+        assertEquals(1, failing.getFailed(), "Ошибка задачи должна быть учтена");
+        assertEquals(tenantCount + 1, processor.getTenantCount(), "Количество магазинов неверно");
+
+        // Завершаем работу процессора
+        processor.shutdown();
+    }
+
+    // Проверяется, что долговечные результаты записаны в журнал и воспроизводятся из него.
+    @RepeatedTest(10)
+    public void testDurableResultsAreJournaledAndReplayable() throws IOException {
+        // Инициализация процессора с журналом после потока обработки
+        Path journalFile = Files.createTempFile("store", ".journal");
+        GroupCommitJournal journal = new GroupCommitJournal(journalFile);
+        DisruptorProcessor processor = new DisruptorProcessor(null, journal);
+        Store store = new Store(1000.0);
+        StoreAPI api = new StoreAPI(processor, store, journal);
+        // Канал арендатора не передает запросы журналу, поэтому журнал с ним не подключается
+        TenantProcessor tenants = new TenantProcessor(1, 64, 8);
+        assertThrows(IllegalArgumentException.class, () -> new StoreAPI(tenants.tenant("shop"), new Store(0.0), journal),
+                "Журнал с каналом арендатора должен быть отклонен");
+        tenants.shutdown();
+        // Буфер пакета должен вмещать самую большую команду
+        assertThrows(IllegalArgumentException.class, () -> new GroupCommitJournal(journalFile, 1024, 1_000_000L),
+                "Буфер пакета меньше самой большой команды должен быть отклонен");
+
+        api.addProductToStore("Phone", 1000, 10.0);
+        long token = api.createCustomer("Customer", 100000.0);
+        // Слишком длинный логин отклоняется до публикации и не останавливает журнал
+        String longLogin = "L".repeat(StoreCommand.MAX_STRING_LENGTH + 1);
+        assertThrows(IllegalArgumentException.class, () -> api.createCustomer(longLogin, 1.0),
+                "Команда, которую нельзя записать, должна быть отклонена");
+        assertThrows(IllegalArgumentException.class,
+                () -> api.execute(StoreCommand.purchase(longLogin, "Phone", 1)),
+                "Команда, которую нельзя записать, должна быть отклонена");
+        Customer customer = api.getAllCustomers(token).get(0);
+        // Синхронная покупка возвращается только после записи на диск
+        assertTrue(api.makePurchase(customer, "Phone", 1), "Покупка должна пройти");
+        assertTrue(journal.getWrittenCommands() >= 3, "Покупка должна быть записана до ответа");
+
+        // Асинхронные запросы подтверждаются пакетами
+        long syncsBeforeBurst = journal.getSyncCount();
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            results.add(api.makePurchaseAsync("Customer", "Phone", 1));
+            api.addSupply("Phone", 1);
+        }
+        for (CompletableFuture<Boolean> result : results) {
+            assertTrue(result.join(), "Асинхронная покупка должна пройти");
+        }
+        long lastToken = api.addSupply("Phone", 1);
+        api.awaitDurable(lastToken);
+        long burstSyncs = journal.getSyncCount() - syncsBeforeBurst;
+        processor.shutdown();
+        journal.close();
+
+        // Восстановление нового магазина из журнала
+        DisruptorProcessor replayProcessor = new DisruptorProcessor();
+        Store replayStore = new Store(1000.0);
+        StoreAPI replayApi = new StoreAPI(replayProcessor, replayStore);
+        List<CompletableFuture<Long>> replayed = new ArrayList<>();
+        long commands = GroupCommitJournal.replay(journalFile, command -> replayed.add(replayApi.execute(command)));
+        replayed.forEach(CompletableFuture::join);
+        replayProcessor.shutdown();
+        Files.delete(journalFile);
+
+        //Журнал содержит все изменения, и их повтор дает то же состояние.
+        assertEquals(604, commands, "Количество команд в журнале неверно");
+        assertTrue(journal.getSyncCount() <= commands, "fsync должен приходиться на пакет, а не на команду");
+        assertTrue(burstSyncs < 601, "Асинхронные запросы должны фиксироваться пакетами: fsync " + burstSyncs);
+        assertTrue(journal.getDurableSequence() >= lastToken, "Последний запрос должен быть на диске");
+        assertEquals(store.getStoreBalance(), replayStore.getStoreBalance(), 1e-9, "Баланс после повтора неверен");
+        assertEquals(store.getAvailableQuantity("Phone"), replayStore.getAvailableQuantity("Phone"),
+                "Остаток после повтора неверен");
+        assertEquals(customer.getBalance(), replayStore.getCustomer("Customer").getBalance(), 1e-9,
+                "Баланс клиента после повтора неверен");
+    }
+
+    // Проверяется, что история заказов совпадает с тратами клиентов.
+    @RepeatedTest(10)
+    public void testOrderHistoryMatchesCustomerSpending() throws IOException {
+        // Инициализация процессора с историей заказов после потока обработки
+        Path directory = Files.createTempDirectory("orders");
+        Store store = new Store(0.0);
+        store.enableChangeTracking();
+        OrderHistory history = new OrderHistory(directory, 64);
+        DisruptorProcessor processor = new DisruptorProcessor(store::drainChanges, history);
+        StoreAPI api = new StoreAPI(processor, store);
+
+        api.addProductToStore("Phone", 10000, 10.0);
+        api.addProductToStore("Case", 10000, 2.5);
+        long token = 0;
+        for (int i = 0; i < 10; i++) {
+            token = api.createCustomer("Customer" + i, 100000.0);
+        }
+        List<Customer> customers = api.getAllCustomers(token);
+        long start = System.currentTimeMillis();
+        Random random = new Random();
+        for (int i = 0; i < 500; i++) {
+            Customer customer = customers.get(random.nextInt(customers.size()));
+            if (i % 5 == 0) {
+                api.reserveProduct(customer, "Case", 2);
+                api.purchaseReservedProducts(customer);
+            } else {
+                api.makePurchase(customer, "Phone", 1 + random.nextInt(3));
+            }
+        }
+        processor.shutdown();
+        assertFalse(history.isFailed(), "Запись истории не должна завершаться ошибкой");
+        history.close();
+
+        //История содержит каждую оплаченную позицию; суммы по клиентам совпадают с тратами.
+        OrderHistory reopened = new OrderHistory(directory, 64);
+        assertEquals(500, reopened.getRecordCount(), "Количество записей истории неверно");
+        assertEquals(500, reopened.ordersBetween(start, Long.MAX_VALUE).size(), "Выборка по времени неверна");
+        assertTrue(reopened.ordersBetween(0, start - 1).isEmpty(), "До начала покупок записей быть не должно");
+        for (Customer customer : customers) {
+            double spent = 0;
+            for (OrderRecord order : reopened.ordersOf(customer.getId(), 0, Long.MAX_VALUE)) {
+                assertEquals(customer.getId(), order.customerId(), "Запись другого клиента");
+                spent += order.amount();
+            }
+            assertEquals(customer.getSpentAmount(), spent, 1e-6, "Сумма заказов клиента неверна");
+        }
+        reopened.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    // Проверяется сохранение денег и товара в магазине, разбитом на узлы.
+    @RepeatedTest(3)
+    public void testPartitionedStoreConservesMoneyAndStock() throws Exception {
+        // Два узла в этом процессе и один отдельным процессом на loopback
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        List<DisruptorProcessor> processors = new ArrayList<>();
+        List<StoreServer> servers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            DisruptorProcessor processor = new DisruptorProcessor();
+            StoreServer server = new StoreServer(new StoreAPI(processor, new Store(0.0)),
+                    new InetSocketAddress(loopback, 0));
+            server.start();
+            processors.add(processor);
+            servers.add(server);
+        }
+        Process nodeProcess = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), "ru.lab11.queuingsystem.Partitioning.PartitionNode")
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try {
+            int nodePort = Integer.parseInt(new BufferedReader(
+                    new InputStreamReader(nodeProcess.getInputStream())).readLine().trim());
+            Map<String, InetSocketAddress> nodes = new LinkedHashMap<>();
+            nodes.put("a", new InetSocketAddress(loopback, servers.get(0).getPort()));
+            nodes.put("b", new InetSocketAddress(loopback, servers.get(1).getPort()));
+            nodes.put("process", new InetSocketAddress(loopback, nodePort));
+
+            try (PartitionRouter router = new PartitionRouter(nodes)) {
+                for (int i = 0; i < 30; i++) {
+                    router.addProduct("Sku" + i, 100, 1.0 + i % 5);
+                }
+                for (int i = 0; i < 12; i++) {
+                    router.createCustomer("Customer" + i, 1000.0);
+                }
+                // Покупки и брони из нескольких потоков; считаем проданные единицы
+                AtomicInteger soldUnits = new AtomicInteger();
+                List<Thread> threads = new ArrayList<>();
+                for (int w = 0; w < 4; w++) {
+                    Thread thread = new Thread(() -> {
+                        Random random = new Random();
+                        for (int i = 0; i < 60; i++) {
+                            String login = "Customer" + random.nextInt(12);
+                            String sku = "Sku" + random.nextInt(30);
+                            if (i % 6 == 0) {
+                                if (router.reserve(login, sku, 1)) {
+                                    soldUnits.incrementAndGet();
+                                }
+                                router.purchaseReserved(login);
+                            } else if (router.purchase(login, sku, 2)) {
+                                soldUnits.addAndGet(2);
+                            }
+                        }
+                    });
+                    threads.add(thread);
+                    thread.start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+
+                // Четвертый узел: часть товаров и счетов переезжает на него
+                DisruptorProcessor newProcessor = new DisruptorProcessor();
+                StoreServer newServer = new StoreServer(new StoreAPI(newProcessor, new Store(0.0)),
+                        new InetSocketAddress(loopback, 0));
+                newServer.start();
+                processors.add(newProcessor);
+                servers.add(newServer);
+                int[] before = new int[30];
+                for (int i = 0; i < 30; i++) {
+                    before[i] = router.getAvailability("Sku" + i);
+                }
+                // Узел, закрывающий соединения: перенос прерывается, а распределение остается прежним
+                try (ServerSocket closing = new ServerSocket(0, 50, loopback)) {
+                    Thread closer = new Thread(() -> {
+                        try {
+                            while (true) {
+                                closing.accept().close();
+                            }
+                        } catch (IOException e) {
+                            // Сокет закрыт
+                        }
+                    });
+                    closer.setDaemon(true);
+                    closer.start();
+                    assertThrows(IllegalStateException.class,
+                            () -> router.addNode("d", new InetSocketAddress(loopback, closing.getLocalPort())),
+                            "Перенос на недоступный узел должен прерваться");
+                }
+                assertThrows(IllegalStateException.class,
+                        () -> router.addNode("e", new InetSocketAddress(loopback, newServer.getPort())),
+                        "Другой узел нельзя добавить до завершения переноса");
+                for (int i = 0; i < 30; i++) {
+                    assertEquals(before[i], router.getAvailability("Sku" + i), "Прерванный перенос не должен менять остатки");
+                }
+                // Повторный вызов с рабочим адресом продолжает перенос
+                int moved = router.addNode("d", new InetSocketAddress(loopback, newServer.getPort()));
+                assertTrue(router.purchase("Customer0", "Sku0", 1), "Покупка после переноса должна пройти");
+                soldUnits.incrementAndGet();
+                before[0] -= 1;
+
+                //Остатки не меняются при переносе, а товар и деньги сохраняются.
+                assertTrue(moved > 0, "Часть данных должна переехать на новый узел");
+                int stock = 0;
+                for (int i = 0; i < 30; i++) {
+                    int available = router.getAvailability("Sku" + i);
+                    assertEquals(before[i], available, "Остаток товара после переноса неверен");
+                    stock += available;
+                }
+                assertEquals(3000, stock + soldUnits.get(), "Товар не сохраняется");
+                // Стоимость ушедшего товара = выручка узлов + неоплаченные брони
+                double soldValue = 0;
+                for (int i = 0; i < 30; i++) {
+                    soldValue += (1.0 + i % 5) * (100 - router.getAvailability("Sku" + i));
+                }
+                double balances = 0;
+                double reserved = 0;
+                for (int i = 0; i < 12; i++) {
+                    balances += router.getBalance("Customer" + i);
+                    reserved += router.getReservedTotal("Customer" + i);
+                }
+                assertEquals(12000.0, balances + soldValue - reserved, 1e-6, "Деньги не сохраняются");
+            }
+        } finally {
+            nodeProcess.destroy();
+            for (StoreServer server : servers) {
+                server.close();
+            }
+            for (DisruptorProcessor processor : processors) {
+                processor.shutdown();
+            }
+        }
+    }
+
+    // Проверяется обслуживание клиентов через разделяемую память в порядке отправки.
+    @RepeatedTest(3)
+    public void testSharedMemoryClientsAreServedInOrder() throws Exception {
+        // Маленькие кольца, чтобы писатели много раз проходили по кругу
+        DisruptorProcessor processor = new DisruptorProcessor();
+        Store store = new Store(0.0);
+        StoreAPI api = new StoreAPI(processor, store);
+        Path file = Files.createTempFile("store", ".shm");
+        SharedMemoryServer server = new SharedMemoryServer(api, file, 16, 128, 4, 8);
+        server.start();
+
+        int clients = 3;
+        int purchasesPerClient = 200;
+        List<SharedMemoryClient> connected = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        AtomicInteger succeeded = new AtomicInteger();
+        int remaining;
+        try {
+            try (SharedMemoryClient seed = new SharedMemoryClient(file)) {
+                seed.send(StoreCommand.addProduct("Phone", 1000, 10.0));
+                for (int c = 1; c < clients; c++) {
+                    seed.send(StoreCommand.createCustomer("Customer" + c, 100000.0));
+                }
+                // Чтение упорядочено после записей этого клиента
+                assertEquals(1000, seed.send(StoreCommand.availability("Phone")).join().intValue());
+            }
+            // Клиент, который не читает ответы, переполняет свое кольцо ответов и не должен задерживать остальных
+            SharedMemoryClient stuck = new SharedMemoryClient(file);
+            stuck.close();
+            for (int i = 0; i < 50; i++) {
+                stuck.send(StoreCommand.availability("Phone"));
+            }
+            for (int c = 1; c < clients; c++) {
+                SharedMemoryClient client = new SharedMemoryClient(file);
+                String login = "Customer" + c;
+                connected.add(client);
+                threads.add(new Thread(() -> {
+                    List<CompletableFuture<Long>> results = new ArrayList<>();
+                    for (int i = 0; i < purchasesPerClient; i++) {
+                        results.add(client.send(StoreCommand.purchase(login, "Phone", 1)));
+                    }
+                    for (CompletableFuture<Long> result : results) {
+                        if (result.join() != 0) {
+                            succeeded.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            remaining = connected.get(0).send(StoreCommand.availability("Phone")).join().intValue();
+            for (SharedMemoryClient client : connected) {
+                client.close();
+            }
+        } finally {
+            server.close();
+            processor.shutdown();
+            Files.deleteIfExists(file);
+        }
+
+        //Все запросы клиентов выполнены и получили ответы.
+        int purchases = (clients - 1) * purchasesPerClient;
+        assertEquals(purchases, succeeded.get(), "Все покупки через разделяемую память должны быть успешными");
+        assertEquals(1000 - purchases, remaining, "Остаток должен учитывать все покупки");
+        assertEquals(purchases * 10.0, store.getStoreBalance(), 1e-6, "Баланс магазина должен учитывать все покупки");
+        assertEquals(0, server.getDroppedResponses(), "Ответы медленному клиенту должны ждать в его очереди");
+    }
+
+    // Проверяется, что воспроизведение записанных вызовов приводит магазин в то же состояние.
+    @RepeatedTest(3)
+    public void testReplayedCaptureReproducesStoreState() throws Exception {
+        // Инициализация процессора и API магазина с записью вызовов
+        DisruptorProcessor processor = new DisruptorProcessor();
+        Store store = new Store(0.0);
+        StoreAPI api = new StoreAPI(processor, store);
+        Path captureFile = Files.createTempFile("traffic", ".capture");
+        TrafficRecorder recorder = new TrafficRecorder(captureFile);
+        api.setRecorder(recorder);
+
+        long original;
+        try {
+            api.addProductToStore("Phone", 100, 300.0);
+            api.addProductToStore("Laptop", 20, 1500.0);
+            long token = api.createCustomer("Customer1", 10000.0);
+            api.createCustomer("Customer2", 5000.0);
+            Customer customer = api.getAllCustomers(token).get(0);
+            for (int i = 0; i < 10; i++) {
+                api.makePurchase(customer, "Phone", 1);
+                api.makePurchaseAsync("Customer2", i % 2 == 0 ? "Phone" : "Laptop", 1);
+            }
+            api.reserveProductAsync("Customer2", "Laptop", 1);
+            api.purchaseReservedProductsAsync("Customer2");
+            api.reserveProduct(customer, "Laptop", 2);
+            api.addSupply("Phone", 15);
+            api.getStoreProductAvailabilityAsync("Phone").join();
+            api.setRecorder(null);
+
+            long[] checksum = new long[1];
+            processor.waitFor(processor.submitRequest(() -> checksum[0] = StateChecksum.of(store)));
+            original = checksum[0];
+        } finally {
+            recorder.close();
+            processor.shutdown();
+        }
+
+        ReplayReport fast;
+        ReplayReport paced;
+        try {
+            fast = TrafficReplay.replay(captureFile, false);
+            paced = TrafficReplay.replay(captureFile, true);
+        } finally {
+            Files.deleteIfExists(captureFile);
+        }
+
+        //Воспроизведение записи в любом темпе приводит магазин в то же состояние.
+        assertEquals(0, recorder.getDroppedCalls(), "Запись не должна терять вызовы");
+        assertEquals(recorder.getRecordedCalls(), fast.calls(), "Должны воспроизводиться все записанные вызовы");
+        assertEquals(0, fast.failed(), "Вызовы при воспроизведении не должны завершаться ошибкой");
+        assertEquals(original, fast.checksum(), "Состояние после воспроизведения должно совпадать с исходным");
+        assertEquals(original, paced.checksum(), "Состояние после воспроизведения с паузами должно совпадать с исходным");
+        assertTrue(fast.p50Nanos() <= fast.maxNanos(), "Процентили задержки должны быть упорядочены");
+    }
+
+    // Проверяется, что ограничение частоты запросов одного клиента не мешает остальным.
+    @RepeatedTest(3)
+    public void testRateLimitedCustomerDoesNotStarveOthers() {
+        // Инициализация процессора и API магазина с лимитом в 5 запросов подряд и почти без пополнения
+        DisruptorProcessor processor = new DisruptorProcessor();
+        StoreAPI api = new StoreAPI(processor, new Store(0.0));
+        CustomerRateLimiter limiter = new CustomerRateLimiter(0.001, 5);
+        api.setRateLimiter(limiter);
+
+        int botSucceeded = 0;
+        int shopperSucceeded = 0;
+        int retrierSucceeded = 0;
+        boolean replayedPurchase;
+        int remaining;
+        try {
+            api.addProductToStore("Phone", 100, 10.0);
+            long token = api.createCustomer("Bot", 100000.0);
+            api.createCustomer("Shopper", 100000.0);
+            Customer bot = api.getAllCustomers(token).get(0);
+            for (int i = 0; i < 40; i++) {
+                if (api.makePurchase(bot, "Phone", 1)) {
+                    botSucceeded++;
+                }
+                if (api.reserveProductAsync("Bot", "Phone", 1).join()) {
+                    botSucceeded++;
+                }
+            }
+            for (int i = 0; i < 5; i++) {
+                if (api.makePurchaseAsync("Shopper", "Phone", 1).join()) {
+                    shopperSucceeded++;
+                }
+            }
+            // Повторы запроса с тем же идентификатором не расходуют лимит
+            token = api.createCustomer("Retrier", 100000.0);
+            Customer retrier = api.getAllCustomers(token).get(2);
+            for (int i = 0; i < 10; i++) {
+                if (api.makePurchase(7, retrier, "Phone", 1)) {
+                    retrierSucceeded++;
+                }
+            }
+            for (int i = 0; i < 5; i++) {
+                if (api.makePurchase(100 + i, retrier, "Phone", 1)) {
+                    retrierSucceeded++;
+                }
+            }
+            // Уже принятые команды (репликация, журнал) применяются без лимита
+            replayedPurchase = api.execute(StoreCommand.purchase("Bot", "Phone", 1)).join() == 1;
+            remaining = api.getStoreProductAvailabilityAsync("Phone").join();
+        } finally {
+            processor.shutdown();
+        }
+
+        //Сверх лимита запросы клиента отклоняются до обработки, остальные клиенты не затронуты.
+        assertEquals(5, botSucceeded, "Клиенту сверх лимита должны проходить только запросы всплеска");
+        assertEquals(5, shopperSucceeded, "Другой клиент не должен ограничиваться из-за первого");
+        assertEquals(14, retrierSucceeded, "Повторы должны возвращать первый результат, не расходуя лимит");
+        assertTrue(replayedPurchase, "execute не должен ограничиваться лимитом");
+        assertEquals(84, remaining, "Отклоненные запросы не должны менять склад");
+        assertEquals(76, limiter.getThrottledCount(), "Отклоненные запросы должны учитываться");
+        assertEquals(15, limiter.getAllowedCount(), "Пропущенные запросы должны учитываться");
+    }
+
+    // Проверяется, что покупка с идентификатором, отклоненная по лимиту, не попадает к ведомому и в журнал.
+    @RepeatedTest(3)
+    public void testThrottledRequestIdPurchaseLeavesNoTrace() throws Exception {
+        // Ведущий с журналом и репликацией, лимит в 2 запроса подряд почти без пополнения
+        Path journalFile = Files.createTempFile("throttled", ".journal");
+        GroupCommitJournal journal = new GroupCommitJournal(journalFile);
+        ReplicationLeader leader = new ReplicationLeader(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1 << 16);
+        DisruptorProcessor leaderProcessor = new DisruptorProcessor(null, leader, journal);
+        StoreAPI leaderApi = new StoreAPI(leaderProcessor, new Store(0.0), journal);
+        CustomerRateLimiter limiter = new CustomerRateLimiter(0.001, 2);
+        leaderApi.setRateLimiter(limiter);
+        leader.start();
+        DisruptorProcessor followerProcessor = new DisruptorProcessor();
+        StoreAPI followerApi = new StoreAPI(followerProcessor, new Store(0.0));
+        ReplicationFollower follower = new ReplicationFollower(followerApi, followerProcessor,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), leader.getPort()));
+        follower.start();
+
+        boolean first;
+        boolean second;
+        boolean throttled;
+        long throttledLimited;
+        boolean retried;
+        try {
+            leaderApi.addProductToStore("Phone", 100, 10.0);
+            long token = leaderApi.createCustomer("Buyer", 1000.0);
+            Customer buyer = leaderApi.getAllCustomers(token).get(0);
+            first = leaderApi.makePurchase(1, buyer, "Phone", 1);
+            second = leaderApi.makePurchase(2, buyer, "Phone", 1);
+            throttled = leaderApi.makePurchase(3, buyer, "Phone", 1);
+            throttledLimited = leaderApi.executeLimited(StoreCommand.purchase("Buyer", "Phone", 1).withRequestId(4)).join();
+            // Повтор выполненного запроса сверх лимита получает первый результат
+            retried = leaderApi.makePurchase(1, buyer, "Phone", 1);
+            leaderProcessor.shutdown();
+
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (follower.getAppliedIndex() < leader.getLogIndex() && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        } finally {
+            follower.close();
+            leader.close();
+            followerProcessor.shutdown();
+            journal.close();
+        }
+
+        // Восстановление из журнала
+        List<StoreCommand> journaled = new ArrayList<>();
+        GroupCommitJournal.replay(journalFile, journaled::add);
+        Files.delete(journalFile);
+
+        //Отклоненные по лимиту покупки не выполняются ни на ведомом, ни при повторе журнала.
+        assertTrue(first && second, "Запросы в пределах лимита должны пройти");
+        assertFalse(throttled, "Покупка сверх лимита должна быть отклонена");
+        assertEquals(0, throttledLimited, "Команда сверх лимита должна быть отклонена");
+        assertTrue(retried, "Повтор выполненного запроса должен вернуть первый результат");
+        assertEquals(98, leaderApi.getStoreProductAvailability("Phone"), "На ведущем должно быть продано 2 единицы");
+        assertEquals(98, followerApi.getStoreProductAvailability("Phone"), "Ведомый не должен применять отклоненные покупки");
+        assertEquals(4, journaled.size(), "В журнале должны быть только принятые команды");
+        assertTrue(journaled.stream().noneMatch(command -> command.requestId() == 3 || command.requestId() == 4),
+                "Отклоненные покупки не должны попадать в журнал");
+    }
+
+    // Проверяется доставка сообщений клиента подписчикам.
+    @RepeatedTest(3)
+    public void testNotificationsArePushedToSubscribers() throws InterruptedException {
+        // Инициализация магазина с учетом изменений и рассылки после потока обработки
+        Store store = new Store(0.0);
+        store.enableChangeTracking();
+        NotificationHub hub = new NotificationHub();
+        DisruptorProcessor processor = new DisruptorProcessor(store::drainChanges, hub);
+        StoreAPI api = new StoreAPI(processor, store);
+
+        List<CustomerNotification> received = new CopyOnWriteArrayList<>();
+        List<CustomerNotification> streamed = new CopyOnWriteArrayList<>();
+        CountDownLatch streamedAll = new CountDownLatch(3);
+        hub.subscribe("Customer", received::add);
+        hub.publisher("Customer").subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(CustomerNotification item) {
+                streamed.add(item);
+                streamedAll.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        // Подписчик, сразу отменяющий подписку: издатель его логина удаляется
+        CountDownLatch cancelled = new CountDownLatch(1);
+        hub.publisher("Other").subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.cancel();
+                cancelled.countDown();
+            }
+
+            @Override
+            public void onNext(CustomerNotification item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        assertTrue(cancelled.await(10, TimeUnit.SECONDS), "Подписка должна быть отменена");
+        assertEquals(1, hub.getPublisherCount(), "Издатель без подписчиков должен удаляться");
+
+        List<String> messages = new ArrayList<>();
+        try {
+            api.addProductToStore("Phone", 5, 300.0);
+            long token = api.createCustomer("Customer", 1000.0);
+            api.createCustomer("Other", 1000.0);
+            Customer customer = api.getAllCustomers(token).get(0);
+            assertTrue(api.makePurchase(customer, "Phone", 1), "Покупка должна быть успешной");
+            assertFalse(api.makePurchase(customer, "Laptop", 1), "Покупка отсутствующего товара должна быть отклонена");
+            assertFalse(api.makePurchase(customer, "Phone", 4), "Покупка сверх баланса должна быть отклонена");
+            assertFalse(api.reserveProduct(customer, "Phone", 10), "Бронирование сверх остатка должно быть отклонено");
+            assertFalse(api.makePurchaseAsync("Other", "Laptop", 1).join(), "Покупка отсутствующего товара должна быть отклонена");
+            // Рассылка идет после потока обработки; слушатель вызывается раньше передачи в поток
+            assertTrue(streamedAll.await(10, TimeUnit.SECONDS), "Подписчик потока должен получить все сообщения");
+            processor.waitFor(processor.submitRequest(() -> customer.getMessages().forEach(m -> messages.add(m.getMessage()))));
+        } finally {
+            processor.shutdown();
+            hub.close();
+        }
+
+        //Подписчики получают только сообщения своего клиента, в порядке их появления.
+        assertEquals(messages, received.stream().map(n -> n.message().getMessage()).toList(),
+                "Слушатель должен получить все сообщения клиента");
+        assertEquals(messages, streamed.stream().map(n -> n.message().getMessage()).toList(),
+                "Подписчик потока должен получить все сообщения клиента");
+        assertEquals(3, messages.size(), "Клиент должен получить сообщение о каждом отказе");
+        assertEquals(6, hub.getDeliveredCount(), "Каждое сообщение должно быть доставлено обоим подписчикам");
+    }
+
+    // Проверяется, что замена буферов под нагрузкой не теряет и не переставляет запросы.
+    @RepeatedTest(3)
+    public void testResizeKeepsRequestOrderUnderLoad() throws Exception {
+        // Процессор с маленькими буферами; четыре потока публикуют запросы во время замен буферов
+        DisruptorProcessor processor = new DisruptorProcessor(64, null);
+        List<Long> executed = new ArrayList<>(); // Пишется только потоком обработки
+        int threads = 4;
+        int requestsPerThread = 5000;
+        List<List<Long>> submitted = new ArrayList<>();
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<Long> tokens = new ArrayList<>(requestsPerThread);
+            submitted.add(tokens);
+            long thread = t;
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < requestsPerThread; i++) {
+                    long request = thread * requestsPerThread + i;
+                    tokens.add(processor.submitRequest(() -> executed.add(request)));
+                }
+            }));
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = processor.registerMBean("resize-test-" + System.nanoTime());
+        long last = -1;
+        try {
+            producers.forEach(Thread::start);
+            processor.resize(1024);
+            processor.resize(16);
+            server.invoke(name, "resize", new Object[]{256}, new String[]{int.class.getName()});
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            for (List<Long> tokens : submitted) {
+                last = Math.max(last, tokens.get(tokens.size() - 1));
+            }
+            processor.waitFor(last);
+            assertEquals(256, server.getAttribute(name, "BufferSize"), "Размер буферов должен быть виден через JMX");
+        } finally {
+            server.unregisterMBean(name);
+            processor.shutdown();
+        }
+
+        //Ни один запрос не потерян и не переставлен, номера запросов идут без пропусков через замены буферов.
+        int total = threads * requestsPerThread;
+        assertEquals(total, executed.size(), "Все запросы должны быть выполнены ровно один раз");
+        assertEquals(total - 1, last, "Номера запросов должны идти без пропусков через замены буферов");
+        for (List<Long> tokens : submitted) {
+            for (int i = 1; i < tokens.size(); i++) {
+                assertTrue(tokens.get(i) > tokens.get(i - 1), "Номера запросов потока должны возрастать");
+            }
+        }
+        long[] nextOfThread = new long[threads];
+        for (long request : executed) {
+            int thread = (int) (request / requestsPerThread);
+            assertEquals(nextOfThread[thread]++, request % requestsPerThread, "Запросы потока должны выполняться в порядке отправки");
+        }
+        assertEquals(0, processor.getPendingRequests(), "Необработанных запросов не должно остаться");
+    }
 }